@@ -13,10 +13,15 @@ package com.c8tech.tools.maven.plugin.osgi.repository;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -24,6 +29,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 
 import org.apache.maven.model.License;
 import org.apache.maven.plugin.MojoExecutionException;
@@ -61,6 +67,8 @@ public abstract class AbstractOsgiRepositoryMojo
 
     public static final String DEFAULT_WORK_DIR_NAME = "repository";
 
+    protected static final String DIRECT_PACK_LIST_FILE_NAME = "direct-pack.list";
+
     /**
      * The name used for the generated artifacts.
      * <p>
@@ -97,6 +105,17 @@ public abstract class AbstractOsgiRepositoryMojo
     @Parameter(required = true, defaultValue = "false")
     private boolean deployOnRemoteRepository;
 
+    /**
+     * When true, the cached artifacts are not copied into the work directory.
+     * The index file is generated from the cache directory, using the same
+     * relative locations, and the repository archive reads the artifacts
+     * straight from the cache directory, together with the files generated
+     * into the work directory.
+     */
+    @Parameter(required = true, defaultValue = "false",
+            property = "osgi.repository.directPack")
+    private boolean directPack;
+
     /**
      * When true, the plugin will copy all declared maven dependencies files
      * from maven local repository into the cache directory and use them in
@@ -291,6 +310,20 @@ public abstract class AbstractOsgiRepositoryMojo
             property = "osgi.repository.pretty")
     private boolean pretty;
 
+    /**
+     * Whether the generated files must be reproducible, so identical inputs
+     * give byte identical outputs.
+     * <p>
+     * When no {@link #incrementOverride} is informed the increment of the
+     * index file is derived from the indexed content instead of the current
+     * time, and the repository archive entries are sorted and get a fixed
+     * timestamp, taken from <i>project.build.outputTimestamp</i> when set, and
+     * normalized permissions.
+     */
+    @Parameter(required = true, defaultValue = "false",
+            property = "osgi.repository.reproducible")
+    private boolean reproducible;
+
     /**
      * The name to be set inside the generated OSGi R5 index repository file.
      * <p>
@@ -479,6 +512,59 @@ public abstract class AbstractOsgiRepositoryMojo
         return bindexConfig;
     }
 
+    /**
+     * Sets an increment derived from the relative paths and the content of the
+     * indexed files when in reproducible mode and no increment was informed.
+     * The files outside the root directory are identified by their absolute
+     * paths.
+     *
+     * @param pRepoindexConfig
+     *                             The indexer configuration.
+     * @param pRootDir
+     *                             The directory the indexed files are relative
+     *                             to.
+     * @param pInputs
+     *                             The indexed files.
+     * @throws IOException
+     *                         When a file could not be read.
+     */
+    protected void applyContentDerivedIncrement(
+            Map<String, String> pRepoindexConfig, Path pRootDir,
+            Iterable<File> pInputs) throws IOException {
+        if (!reproducible || incrementOverride != null) {
+            return;
+        }
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+        Map<String, Path> sortedInputs = new TreeMap<>();
+        for (File input : pInputs) {
+            Path path = input.toPath().toAbsolutePath();
+            String name = path.startsWith(pRootDir.toAbsolutePath())
+                    ? pRootDir.toAbsolutePath().relativize(path).toString()
+                    : path.toString();
+            sortedInputs.put(name.replace(File.separatorChar, '/'), path);
+        }
+        byte[] buffer = new byte[64 * 1024];
+        for (Map.Entry<String, Path> input : sortedInputs.entrySet()) {
+            digest.update(input.getKey().getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            try (InputStream in = Files.newInputStream(input.getValue())) {
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    digest.update(buffer, 0, read);
+                }
+            }
+        }
+        long increment = ByteBuffer.wrap(digest.digest()).getLong()
+                & Long.MAX_VALUE;
+        pRepoindexConfig.put(RepoIndex.REPOSITORY_INCREMENT_OVERRIDE,
+                Long.toString(increment));
+    }
+
     protected File calculateRepositoryArchiveName() {
 
         String name = getArtifactFileName()
@@ -638,6 +724,10 @@ public abstract class AbstractOsgiRepositoryMojo
         return deployOnRemoteRepository;
     }
 
+    protected final boolean isDirectPack() {
+        return directPack;
+    }
+
     protected final boolean isEmbedArtifacts() {
         return embedArtifacts;
     }
@@ -675,6 +765,10 @@ public abstract class AbstractOsgiRepositoryMojo
         return skip;
     }
 
+    protected final boolean isReproducible() {
+        return reproducible;
+    }
+
     protected final boolean isTransitiveConsidered() {
         return transitiveConsidered;
     }
@@ -15,10 +15,26 @@ package com.c8tech.tools.maven.plugin.osgi.repository;
 import java.io.File;
 import java.io.IOException;
 import java.io.Writer;
+import java.net.URI;
+import java.net.SocketTimeoutException;
+import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import javax.inject.Inject;
 
@@ -35,8 +51,6 @@ import org.apache.maven.plugins.annotations.Parameter;
 import org.apache.maven.plugins.annotations.ResolutionScope;
 import org.apache.maven.project.DefaultProjectBuildingRequest;
 import org.apache.maven.project.MavenProject;
-import org.apache.maven.project.ProjectBuilder;
-import org.apache.maven.project.ProjectBuildingException;
 import org.apache.maven.project.ProjectBuildingRequest;
 import org.apache.maven.project.artifact.ProjectArtifactMetadata;
 import org.apache.maven.shared.transfer.artifact.deploy.ArtifactDeployer;
@@ -49,7 +63,14 @@ import org.apache.maven.shared.transfer.repository.RepositoryManager;
 import org.apache.maven.shared.utils.WriterFactory;
 import org.apache.maven.shared.utils.io.IOUtil;
 
+import com.c8tech.tools.maven.plugin.osgi.repository.utils.P2ArtifactDescriptor;
+import com.c8tech.tools.maven.plugin.osgi.repository.utils.P2ArtifactRepository;
+import com.c8tech.tools.maven.plugin.osgi.repository.utils.P2MirrorSelector;
+import com.c8tech.tools.maven.plugin.osgi.repository.utils.P2RepositoryResolver;
+import com.c8tech.tools.maven.plugin.osgi.repository.utils.VerifiedDownloader;
+
 import br.com.c8tech.tools.maven.osgi.lib.mojo.CommonMojoConstants;
+import br.com.c8tech.tools.maven.osgi.lib.mojo.beans.P2ArtifactSet;
 import br.com.c8tech.tools.maven.osgi.lib.mojo.incremental.ArtifactTracker;
 import br.com.c8tech.tools.maven.osgi.lib.mojo.incremental.ArtifactTrackerManager;
 import br.com.c8tech.tools.maven.osgi.lib.mojo.incremental.ArtifactTrackerManagerBuilder;
@@ -81,6 +102,27 @@ import io.takari.incrementalbuild.ResourceStatus;
         requiresProject = true, inheritByDefault = true, aggregator = false)
 public class MojoDownloadP2Artifacts extends AbstractOsgiRepositoryMojo {
 
+    /**
+     * A registered p2 artifact whose file is being downloaded.
+     */
+    private static final class PendingDownload {
+
+        private final ArtifactTracker artifactTracker;
+
+        private CompletableFuture<URL> download;
+
+        private final ResourceMetadata<?> resourceMetadata;
+
+        private final URL sourceURL;
+
+        PendingDownload(ArtifactTracker pArtifactTracker,
+                ResourceMetadata<?> pResourceMetadata, URL pSourceURL) {
+            artifactTracker = pArtifactTracker;
+            resourceMetadata = pResourceMetadata;
+            sourceURL = pSourceURL;
+        }
+    }
+
     @Inject
     private BuildContextWithUrl copyBuildContext;
 
@@ -96,15 +138,65 @@ public class MojoDownloadP2Artifacts extends AbstractOsgiRepositoryMojo {
     @Parameter
     private File localRepositoryPath;
 
-    @Component
-    protected RepositoryManager repositoryManager;
+    /**
+     * The maximum number of p2 repositories, including the children of
+     * composite repositories, that will be read concurrently while resolving
+     * the declared p2 artifacts.
+     */
+    @Parameter(defaultValue = "4",
+            property = "osgi.repository.p2ResolutionThreads")
+    private int p2ResolutionThreads;
 
     /**
-     * Used for creating the project to which the artifacts to install will be
-     * attached.
+     * The maximum number of p2 artifact files that will be downloaded
+     * concurrently.
+     */
+    @Parameter(defaultValue = "4",
+            property = "osgi.repository.p2DownloadThreads")
+    private int p2DownloadThreads;
+
+    /**
+     * The maximum number of mirrors, among the ones advertised by a p2
+     * repository through its <i>p2.mirrorsURL</i> property, that will be used
+     * to download its artifacts.
+     * <p>
+     * The advertised mirrors are probed for latency and throughput and the
+     * downloads are spread among the fastest ones. Use <code>0</code> to
+     * always download from the repository itself.
      */
+    @Parameter(defaultValue = "3", property = "osgi.repository.p2MaxMirrors")
+    private int p2MaxMirrors;
+
+    private P2RepositoryResolver.Index p2RepositoryIndex;
+
+    private Path pomSpillDirectory;
+
+    private final Map<String, File> spilledPomFiles = new HashMap<>();
+
+    /**
+     * The time, in seconds, that a connection or a read from a p2 repository
+     * or mirror can block before it is considered stalled. A stalled mirror is
+     * discarded and the download continues from the next one.
+     */
+    @Parameter(defaultValue = "60",
+            property = "osgi.repository.p2StallTimeoutInSeconds")
+    private int p2StallTimeoutInSeconds;
+
+    /**
+     * Whether the downloaded p2 artifacts must be verified against the size
+     * and checksums (<i>download.checksum.sha-256</i>, <i>download.md5</i>)
+     * published in the <i>artifacts.xml</i> file of its repository.
+     * <p>
+     * A file that fails the verification is never copied into the cache
+     * directory and the download is retried from the next repository that
+     * provides the same artifact, if any.
+     */
+    @Parameter(defaultValue = "true",
+            property = "osgi.repository.verifyP2Checksums")
+    private boolean verifyP2Checksums;
+
     @Component
-    private ProjectBuilder projectBuilder;
+    protected RepositoryManager repositoryManager;
 
     /**
      * Used to install the project created.
@@ -123,15 +215,75 @@ public class MojoDownloadP2Artifacts extends AbstractOsgiRepositoryMojo {
         super(project);
     }
 
+    private List<URI> collectP2RepositoryLocations() {
+        List<URI> locations = new ArrayList<>();
+        for (P2ArtifactSet p2ArtifactSet : getP2ArtifactSets()
+                .getP2ArtifactSets()) {
+            URL repositoryURL = p2ArtifactSet.getRepositoryURL();
+            if (repositoryURL == null || isOffline()
+                    && !"file".equals(repositoryURL.getProtocol())) {
+                continue;
+            }
+            try {
+                locations.add(repositoryURL.toURI());
+            } catch (URISyntaxException e) {
+                getLog().warn("Ignoring invalid p2 repository URL: "
+                        + repositoryURL);
+            }
+        }
+        return locations;
+    }
+
+    /**
+     * Calculates the URL from where a p2 artifact will be downloaded.
+     * <p>
+     * When the artifact was found while reading the declared p2 repositories
+     * the location of the repository with the highest precedence will be used,
+     * otherwise the URL calculated by the artifact tracker is returned.
+     */
+    private URL calculateDownloadURL(ArtifactTracker pArtifactTracker)
+            throws IOException {
+        List<P2ArtifactDescriptor> candidates = findP2ArtifactCandidates(
+                pArtifactTracker);
+        if (!candidates.isEmpty()) {
+            P2ArtifactDescriptor descriptor = candidates.get(0);
+            return descriptor.getRepository().getArtifactURL(descriptor);
+        }
+        return new URL(pArtifactTracker.getDownloadUrl());
+    }
+
+    /**
+     * Returns the descriptors found for an artifact in the declared p2
+     * repositories, ordered by precedence. The artifact is looked up as a
+     * bundle and then as a feature.
+     */
+    private List<P2ArtifactDescriptor> findP2ArtifactCandidates(
+            ArtifactTracker pArtifactTracker) {
+        if (p2RepositoryIndex == null) {
+            return Collections.emptyList();
+        }
+        List<P2ArtifactDescriptor> candidates = p2RepositoryIndex.candidates(
+                P2ArtifactDescriptor.CLASSIFIER_BUNDLE,
+                pArtifactTracker.getArtifactId(),
+                pArtifactTracker.getVersion());
+        if (candidates.isEmpty()) {
+            candidates = p2RepositoryIndex.candidates(
+                    P2ArtifactDescriptor.CLASSIFIER_FEATURE,
+                    pArtifactTracker.getArtifactId(),
+                    pArtifactTracker.getVersion());
+        }
+        return candidates;
+    }
+
     private int downloadAndCopyNormalizedP2ArtifactFilesToCacheDirectory( // NOSONAR
             BuildContextWithUrl pBuildContextWithUrl,
             Set<ArtifactTracker> pRegisteredArtifactsToCopy)
             throws IOException, MojoExecutionException {
-        int count = 0;
+        List<PendingDownload> pendingDownloads = new ArrayList<>();
         for (ArtifactTracker artifactTracker : pRegisteredArtifactsToCopy) {
 
             ResourceMetadata<?> resourceMetadata = pBuildContextWithUrl
-                    .registerInput(new URL(artifactTracker.getDownloadUrl()),
+                    .registerInput(calculateDownloadURL(artifactTracker),
                             getCacheDirectory());
             if (resourceMetadata.getStatus() != ResourceStatus.UNMODIFIED) {
                 if (isVerbose()) {
@@ -146,51 +298,232 @@ public class MojoDownloadP2Artifacts extends AbstractOsgiRepositoryMojo {
                         sourceURL = ((File) resourceMetadata.getResource())
                                 .toURI().toURL();
                     }
-                resourceMetadata.process().associateOutput(getDirectoryHelper()
-                        .copyResourceToDirectory(sourceURL, artifactTracker
-                                .getCachedFilePath().getParent()));
-                artifactTracker.setCached();
+                pendingDownloads.add(new PendingDownload(artifactTracker,
+                        resourceMetadata, sourceURL));
+            } else {
                 if (isVerbose()) {
-                    getLog().info("   Copied p2 artifact file from '"
-                            + sourceURL + " to "
-                            + artifactTracker.getCachedFilePath());
+                    getLog().info("   Bypassing downloading of artifact: "
+                            + artifactTracker.getArtifactId());
                 }
+            }
+        }
+        if (pendingDownloads.isEmpty()) {
+            return 0;
+        }
 
-                Map<String, String> jarManifestHeaders = artifactTracker
-                        .getTypeHandler().extractManifestHeadersFromArchive(
-                                artifactTracker.getCachedFilePath().toFile());
-                if (artifactTracker.getTypeHandler()
-                        .isArtifactManifestValid(jarManifestHeaders)) {
-                    artifactTracker.getManifestHeaders()
-                            .putAll(jarManifestHeaders);
-                } else {
-                    continue;
+        int stallTimeout = (int) TimeUnit.SECONDS
+                .toMillis(p2StallTimeoutInSeconds);
+        VerifiedDownloader downloader = new VerifiedDownloader(stallTimeout,
+                stallTimeout);
+        ExecutorService executor = Executors
+                .newFixedThreadPool(Math.max(1, p2DownloadThreads));
+        try {
+            Map<URI, List<URI>> rankedMirrors = rankP2Mirrors(pendingDownloads,
+                    new P2MirrorSelector(executor, stallTimeout,
+                            stallTimeout));
+            Set<URI> stalledMirrors = ConcurrentHashMap.newKeySet();
+            for (int i = 0; i < pendingDownloads.size(); i++) {
+                PendingDownload pendingDownload = pendingDownloads.get(i);
+                int sequence = i;
+                pendingDownload.download = CompletableFuture.supplyAsync(() -> {
+                    try {
+                        return downloadVerifiedP2ArtifactFile(downloader,
+                                pendingDownload.artifactTracker,
+                                pendingDownload.sourceURL, rankedMirrors,
+                                stalledMirrors, sequence);
+                    } catch (IOException e) {
+                        throw new CompletionException(e);
+                    }
+                }, executor);
+            }
+
+            // the build context is only touched here, in declaration order
+            int count = 0;
+            for (PendingDownload pendingDownload : pendingDownloads) {
+                if (processDownloadedP2Artifact(pendingDownload)) {
+                    count++;
                 }
+            }
+            return count;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
 
-                if (isInstallOnLocalRepository()) {
-                    getLog().info(
-                            "Starting installing artifacts into maven local repository");
+    private boolean processDownloadedP2Artifact(
+            PendingDownload pPendingDownload)
+            throws IOException, MojoExecutionException {
+        ArtifactTracker artifactTracker = pPendingDownload.artifactTracker;
+        URL copiedFrom;
+        try {
+            copiedFrom = pPendingDownload.download.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw e;
+        }
+        pPendingDownload.resourceMetadata.process()
+                .associateOutput(artifactTracker.getCachedFilePath().toFile());
+        artifactTracker.setCached();
+        if (isVerbose()) {
+            getLog().info("   Copied p2 artifact file from '" + copiedFrom
+                    + " to " + artifactTracker.getCachedFilePath());
+        }
 
-                    installP2ArtifactIntoMavenLocalRepository(artifactTracker);
-                }
+        Map<String, String> jarManifestHeaders = artifactTracker
+                .getTypeHandler().extractManifestHeadersFromArchive(
+                        artifactTracker.getCachedFilePath().toFile());
+        if (artifactTracker.getTypeHandler()
+                .isArtifactManifestValid(jarManifestHeaders)) {
+            artifactTracker.getManifestHeaders().putAll(jarManifestHeaders);
+        } else {
+            return false;
+        }
 
-                if (isDeployOnRemoteRepository()) {
-                    getLog().info(
-                            "Starting deploying artifacts to remote repository");
-                    deployP2ArtifactIntoMavenRemoteReleaseRepository(
-                            artifactTracker);
-                }
+        if (isInstallOnLocalRepository()) {
+            getLog().info(
+                    "Starting installing artifacts into maven local repository");
 
-                count++;
-            } else {
+            installP2ArtifactIntoMavenLocalRepository(artifactTracker);
+        }
+
+        if (isDeployOnRemoteRepository()) {
+            getLog().info("Starting deploying artifacts to remote repository");
+            deployP2ArtifactIntoMavenRemoteReleaseRepository(artifactTracker);
+        }
+        return true;
+    }
+
+    /**
+     * Reads the mirrors advertised by the p2 repositories that provide the
+     * artifacts to download and ranks them by probing each one with the first
+     * artifact to be downloaded from its repository.
+     *
+     * @return the fastest mirrors of each repository, keyed by the repository
+     *         location.
+     */
+    private Map<URI, List<URI>> rankP2Mirrors(
+            List<PendingDownload> pPendingDownloads,
+            P2MirrorSelector pMirrorSelector) {
+        Map<URI, List<URI>> rankedMirrors = new HashMap<>();
+        if (p2RepositoryIndex == null || isOffline() || p2MaxMirrors <= 0) {
+            return rankedMirrors;
+        }
+        Map<P2ArtifactRepository, String> probePaths = new LinkedHashMap<>();
+        for (PendingDownload pendingDownload : pPendingDownloads) {
+            for (P2ArtifactDescriptor candidate : findP2ArtifactCandidates(
+                    pendingDownload.artifactTracker)) {
+                P2ArtifactRepository repository = candidate.getRepository();
+                if (repository.getMirrorsURL() != null) {
+                    probePaths.putIfAbsent(repository,
+                            repository.getRelativePath(candidate));
+                }
+            }
+        }
+        for (Map.Entry<P2ArtifactRepository, String> probePath : probePaths
+                .entrySet()) {
+            P2ArtifactRepository repository = probePath.getKey();
+            List<URI> mirrors;
+            try {
+                mirrors = pMirrorSelector
+                        .readMirrors(new URL(repository.getMirrorsURL()));
+            } catch (IOException e) {
+                getLog().warn("   Ignoring the mirrors of p2 repository '"
+                        + repository.getLocation() + "': " + e.getMessage());
+                continue;
+            }
+            List<P2MirrorSelector.Mirror> ranked = pMirrorSelector
+                    .rank(mirrors, probePath.getValue());
+            List<URI> fastest = new ArrayList<>(p2MaxMirrors);
+            for (P2MirrorSelector.Mirror mirror : ranked.subList(0,
+                    Math.min(p2MaxMirrors, ranked.size()))) {
+                fastest.add(mirror.getLocation());
                 if (isVerbose()) {
-                    getLog().info("   Bypassing downloading of artifact: "
-                            + artifactTracker.getArtifactId());
+                    getLog().info("   Using p2 mirror " + mirror);
                 }
             }
+            rankedMirrors.put(repository.getLocation(), fastest);
+        }
+        return rankedMirrors;
+    }
 
+    /**
+     * Downloads a p2 artifact file into the cache directory.
+     * <p>
+     * Each location where the artifact was found, in precedence order, is
+     * tried until one copy matches the size and checksums published in the
+     * <i>artifacts.xml</i> file of its repository. For repositories having
+     * mirrors, the fastest mirrors are tried before the repository itself,
+     * starting from a different one for each artifact so the downloads are
+     * spread among them. A mirror that stalls is not tried again.
+     *
+     * @return the URL from where the verified file was downloaded.
+     */
+    private URL downloadVerifiedP2ArtifactFile(VerifiedDownloader pDownloader,
+            ArtifactTracker pArtifactTracker, URL pSourceURL,
+            Map<URI, List<URI>> pRankedMirrors, Set<URI> pStalledMirrors,
+            int pSequence) throws IOException {
+        Path target = pArtifactTracker.getCachedFilePath();
+        List<P2ArtifactDescriptor> candidates = findP2ArtifactCandidates(
+                pArtifactTracker);
+        if (candidates.isEmpty()) {
+            if (p2RepositoryIndex != null) {
+                getLog().warn("   Artifact '"
+                        + pArtifactTracker.getArtifactId() + ":"
+                        + pArtifactTracker.getVersion()
+                        + "' was not found in the p2 repositories metadata, it will be downloaded without verification from "
+                        + pSourceURL);
+            }
+            pDownloader.download(pSourceURL,
+                    Collections.<String, String> emptyMap(), target);
+            return pSourceURL;
+        }
+        IOException lastFailure = null;
+        for (P2ArtifactDescriptor candidate : candidates) {
+            Map<String, String> expectedProperties = verifyP2Checksums
+                    ? candidate.getProperties()
+                    : Collections.<String, String> emptyMap();
+            String relativePath = candidate.getRepository()
+                    .getRelativePath(candidate);
+            List<URI> mirrors = pRankedMirrors.getOrDefault(
+                    candidate.getRepository().getLocation(),
+                    Collections.<URI> emptyList());
+            for (int i = 0; i < mirrors.size(); i++) {
+                URI mirror = mirrors.get((pSequence + i) % mirrors.size());
+                if (pStalledMirrors.contains(mirror)) {
+                    continue;
+                }
+                URL mirrorURL = mirror.resolve(relativePath).toURL();
+                try {
+                    pDownloader.download(mirrorURL, expectedProperties,
+                            target);
+                    return mirrorURL;
+                } catch (SocketTimeoutException e) {
+                    getLog().warn("   Discarding stalled p2 mirror '" + mirror
+                            + "': " + e.getMessage());
+                    pStalledMirrors.add(mirror);
+                    lastFailure = e;
+                } catch (IOException e) {
+                    getLog().warn("   Discarding download of '" + mirrorURL
+                            + "': " + e.getMessage());
+                    lastFailure = e;
+                }
+            }
+            URL candidateURL = candidate.getRepository()
+                    .getArtifactURL(candidate);
+            try {
+                pDownloader.download(candidateURL, expectedProperties, target);
+                return candidateURL;
+            } catch (IOException e) {
+                getLog().warn("   Discarding download of '" + candidateURL
+                        + "': " + e.getMessage());
+                lastFailure = e;
+            }
         }
-        return count;
+        throw new IOException("No verified copy of the p2 artifact '"
+                + pArtifactTracker.getArtifactId() + "' could be downloaded.",
+                lastFailure);
     }
 
     /**
@@ -241,7 +574,8 @@ public class MojoDownloadP2Artifacts extends AbstractOsgiRepositoryMojo {
         try {
 
             File artFile = pArtifactTracker.getCachedFilePath().toFile();
-            File generatedPomFile = generatePomFile(pArtifactTracker);
+            File generatedPomFile = spillPomFile(
+                    buildPomModel(pArtifactTracker));
 
             Artifact artifactMaven = pArtifactTracker.toArtifact();
             artifactMaven.setFile(artFile);
@@ -279,12 +613,15 @@ public class MojoDownloadP2Artifacts extends AbstractOsgiRepositoryMojo {
 
         int count = 0;
         if (!getP2ArtifactSets().getP2ArtifactSets().isEmpty()) {
-            count = artifactTrackerManager
-                    .resolveP2Artifacts(getP2LocalPoolDirectory());
+            count = resolveP2Artifacts(artifactTrackerManager);
         }
         if (count > 0) {
-            downloadAndCopyP2ArtifactsToCache(artifactTrackerManager,
-                    copyBuildContext);
+            try {
+                downloadAndCopyP2ArtifactsToCache(artifactTrackerManager,
+                        copyBuildContext);
+            } finally {
+                deleteSpilledPomFiles();
+            }
         } else {
             getLog().info(
                     "No artifact needs to be downloaded from a p2 repository for project "
@@ -293,6 +630,37 @@ public class MojoDownloadP2Artifacts extends AbstractOsgiRepositoryMojo {
         }
     }
 
+    /**
+     * Resolves the declared p2 artifacts while the declared p2 repositories,
+     * and the children of the composite ones, are read concurrently in order
+     * to build the index used to locate the artifacts to download.
+     */
+    private int resolveP2Artifacts(
+            ArtifactTrackerManager pArtifactTrackerManager)
+            throws MojoExecutionException {
+        ExecutorService executor = Executors
+                .newFixedThreadPool(Math.max(1, p2ResolutionThreads));
+        try {
+            CompletableFuture<P2RepositoryResolver.Index> indexFuture = new P2RepositoryResolver(
+                    executor).resolveAsync(collectP2RepositoryLocations());
+
+            int count = pArtifactTrackerManager
+                    .resolveP2Artifacts(getP2LocalPoolDirectory());
+
+            p2RepositoryIndex = indexFuture.join();
+            if (isVerbose()) {
+                getLog().info("   Indexed "
+                        + CommonMojoConstants.MSG_CHOICE_ARTIFACT.format(
+                                new Object[] { p2RepositoryIndex.size() })
+                        + " from " + p2RepositoryIndex.getRepositories().size()
+                        + " p2 repositories.");
+            }
+            return count;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
     private void installP2ArtifactIntoMavenLocalRepository(
             ArtifactTracker artifactTracker) throws MojoExecutionException {
 
@@ -318,20 +686,14 @@ public class MojoDownloadP2Artifacts extends AbstractOsgiRepositoryMojo {
         try {
 
             File artFile = artifactTracker.getCachedFilePath().toFile();
-            File generatedPomFile = generatePomFile(artifactTracker);
+            Model model = buildPomModel(artifactTracker);
 
             Artifact artifactMaven = artifactTracker.toArtifact();
             artifactMaven.setFile(artFile);
 
-            // attach POM
-            ProjectArtifactMetadata pomMetadata = new ProjectArtifactMetadata(
-                    artifactMaven, generatedPomFile);
-            artifactMaven.addMetadata(pomMetadata);
-
-            buildingRequest.setProcessPlugins(false);
-
-            MavenProject project = projectBuilder
-                    .build(generatedPomFile, buildingRequest).getProject();
+            // the installer attaches the POM file of the project
+            MavenProject project = new MavenProject(model);
+            project.setFile(spillPomFile(model));
             project.setArtifact(artifactMaven);
 
             ProjectInstallerRequest projectInstallerRequest = new ProjectInstallerRequest()
@@ -339,8 +701,8 @@ public class MojoDownloadP2Artifacts extends AbstractOsgiRepositoryMojo {
 
             installer.install(buildingRequest, projectInstallerRequest);
 
-        } catch (ProjectBuildingException | IOException
-                | ArtifactInstallerException | NoFileAssignedException e) {
+        } catch (IOException | ArtifactInstallerException
+                | NoFileAssignedException e) {
             throw new MojoExecutionException(
                     "Failure while installing an artifact into local repository",
                     e);
@@ -348,17 +710,11 @@ public class MojoDownloadP2Artifacts extends AbstractOsgiRepositoryMojo {
     }
 
     /**
-     * Generates a (temporary) POM file from the plugin configuration. It's the
-     * responsibility of the caller to delete the generated file when no longer
-     * needed.
+     * Builds in memory the POM model used to install or deploy a p2 artifact.
      *
-     * @return The path to the generated POM file, never <code>null</code>.
-     * @throws MojoExecutionException
-     *                                    If the POM file could not be
-     *                                    generated.
+     * @return The POM model, never <code>null</code>.
      */
-    private File generatePomFile(ArtifactTracker pArtifactTracker)
-            throws MojoExecutionException {
+    private Model buildPomModel(ArtifactTracker pArtifactTracker) {
         Model model = new Model();
 
         model.setModelVersion("4.0.0");
@@ -367,18 +723,65 @@ public class MojoDownloadP2Artifacts extends AbstractOsgiRepositoryMojo {
         model.setArtifactId(pArtifactTracker.getArtifactId());
         model.setVersion(pArtifactTracker.getVersion());
         model.setPackaging(pArtifactTracker.getType());
+        model.setDescription(pArtifactTracker.getManifestHeaders()
+                .get(CommonMojoConstants.OSGI_BUNDLE_HEADER_DESCRIPTION));
+        model.setName(pArtifactTracker.getManifestHeaders()
+                .get(CommonMojoConstants.OSGI_BUNDLE_HEADER_NAME));
+        return model;
+    }
+
+    /**
+     * Removes the POM files spilled during this execution.
+     */
+    private void deleteSpilledPomFiles() {
+        if (pomSpillDirectory == null) {
+            return;
+        }
+        try {
+            for (File pomFile : spilledPomFiles.values()) {
+                Files.deleteIfExists(pomFile.toPath());
+            }
+            Files.deleteIfExists(pomSpillDirectory);
+        } catch (IOException e) {
+            getLog().warn("Could not delete the temporary POM directory "
+                    + pomSpillDirectory + ": " + e.getMessage());
+        } finally {
+            spilledPomFiles.clear();
+            pomSpillDirectory = null;
+        }
+    }
 
+    /**
+     * Writes a POM model into a file, as required by the maven artifact
+     * metadata. The files are created in a temporary directory that is
+     * removed at the end of the mojo execution, and an artifact that is both
+     * installed and deployed has its POM written only once.
+     *
+     * @return The path to the POM file, never <code>null</code>.
+     * @throws MojoExecutionException
+     *                                    If the POM file could not be
+     *                                    written.
+     */
+    private File spillPomFile(Model pModel) throws MojoExecutionException {
+        String key = pModel.getGroupId() + ':' + pModel.getArtifactId() + ':'
+                + pModel.getVersion();
+        File pomFile = spilledPomFiles.get(key);
+        if (pomFile != null) {
+            return pomFile;
+        }
         Writer writer = null;
         try {
-            model.setDescription(pArtifactTracker.getManifestHeaders()
-                    .get(CommonMojoConstants.OSGI_BUNDLE_HEADER_DESCRIPTION));
-            model.setName(pArtifactTracker.getManifestHeaders()
-                    .get(CommonMojoConstants.OSGI_BUNDLE_HEADER_NAME));
-            File pomFile = File.createTempFile("c8tech-artifact-p2", ".pom");
+            if (pomSpillDirectory == null) {
+                pomSpillDirectory = Files
+                        .createTempDirectory("c8tech-artifact-p2");
+            }
+            pomFile = Files.createTempFile(pomSpillDirectory,
+                    pModel.getArtifactId(), ".pom").toFile();
 
             writer = WriterFactory.newXmlWriter(pomFile);
-            new MavenXpp3Writer().write(writer, model);
+            new MavenXpp3Writer().write(writer, pModel);
 
+            spilledPomFiles.put(key, pomFile);
             return pomFile;
         } catch (IOException e) {
             throw new MojoExecutionException(
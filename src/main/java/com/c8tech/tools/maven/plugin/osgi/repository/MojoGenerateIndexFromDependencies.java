@@ -13,10 +13,14 @@ package com.c8tech.tools.maven.plugin.osgi.repository;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -29,6 +33,7 @@ import org.apache.maven.plugins.annotations.ResolutionScope;
 import org.apache.maven.project.MavenProject;
 
 import com.c8tech.tools.maven.plugin.osgi.repository.utils.RepoIndexBridge;
+import com.c8tech.tools.maven.plugin.osgi.repository.utils.ResourceIndexerServices;
 import com.google.common.collect.Sets;
 
 import br.com.c8tech.tools.maven.osgi.lib.mojo.CommonMojoConstants;
@@ -64,12 +69,16 @@ public class MojoGenerateIndexFromDependencies
 
     private final BuildContext copyContext;
 
+    private final ResourceIndexerServices resourceIndexerServices;
+
     @Inject
     public MojoGenerateIndexFromDependencies(MavenProject project,
-            AggregatorBuildContext pBuildContext, BuildContext pCopyContext) {
+            AggregatorBuildContext pBuildContext, BuildContext pCopyContext,
+            ResourceIndexerServices pResourceIndexerServices) {
         super(project);
         buildContext = pBuildContext;
         copyContext = pCopyContext;
+        resourceIndexerServices = pResourceIndexerServices;
     }
 
     public Path calculateIndexFilePath(boolean compressedArg,
@@ -136,7 +145,9 @@ public class MojoGenerateIndexFromDependencies
 
         InputSet indexInputSet = buildContext.newInputSet();
         try {
-            Set<File> toProcess = copyArtifacts(allArtifacts);
+            Set<File> toProcess = isDirectPack()
+                    ? listCachedArtifacts(allArtifacts)
+                    : copyArtifacts(allArtifacts);
 
             if (isVerbose()) {
                 getLog().info(
@@ -192,6 +203,37 @@ public class MojoGenerateIndexFromDependencies
         }
     }
 
+    /**
+     * Selects the cached artifacts to be indexed in place, recording them in
+     * the list read by the repository archive packing.
+     */
+    private Set<File> listCachedArtifacts(Set<ArtifactTracker> pAllArtifacts)
+            throws MojoExecutionException {
+        Set<File> cachedFiles = new TreeSet<>();
+        for (ArtifactTracker art : pAllArtifacts) {
+            File cachedFile = art.getCachedFilePath().toFile();
+            if (cachedFile.isFile() && !cachedFile.getName().endsWith(".xml")) {
+                cachedFiles.add(cachedFile.getAbsoluteFile());
+            }
+        }
+        List<String> lines = new ArrayList<>(cachedFiles.size());
+        for (File cachedFile : cachedFiles) {
+            lines.add(cachedFile.getPath());
+        }
+        Path listFile = getWorkDirectory().resolve(DIRECT_PACK_LIST_FILE_NAME);
+        try {
+            if (!Files.isRegularFile(listFile) || !lines.equals(
+                    Files.readAllLines(listFile, StandardCharsets.UTF_8))) {
+                Files.createDirectories(listFile.getParent());
+                Files.write(listFile, lines, StandardCharsets.UTF_8);
+            }
+        } catch (IOException e) {
+            throw new MojoExecutionException(
+                    "Failure while writing the list of artifacts to pack.", e);
+        }
+        return cachedFiles;
+    }
+
     private void copyArtifactToRepositoryDir(Path pWorkspaceDir, Path pCacheDir,
             final File pFileToCopy, boolean pWorkspaceProject)
             throws IOException {
@@ -240,7 +282,10 @@ public class MojoGenerateIndexFromDependencies
         final Path subsystemTargetDir;
 
         try {
-            rootDir = getWorkSubDirectory(DEFAULT_WORK_DIR_NAME);
+            // in direct mode the artifacts are indexed where they were cached,
+            // below the same relative directories used in the archive
+            rootDir = isDirectPack() ? getCacheDirectory()
+                    : getWorkSubDirectory(DEFAULT_WORK_DIR_NAME);
             pluginTargetDir = rootDir
                     .resolve(CommonMojoConstants.OSGI_BUNDLES_DIRECTORY);
             subsystemTargetDir = rootDir
@@ -252,7 +297,9 @@ public class MojoGenerateIndexFromDependencies
         Map<String, String> repoindexConfig = buildRepoindexConfigFromParameters(
                 rootDir, pluginTargetDir, subsystemTargetDir, false,
                 isPretty());
-        RepoIndexBridge bindexWrapper = new RepoIndexBridge(getClassLoader(),
+        applyContentDerivedIncrement(repoindexConfig, rootDir, inputs);
+        RepoIndexBridge bindexWrapper = new RepoIndexBridge(
+                resourceIndexerServices, getClassLoader(),
                 knownBundlesExtraFile(), getExtraBundles(),
                 calculateTemporaryDirectory().toString(), isVerbose());
 
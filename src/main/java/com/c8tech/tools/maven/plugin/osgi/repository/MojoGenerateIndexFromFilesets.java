@@ -11,14 +11,30 @@
  */
 package com.c8tech.tools.maven.plugin.osgi.repository;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 
 import javax.inject.Inject;
 
@@ -30,22 +46,29 @@ import org.apache.maven.plugins.annotations.Parameter;
 import org.apache.maven.plugins.annotations.ResolutionScope;
 import org.apache.maven.project.MavenProject;
 
+import com.c8tech.tools.maven.plugin.osgi.repository.utils.ContentCapabilityAppender;
+import com.c8tech.tools.maven.plugin.osgi.repository.utils.InputManifest;
+import com.c8tech.tools.maven.plugin.osgi.repository.utils.ParallelFileWalker;
 import com.c8tech.tools.maven.plugin.osgi.repository.utils.RepoIndexBridge;
+import com.c8tech.tools.maven.plugin.osgi.repository.utils.ResourceIndexerServices;
 import com.google.common.collect.Sets;
 
 import br.com.c8tech.tools.maven.osgi.lib.mojo.CommonMojoConstants;
 import br.com.c8tech.tools.maven.osgi.lib.mojo.beans.FileSet;
-import io.takari.incrementalbuild.Output;
 import io.takari.incrementalbuild.aggregator.AggregatorBuildContext;
 import io.takari.incrementalbuild.aggregator.InputSet;
 
-@Mojo(name = "generateIndexFromFilesets", threadSafe = false,
+@Mojo(name = "generateIndexFromFilesets", threadSafe = true,
         aggregator = false, defaultPhase = LifecyclePhase.VERIFY,
         requiresDependencyResolution = ResolutionScope.COMPILE,
         requiresDependencyCollection = ResolutionScope.COMPILE,
         requiresProject = false, inheritByDefault = true)
 public class MojoGenerateIndexFromFilesets extends AbstractOsgiRepositoryMojo {
 
+    private static final String INPUT_MANIFEST_DIR_NAME = "input-manifest";
+
+    private static final String INPUT_MANIFEST_STATE_FILE_NAME = "input-state.properties";
+
     @Inject
     protected AggregatorBuildContext buildContext;
 
@@ -99,6 +122,84 @@ public class MojoGenerateIndexFromFilesets extends AbstractOsgiRepositoryMojo {
     @Parameter(required = true, property = "osgi.repository.filesets")
     private List<FileSet> fileSets = new ArrayList<>();
 
+    /**
+     * Whether an independent index file should be generated for each fileset,
+     * at the fileset directory, instead of a single index at the
+     * {@link #rootDir} containing the files of all filesets.
+     * <p>
+     * The indexes are generated concurrently, sharing the same indexer
+     * service.
+     */
+    @Parameter(defaultValue = "false",
+            property = "osgi.repository.indexPerFileSet")
+    private boolean indexPerFileSet;
+
+    /**
+     * The number of threads used to find the files of the filesets and to
+     * generate the indexes when {@link #indexPerFileSet} is enabled. Zero
+     * means the number of available processors.
+     */
+    @Parameter(defaultValue = "0", property = "osgi.repository.indexThreads")
+    private int indexThreads;
+
+    /**
+     * Whether the files found should be registered in the incremental build
+     * context through a single list holding their SHA-256 digests, instead of
+     * one by one.
+     * <p>
+     * The digests are kept between builds with the size, modification time
+     * and file key of each file, and a file is only read again when they
+     * change. It makes a build over a large and unchanged set of files a
+     * no-op.
+     */
+    @Parameter(defaultValue = "false",
+            property = "osgi.repository.inputManifest")
+    private boolean inputManifest;
+
+    /**
+     * Whether the files modified shortly before the previous build should
+     * always be read again when {@link #inputManifest} is enabled. It should
+     * be enabled on file systems with coarse timestamps, where a file may be
+     * changed without changing its size and modification time.
+     */
+    @Parameter(defaultValue = "false",
+            property = "osgi.repository.strictChangeDetection")
+    private boolean strictChangeDetection;
+
+    /**
+     * Whether files with the same content, found several times in the
+     * filesets, should be indexed only once. The first file found is the one
+     * indexed.
+     * <p>
+     * The digests are kept between builds like in {@link #inputManifest}.
+     */
+    @Parameter(defaultValue = "false",
+            property = "osgi.repository.deduplicateContent")
+    private boolean deduplicateContent;
+
+    /**
+     * Whether, when {@link #deduplicateContent} is enabled, an extra
+     * <i>osgi.content</i> capability should be added to the indexed resource
+     * for each skipped copy, with the url of the copy.
+     * <p>
+     * The generated index is buffered and parsed again to add them, so the
+     * whole index is held in memory twice, as bytes and as a parsed document.
+     */
+    @Parameter(defaultValue = "false",
+            property = "osgi.repository.duplicateContentCapabilities")
+    private boolean duplicateContentCapabilities;
+
+    private InputManifest manifest;
+
+    /**
+     * Whether the default exclude patterns, which skip metadata files and
+     * whole <code>.cache</code> and <code>.locks</code> directories, should be
+     * added to the excludes of every fileset.
+     */
+    @Parameter(defaultValue = "false",
+            property = "osgi.repository.useDefaultExcludes")
+    private boolean useDefaultExcludes;
+
     /**
      * The directory where the plugin will get the artifacts that will be
      * indexed.
@@ -106,12 +207,17 @@ public class MojoGenerateIndexFromFilesets extends AbstractOsgiRepositoryMojo {
      * When this directory is below the directory where the index file will be
      * generated then the indexer tool will use a relative path for the
      * resource, otherwise an absolute path will be used.
+     * <p>
+     * It is required unless {@link #indexPerFileSet} is enabled.
      *
      * @see #targetDir
      */
-    @Parameter(required = true, property = "osgi.repository.rootDir")
+    @Parameter(property = "osgi.repository.rootDir")
     private File rootDir;
 
+    @Inject
+    private ResourceIndexerServices resourceIndexerServices;
+
     @Inject
     public MojoGenerateIndexFromFilesets(final MavenProject project) {
         super(project, false, new String[0]);
@@ -154,33 +260,17 @@ public class MojoGenerateIndexFromFilesets extends AbstractOsgiRepositoryMojo {
     protected void executeMojo()
             throws MojoExecutionException, MojoFailureException {
 
+        getLog().info(
+                "Started generation of the repository index file for project "
+                        + getProject().getArtifactId());
         try {
-            getLog().info(
-                    "Started generation of the repository index file for project "
-                            + getProject().getArtifactId());
-            Set<File> filesToIndex;
-            final Path rootDirPath = calculateRootDirPath();
-            InputSet inputSet = buildContext.newInputSet();
-            filesToIndex = getDirectoryHelper().findFiles(fileSets);
-            if (filesToIndex.isEmpty()) {
-                getLog().warn(
-                        "No files was found using the provided fileSets parameter:"
-                                + fileSets);
-                return;
-            }
-
-            for (File file : filesToIndex) {
-                if (isVerbose()) {
-                    getLog().info("Adding file '" + file.getName() + "'");
-                }
-                inputSet.addInput(file);
+            prepareInputManifest();
+            if (indexPerFileSet) {
+                generateIndexPerFileSet();
+            } else {
+                generateIndex();
             }
-            Path outputFile = calculateIndexFilePath(isCompressed(),
-                    rootDirPath, getIndexFileName());
-            inputSet.aggregateIfNecessary(outputFile.toFile(), (output,
-                    inputs) -> generateRepository(rootDirPath, output, inputs));
-            getLog().info("Repository index file was generated at :"
-                    + outputFile.toAbsolutePath());
+            saveInputManifest();
         } catch (IOException e) {
             throw new MojoExecutionException(
                     "An error occurred while generating an indexed repository.",
@@ -189,17 +279,234 @@ public class MojoGenerateIndexFromFilesets extends AbstractOsgiRepositoryMojo {
 
     }
 
-    private void generateRepository(Path rootDirPath, Output<File> output,
-            Iterable<File> inputs) throws IOException {
+    private void generateIndex() throws IOException {
+        final Path rootDirPath = calculateRootDirPath();
+        Set<File> filesToIndex = findFiles(fileSets);
+        if (filesToIndex.isEmpty()) {
+            getLog().warn(
+                    "No files was found using the provided fileSets parameter:"
+                            + fileSets);
+            return;
+        }
+        Path outputFile = calculateIndexFilePath(isCompressed(), rootDirPath,
+                getIndexFileName());
+        newInputSet(filesToIndex, outputFile).aggregateIfNecessary(
+                outputFile.toFile(),
+                (output, inputs) -> generateRepository(rootDirPath,
+                        output.newOutputStream(), resolveInputs(inputs)));
+        getLog().info("Repository index file was generated at :"
+                + outputFile.toAbsolutePath());
+    }
+
+    /**
+     * Loads the digests kept by the previous build, when they are used.
+     *
+     * @throws IOException
+     *                         When the digests could not be loaded.
+     */
+    protected void prepareInputManifest() throws IOException {
+        if (inputManifest || deduplicateContent) {
+            manifest = new InputManifest(
+                    getWorkDirectory().resolve(INPUT_MANIFEST_DIR_NAME)
+                            .resolve(INPUT_MANIFEST_STATE_FILE_NAME),
+                    strictChangeDetection);
+        }
+    }
+
+    /**
+     * Saves the digests of the files handled, when they are used.
+     *
+     * @throws IOException
+     *                         When the digests could not be saved.
+     */
+    protected void saveInputManifest() throws IOException {
+        if (manifest != null) {
+            manifest.save();
+        }
+    }
+
+    private Map<File, String> digestAll(Collection<File> pFiles)
+            throws IOException {
+        ExecutorService executor = Executors
+                .newFixedThreadPool(calculateIndexThreads());
+        try {
+            return manifest.digestAll(pFiles, executor);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private int calculateIndexThreads() {
+        return indexThreads > 0 ? indexThreads
+                : Runtime.getRuntime().availableProcessors();
+    }
 
+    protected Set<File> findFiles(List<FileSet> pFileSets)
+            throws IOException {
+        Set<File> files = new LinkedHashSet<>();
+        ForkJoinPool pool = new ForkJoinPool(calculateIndexThreads());
+        try {
+            ParallelFileWalker walker = new ParallelFileWalker(pool);
+            for (FileSet fileSet : pFileSets) {
+                List<String> excludes = new ArrayList<>();
+                if (fileSet.getExcludes() != null) {
+                    excludes.addAll(fileSet.getExcludes());
+                }
+                if (useDefaultExcludes) {
+                    excludes.addAll(Arrays
+                            .asList(defaultExcludeFilePatterns().split(";")));
+                }
+                files.addAll(walker.findFiles(Paths.get(fileSet.getDirectory()),
+                        fileSet.getIncludes(), excludes));
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        return files;
+    }
+
+    private void generateIndexPerFileSet() throws IOException {
+        int threads = calculateIndexThreads();
+        ExecutorService executor = Executors.newFixedThreadPool(
+                Math.max(1, Math.min(threads, fileSets.size())));
+        try {
+            // the build context is only used by this thread, the workers just
+            // write into the outputs it has opened
+            Map<Path, CompletableFuture<Void>> generations = new LinkedHashMap<>();
+            for (FileSet fileSet : fileSets) {
+                final Path fileSetDirPath = Paths.get(fileSet.getDirectory());
+                Set<File> filesToIndex = findFiles(
+                        Collections.singletonList(fileSet));
+                if (filesToIndex.isEmpty()) {
+                    getLog().warn(
+                            "No files was found using the provided fileSet parameter:"
+                                    + fileSet);
+                    continue;
+                }
+                Path outputFile = calculateIndexFilePath(isCompressed(),
+                        fileSetDirPath, getIndexFileName());
+                newInputSet(filesToIndex, outputFile).aggregateIfNecessary(
+                        outputFile.toFile(), (output, inputs) -> {
+                            OutputStream outputStream = output
+                                    .newOutputStream();
+                            Set<File> files = resolveInputs(inputs);
+                            generations.put(outputFile,
+                                    CompletableFuture.runAsync(() -> {
+                                        try {
+                                            generateRepository(fileSetDirPath,
+                                                    outputStream, files);
+                                        } catch (IOException e) {
+                                            throw new UncheckedIOException(e);
+                                        }
+                                    }, executor));
+                        });
+            }
+            for (Map.Entry<Path, CompletableFuture<Void>> generation : generations
+                    .entrySet()) {
+                try {
+                    generation.getValue().join();
+                } catch (CompletionException e) {
+                    if (e.getCause() instanceof UncheckedIOException) {
+                        throw ((UncheckedIOException) e.getCause()).getCause();
+                    }
+                    throw new IOException(e.getCause());
+                }
+                getLog().info("Repository index file was generated at :"
+                        + generation.getKey().toAbsolutePath());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private InputSet newInputSet(Set<File> pFilesToIndex, Path pOutputFile)
+            throws IOException {
+        InputSet inputSet = buildContext.newInputSet();
+        if (inputManifest) {
+            Path listFile = getWorkDirectory().resolve(INPUT_MANIFEST_DIR_NAME)
+                    .resolve(Integer.toHexString(pOutputFile.toAbsolutePath()
+                            .toString().hashCode()) + ".list");
+            if (InputManifest.writeList(listFile, digestAll(pFilesToIndex))) {
+                getLog().info("The content of the files to index changed.");
+            }
+            inputSet.addInput(listFile.toFile());
+            return inputSet;
+        }
+        for (File file : pFilesToIndex) {
+            if (isVerbose()) {
+                getLog().info("Adding file '" + file.getName() + "'");
+            }
+            inputSet.addInput(file);
+        }
+        return inputSet;
+    }
+
+    private Set<File> resolveInputs(Iterable<File> pInputs)
+            throws IOException {
+        if (!inputManifest) {
+            return Sets.newLinkedHashSet(pInputs);
+        }
+        Set<File> files = new LinkedHashSet<>();
+        for (File listFile : pInputs) {
+            files.addAll(InputManifest.readList(listFile.toPath()));
+        }
+        return files;
+    }
+
+    /**
+     * Keeps only the first file found of each content.
+     *
+     * @return the skipped files of each content, keyed by its digest.
+     */
+    private Map<String, List<File>> removeDuplicatedContent(
+            Set<File> pInputs) throws IOException {
+        Map<String, List<File>> duplicates = new HashMap<>();
+        Map<String, File> indexedFiles = new HashMap<>();
+        int skipped = 0;
+        for (Map.Entry<File, String> digest : digestAll(pInputs).entrySet()) {
+            if (indexedFiles.putIfAbsent(digest.getValue(),
+                    digest.getKey()) != null) {
+                duplicates.computeIfAbsent(digest.getValue(),
+                        k -> new ArrayList<>()).add(digest.getKey());
+                pInputs.remove(digest.getKey());
+                skipped++;
+            }
+        }
+        if (skipped > 0) {
+            getLog().info("Skipped " + skipped
+                    + " files whose content was already indexed.");
+        }
+        return duplicates;
+    }
+
+    protected void generateRepository(Path rootDirPath,
+            OutputStream pOutputStream, Set<File> inputs) throws IOException {
+
+        Set<File> filesToIndex = new LinkedHashSet<>(inputs);
+        Map<String, List<File>> duplicates = deduplicateContent
+                ? removeDuplicatedContent(filesToIndex)
+                : Collections.<String, List<File>> emptyMap();
         Map<String, String> repoindexConfig = buildRepoindexConfigFromParameters(
                 rootDirPath, null, null, isCompressed(), isPretty());
-        RepoIndexBridge bindexWrapper = new RepoIndexBridge(getClassLoader(),
+        applyContentDerivedIncrement(repoindexConfig, rootDirPath,
+                filesToIndex);
+        RepoIndexBridge bindexWrapper = new RepoIndexBridge(
+                resourceIndexerServices, getClassLoader(),
                 knownBundlesExtraFile(), getExtraBundles(),
                 calculateTemporaryDirectory().toString(), isVerbose());
         try {
-            bindexWrapper.generateRepositoryIndex(Sets.newLinkedHashSet(inputs),
-                    output.newOutputStream(), repoindexConfig);
+            if (duplicateContentCapabilities && !duplicates.isEmpty()) {
+                ByteArrayOutputStream index = new ByteArrayOutputStream();
+                bindexWrapper.generateRepositoryIndex(filesToIndex, index,
+                        repoindexConfig);
+                ContentCapabilityAppender.append(
+                        new ByteArrayInputStream(index.toByteArray()),
+                        pOutputStream, duplicates, rootDirPath,
+                        isCompressed(), isPretty());
+            } else {
+                bindexWrapper.generateRepositoryIndex(filesToIndex,
+                        pOutputStream, repoindexConfig);
+            }
         } catch (Exception e) {
             throw new IOException(e);
         }
@@ -16,9 +16,19 @@ import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.TimeZone;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import javax.inject.Inject;
 
@@ -28,13 +38,23 @@ import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
 import org.apache.maven.plugins.annotations.ResolutionScope;
 import org.apache.maven.project.MavenProject;
+import org.apache.maven.shared.utils.io.FileUtils;
 import org.eclipse.sisu.equinox.launching.internal.P2ApplicationLauncher;
 
+import com.c8tech.tools.maven.plugin.osgi.repository.utils.FileLinks;
+import com.c8tech.tools.maven.plugin.osgi.repository.utils.P2CategoryPublisher;
+import com.c8tech.tools.maven.plugin.osgi.repository.utils.P2MetadataCompressor;
+import com.c8tech.tools.maven.plugin.osgi.repository.utils.P2NativePublisher;
+import com.c8tech.tools.maven.plugin.osgi.repository.utils.P2PublishState;
+import com.c8tech.tools.maven.plugin.osgi.repository.utils.P2PublisherDaemon;
+import com.c8tech.tools.maven.plugin.osgi.repository.utils.P2RepositoryPruner;
+
 import br.com.c8tech.tools.maven.osgi.lib.mojo.CommonMojoConstants;
 import br.com.c8tech.tools.maven.osgi.lib.mojo.incremental.ArtifactTracker;
 import br.com.c8tech.tools.maven.osgi.lib.mojo.incremental.ArtifactTrackerManager;
 import br.com.c8tech.tools.maven.osgi.lib.mojo.incremental.ArtifactTrackerManagerBuilder;
 import io.takari.incrementalbuild.BasicBuildContext;
+import io.takari.incrementalbuild.ResourceStatus;
 
 /**
  * This mojo will generate an Eclipse P2 repository using as source the declared
@@ -58,8 +78,22 @@ public class MojoGenerateP2FromDependencies extends AbstractOsgiRepositoryMojo {
 
     private static final String CATEGORY_FILE_NAME = "category.xml";
 
+    private static final String ARTIFACTS_FILE_NAME = "artifacts.xml";
+
+    private static final String COMPRESSED_FORMS_DIR_NAME = "p2-compressed";
+
+    private static final String COMPRESSION_STATE_FILE_NAME = "p2-compression.properties";
+
+    private static final String CONTENT_FILE_NAME = "content.xml";
+
     private static final String FILE_SCHEME = "file://";
 
+    private static final String DAEMON_DIR_NAME = "p2-daemon";
+
+    private static final String PUBLISH_STATE_FILE_NAME = "p2-publish.properties";
+
+    private static final String STAGING_DIR_NAME = "p2-staging";
+
     @Inject
     private BasicBuildContext buildContext;
 
@@ -71,9 +105,73 @@ public class MojoGenerateP2FromDependencies extends AbstractOsgiRepositoryMojo {
     @Parameter(property = "osgi.repository.categoryDefinitionFile")
     private File categoryDefinitionFile;
 
+    /**
+     * Whether the p2 metadata files must also be written in its compressed
+     * forms, <i>content.jar</i>, <i>artifacts.jar</i>, <i>content.xml.xz</i>
+     * and <i>artifacts.xml.xz</i>, together with a <i>p2.index</i> file that
+     * makes p2 clients fetch the smallest one.
+     * <p>
+     * The compression runs while the generated bundles are processed. The
+     * compressed forms are moved out of the repository before it is published
+     * again, because p2 readers like the Equinox publisher prefer them to the
+     * <i>.xml</i> files. They are moved back when the metadata file did not
+     * change, and deleted when this parameter is turned off.
+     */
+    @Parameter(defaultValue = "false",
+            property = "osgi.repository.compressP2Metadata")
+    private boolean compressP2Metadata;
+
+    /**
+     * Whether the p2 repository generated by a previous build must be updated
+     * incrementally, appending only the bundles added or modified since then
+     * and removing the units of the deleted ones, instead of being published
+     * again from scratch.
+     * <p>
+     * It applies to the Equinox publisher launched by the module itself. It
+     * is not used together with <code>p2PublisherDaemon</code>, that always
+     * assembles the whole repository, nor with <code>nativeP2Publisher</code>,
+     * that already skips the unmodified bundles.
+     */
+    @Parameter(defaultValue = "false",
+            property = "osgi.repository.incrementalP2Publish")
+    private boolean incrementalP2Publish;
+
     @Inject
     private P2ApplicationLauncher launcher;
 
+    /**
+     * Whether the p2 metadata must be generated by the plugin itself, straight
+     * from the manifest headers of the cached bundles, instead of by the
+     * Equinox p2 publisher applications.
+     * <p>
+     * It avoids starting an OSGi runtime, and downloading it, and is suited
+     * for repositories made only of plain bundles. Features and configuration
+     * units are not generated.
+     */
+    @Parameter(defaultValue = "false",
+            property = "osgi.repository.nativeP2Publisher")
+    private boolean nativeP2Publisher;
+
+    /**
+     * Whether the p2 publishing must be delegated to a publisher shared by all
+     * the modules of the maven session.
+     * <p>
+     * The shared publisher executes the jobs of the modules one at a time and
+     * keeps the metadata generated by the Equinox publisher for each bundle,
+     * so the Equinox runtime is launched only for the bundles not published
+     * yet by another module of the reactor. Features and the other artifacts
+     * that are not bundles are published by every module that has them.
+     * <p>
+     * The repository is always assembled again from that metadata, so
+     * <code>incrementalP2Publish</code> is not used.
+     */
+    @Parameter(defaultValue = "false",
+            property = "osgi.repository.p2PublisherDaemon")
+    private boolean p2PublisherDaemon;
+
+    @Inject
+    private P2PublisherDaemon publisherDaemon;
+
     @Parameter(defaultValue = "0",
             property = "osgi.repository.timeoutInSeconds")
     private int timeoutInSeconds;
@@ -167,9 +265,12 @@ public class MojoGenerateP2FromDependencies extends AbstractOsgiRepositoryMojo {
         Set<ArtifactTracker> allArtifacts = artifactTrackerManager
                 .getAllArtifactTrackers();
         int count = 0;
+        Map<ArtifactTracker, ResourceStatus> cachedArtifacts = new LinkedHashMap<>();
         for (ArtifactTracker input : allArtifacts) {
             if (input.isCached()) {
-                buildContext.registerInput(input.getCachedFilePath().toFile());
+                cachedArtifacts.put(input, buildContext
+                        .registerInput(input.getCachedFilePath().toFile())
+                        .getStatus());
                 count++;
                 if (isVerbose()) {
                     getLog().info(count + "- "
@@ -186,18 +287,89 @@ public class MojoGenerateP2FromDependencies extends AbstractOsgiRepositoryMojo {
         if (buildContext.isProcessingRequired()) {
 
             Path outputDir = getWorkSubDirectory(DEFAULT_WORK_DIR_NAME);
+            P2PublishState publishState = P2PublishState.load(
+                    getWorkDirectory().resolve(PUBLISH_STATE_FILE_NAME));
+            Path compressedFormsDir = getWorkDirectory()
+                    .resolve(COMPRESSED_FORMS_DIR_NAME);
+            try {
+                if (compressP2Metadata) {
+                    P2MetadataCompressor.moveCompressedForms(outputDir,
+                            compressedFormsDir);
+                } else {
+                    P2MetadataCompressor.deleteCompressedForms(outputDir);
+                    P2MetadataCompressor
+                            .deleteCompressedForms(compressedFormsDir);
+                }
+            } catch (IOException e) {
+                throw new MojoExecutionException("An error occurred while"
+                        + " removing the compressed p2 metadata.", e);
+            }
 
-            publishP2Content(outputDir);
+            if (nativeP2Publisher) {
+                publishP2ContentNatively(outputDir, cachedArtifacts,
+                        publishState);
+            } else if (p2PublisherDaemon) {
+                if (incrementalP2Publish) {
+                    getLog().warn("The incrementalP2Publish parameter is not"
+                            + " used by the shared p2 publisher.");
+                }
+                publishP2ContentThroughDaemon(outputDir, cachedArtifacts,
+                        publishState);
+            } else
+                if (!incrementalP2Publish
+                        || !publishP2ContentIncrementally(outputDir,
+                                cachedArtifacts, publishState)) {
+                    publishState.clear();
+                    Path stagingDir = getWorkSubDirectory(STAGING_DIR_NAME);
+                    stageP2Sources(stagingDir, cachedArtifacts.keySet(),
+                            publishState);
+                    publishP2Content(outputDir, stagingDir, false);
+                }
 
             publishP2Category(outputDir);
 
-            File[] outputFiles = outputDir
-                    .resolve(CommonMojoConstants.OSGI_BUNDLES_DIRECTORY)
-                    .toFile().listFiles();
-            for (File outputFile : outputFiles) {
-                buildContext.processOutput(outputFile);
+            ExecutorService executor = compressP2Metadata
+                    ? Executors.newFixedThreadPool(4)
+                    : null;
+            try {
+                // the metadata is compressed while the bundles are processed
+                P2MetadataCompressor compressor = null;
+                CompletableFuture<Void> compression = null;
+                if (compressP2Metadata) {
+                    compressor = new P2MetadataCompressor(executor,
+                            getWorkDirectory()
+                                    .resolve(COMPRESSION_STATE_FILE_NAME),
+                            compressedFormsDir);
+                    compression = CompletableFuture.allOf(
+                            compressor.compressAsync(outputDir,
+                                    P2MetadataCompressor.CONTENT),
+                            compressor.compressAsync(outputDir,
+                                    P2MetadataCompressor.ARTIFACTS));
+                }
+
+                File[] outputFiles = outputDir
+                        .resolve(CommonMojoConstants.OSGI_BUNDLES_DIRECTORY)
+                        .toFile().listFiles();
+                for (File outputFile : outputFiles) {
+                    buildContext.processOutput(outputFile);
+                }
+                count = outputFiles.length;
+
+                publishState.save();
+                if (compressor != null) {
+                    compression.join();
+                    P2MetadataCompressor.writeIndex(outputDir);
+                    compressor.saveState();
+                }
+            } catch (IOException | CompletionException e) {
+                throw new MojoExecutionException(
+                        "An error occurred while finishing the p2 repository.",
+                        e.getCause() != null ? e.getCause() : e);
+            } finally {
+                if (executor != null) {
+                    executor.shutdownNow();
+                }
             }
-            count = outputFiles.length;
             getLog().info("OSGi p2 repository was generated containing "
                     + CommonMojoConstants.MSG_CHOICE_ARTIFACT
                             .format(new Object[] { count }));
@@ -205,9 +377,16 @@ public class MojoGenerateP2FromDependencies extends AbstractOsgiRepositoryMojo {
     }
 
     /**
-     * {@link }
-     * 
+     * Publishes the categories declared in the category definition file into
+     * the generated metadata repository.
+     * <p>
+     * When the category definition only uses constructs supported by
+     * {@link P2CategoryPublisher} the categories are written directly into the
+     * <i>content.xml</i> file, otherwise the Equinox <i>CategoryPublisher</i>
+     * application is launched.
+     *
      * @param pOutputDir
+     *                       The p2 repository directory.
      * @throws MojoFailureException
      * @throws MojoExecutionException
      */
@@ -222,6 +401,42 @@ public class MojoGenerateP2FromDependencies extends AbstractOsgiRepositoryMojo {
                     "Using default category definition file from %s.",
                     categoryDefinitionFile.getAbsolutePath()));
         }
+        Path contentFile = pOutputDir.resolve(CONTENT_FILE_NAME);
+        try {
+            P2CategoryPublisher categoryPublisher = P2CategoryPublisher
+                    .read(categoryDefinitionFile.toPath());
+            if (categoryPublisher.isSupported()
+                    && Files.isRegularFile(contentFile)) {
+                int count = categoryPublisher.publish(contentFile,
+                        calculateCategoryVersion());
+                if (isVerbose()) {
+                    getLog().info("   Published " + count
+                            + " categories into " + contentFile);
+                }
+                return;
+            }
+            getLog().info("Launching the p2 category publisher since "
+                    + (categoryPublisher.isSupported()
+                            ? "no content.xml file was generated."
+                            : "the category definition uses "
+                                    + categoryPublisher
+                                            .getUnsupportedConstruct()));
+        } catch (IOException e) {
+            throw new MojoExecutionException(
+                    "An error occurred while publishing the p2 categories.",
+                    e);
+        }
+        launchP2CategoryPublisher(pOutputDir);
+    }
+
+    private String calculateCategoryVersion() {
+        SimpleDateFormat format = new SimpleDateFormat("'0.0.0.v'yyyyMMdd-HHmm");
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return format.format(getMavenSession().getStartTime());
+    }
+
+    private void launchP2CategoryPublisher(Path pOutputDir)
+            throws MojoFailureException {
         launcher.setWorkingDirectory(pOutputDir.toAbsolutePath().toFile());
         launcher.setApplicationName(APPLICATION_CATEGORIES_PUBLISHER);
         launcher.addArguments("-metadataRepository",
@@ -236,8 +451,21 @@ public class MojoGenerateP2FromDependencies extends AbstractOsgiRepositoryMojo {
         }
     }
 
-    private void publishP2Content(Path pOutputDir)
-            throws MojoExecutionException {
+    /**
+     * Launches the Equinox publisher over a source directory, which must
+     * contain a <i>plugins</i> subdirectory.
+     *
+     * @param pOutputDir
+     *                       The p2 repository directory.
+     * @param pSourceDir
+     *                       The directory containing the bundles to publish.
+     * @param pAppend
+     *                       Whether the bundles must be appended into the
+     *                       existing repository instead of replacing it.
+     * @throws MojoExecutionException
+     */
+    private void publishP2Content(Path pOutputDir, Path pSourceDir,
+            boolean pAppend) throws MojoExecutionException {
 
         launcher.setWorkingDirectory(pOutputDir.toAbsolutePath().toFile());
         launcher.setApplicationName(APPLICATION_CONTENT_PUBLISHER);
@@ -246,7 +474,11 @@ public class MojoGenerateP2FromDependencies extends AbstractOsgiRepositoryMojo {
         launcher.addArguments("-metadataRepository",
                 FILE_SCHEME + pOutputDir.toAbsolutePath().toString());
         launcher.addArguments("-publishArtifacts");
-        launcher.addArguments("-clearPersistedState");
+        if (pAppend) {
+            launcher.addArguments("-append");
+        } else {
+            launcher.addArguments("-clearPersistedState");
+        }
         launcher.addArguments("-artifactRepositoryName",
                 getProject().getArtifactId());
         if (isVerbose()) {
@@ -258,7 +490,7 @@ public class MojoGenerateP2FromDependencies extends AbstractOsgiRepositoryMojo {
         launcher.addArguments("-metadataRepositoryName",
                 getProject().getArtifactId());
         launcher.addArguments("-source",
-                getCacheDirectory().toAbsolutePath().toString());
+                pSourceDir.toAbsolutePath().toString());
 
         int result = launcher.execute(timeoutInSeconds);
         if (result != 0) {
@@ -267,6 +499,267 @@ public class MojoGenerateP2FromDependencies extends AbstractOsgiRepositoryMojo {
         }
     }
 
+    /**
+     * Publishes only the bundles added or modified since the last build,
+     * appending them into the existing repository after removing the units of
+     * the modified and deleted ones.
+     *
+     * @return <code>false</code> when there is no previous publication to be
+     *         updated and a full publication is required.
+     */
+    private boolean publishP2ContentIncrementally(Path pOutputDir,
+            Map<ArtifactTracker, ResourceStatus> pCachedArtifacts,
+            P2PublishState pPublishState) throws MojoExecutionException {
+        if (pPublishState.isEmpty()
+                || !Files.isRegularFile(pOutputDir.resolve(CONTENT_FILE_NAME))
+                || !Files.isRegularFile(
+                        pOutputDir.resolve(ARTIFACTS_FILE_NAME))) {
+            return false;
+        }
+        try {
+            Set<String> obsoleteBundleKeys = new HashSet<>();
+            List<ArtifactTracker> changedArtifacts = new ArrayList<>();
+            collectP2Changes(pCachedArtifacts, pPublishState,
+                    obsoleteBundleKeys, changedArtifacts);
+            int removed = P2RepositoryPruner.prune(pOutputDir,
+                    obsoleteBundleKeys);
+
+            Path stagingDir = getWorkSubDirectory(STAGING_DIR_NAME);
+            int staged = stageP2Sources(stagingDir, changedArtifacts,
+                    pPublishState);
+            if (staged > 0) {
+                publishP2Content(pOutputDir, stagingDir, true);
+            }
+            getLog().info("Incremental p2 publishing appended " + staged
+                    + " and removed " + removed + " installable units.");
+            return true;
+        } catch (IOException e) {
+            throw new MojoExecutionException(
+                    "An error occurred while updating the p2 repository.", e);
+        }
+    }
+
+    /**
+     * Builds the directory used as source by the Equinox publisher, holding a
+     * hard link, or a copy when links are not supported, of each registered
+     * artifact to publish. So the publisher scans only the registered
+     * artifacts instead of the whole cache directory, which may contain stale
+     * files.
+     * <p>
+     * Bundles are staged in the <i>plugins</i> subdirectory, named after their
+     * bundle key. The other artifacts, like features, keep the path they have
+     * in the cache directory, so they are found in the same type directory.
+     * Artifacts cached directly in the cache directory are not staged.
+     * <p>
+     * The key of the bundle provided by each artifact is recorded into the
+     * publish state.
+     *
+     * @return the number of staged artifacts.
+     */
+    private int stageP2Sources(Path pStagingDir,
+            Collection<ArtifactTracker> pArtifacts,
+            P2PublishState pPublishState) throws MojoExecutionException {
+        Path cacheDir = getCacheDirectory().toAbsolutePath();
+        int staged = 0;
+        try {
+            FileUtils.deleteDirectory(pStagingDir.toFile());
+            Files.createDirectories(pStagingDir
+                    .resolve(CommonMojoConstants.OSGI_BUNDLES_DIRECTORY));
+            int copied = 0;
+            for (ArtifactTracker artifactTracker : pArtifacts) {
+                Path cachedFile = artifactTracker.getCachedFilePath()
+                        .toAbsolutePath();
+                String bundleKey = calculateBundleKey(artifactTracker);
+                pPublishState.put(cachedFile, bundleKey);
+                Path target;
+                if (!bundleKey.isEmpty()) {
+                    target = pStagingDir
+                            .resolve(CommonMojoConstants.OSGI_BUNDLES_DIRECTORY)
+                            .resolve(bundleKey + ".jar");
+                } else if (cachedFile.startsWith(cacheDir) && cacheDir
+                        .relativize(cachedFile).getNameCount() > 1) {
+                    target = pStagingDir
+                            .resolve(cacheDir.relativize(cachedFile));
+                } else {
+                    continue;
+                }
+                if (!FileLinks.linkOrCopy(cachedFile, target)) {
+                    copied++;
+                }
+                staged++;
+            }
+            if (copied > 0 && isVerbose()) {
+                getLog().info("   Hard links are not supported, "
+                        + copied + " artifacts were copied into "
+                        + pStagingDir);
+            }
+        } catch (IOException e) {
+            throw new MojoExecutionException(
+                    "An error occurred while staging the artifacts to publish.",
+                    e);
+        }
+        return staged;
+    }
+
+    /**
+     * Compares the cached artifacts with the ones previously published,
+     * collecting the keys of the bundles that must be removed from the
+     * repository and the artifacts that must be published again.
+     */
+    private void collectP2Changes(
+            Map<ArtifactTracker, ResourceStatus> pCachedArtifacts,
+            P2PublishState pPublishState, Set<String> pObsoleteBundleKeys,
+            List<ArtifactTracker> pChangedArtifacts) {
+        Set<Path> currentInputs = new HashSet<>();
+        for (Map.Entry<ArtifactTracker, ResourceStatus> cachedArtifact : pCachedArtifacts
+                .entrySet()) {
+            Path input = cachedArtifact.getKey().getCachedFilePath()
+                    .toAbsolutePath();
+            currentInputs.add(input);
+            String previousKey = pPublishState.getBundleKey(input);
+            if (previousKey == null
+                    || cachedArtifact.getValue() != ResourceStatus.UNMODIFIED) {
+                pChangedArtifacts.add(cachedArtifact.getKey());
+                if (previousKey != null && !previousKey.isEmpty()) {
+                    pObsoleteBundleKeys.add(previousKey);
+                }
+            }
+        }
+        for (Path input : pPublishState.getInputs()) {
+            if (!currentInputs.contains(input)) {
+                String previousKey = pPublishState.getBundleKey(input);
+                if (!previousKey.isEmpty()) {
+                    pObsoleteBundleKeys.add(previousKey);
+                }
+                pPublishState.remove(input);
+            }
+        }
+    }
+
+    private String calculateBundleKey(ArtifactTracker pArtifactTracker)
+            throws MojoExecutionException {
+        String bundleKey = calculateBundleKey(pArtifactTracker,
+                readManifestHeaders(pArtifactTracker));
+        return bundleKey != null ? bundleKey : "";
+    }
+
+    private String calculateBundleKey(ArtifactTracker pArtifactTracker,
+            Map<String, String> pManifestHeaders)
+            throws MojoExecutionException {
+        try {
+            return P2PublishState.toBundleKey(pManifestHeaders);
+        } catch (IllegalArgumentException e) {
+            throw new MojoExecutionException("The bundle "
+                    + pArtifactTracker.getCachedFilePath()
+                    + " has an invalid Bundle-Version: " + e.getMessage(), e);
+        }
+    }
+
+    private Map<String, String> readManifestHeaders(
+            ArtifactTracker pArtifactTracker) throws MojoExecutionException {
+        Map<String, String> manifestHeaders = pArtifactTracker
+                .getManifestHeaders();
+        if (manifestHeaders.isEmpty()) {
+            try {
+                manifestHeaders = pArtifactTracker.getTypeHandler()
+                        .extractManifestHeadersFromArchive(
+                                pArtifactTracker.getCachedFilePath().toFile());
+            } catch (IOException e) {
+                throw new MojoExecutionException(
+                        "An error occurred while reading the manifest of "
+                                + pArtifactTracker.getCachedFilePath(),
+                        e);
+            }
+        }
+        return manifestHeaders;
+    }
+
+    private void publishP2ContentThroughDaemon(Path pOutputDir,
+            Map<ArtifactTracker, ResourceStatus> pCachedArtifacts,
+            P2PublishState pPublishState) throws MojoExecutionException {
+        P2PublisherDaemon.Job job = new P2PublisherDaemon.Job(
+                getProject().getArtifactId(),
+                getMavenSession().getStartTime().getTime(), pOutputDir,
+                getWorkSubDirectory(DAEMON_DIR_NAME),
+                (sourceDir, repositoryDir) -> publishP2Content(repositoryDir,
+                        sourceDir, false));
+        Set<String> obsoleteBundleKeys = new HashSet<>();
+        for (Path input : pPublishState.getInputs()) {
+            obsoleteBundleKeys.add(pPublishState.getBundleKey(input));
+        }
+        pPublishState.clear();
+        Path cacheDir = getCacheDirectory().toAbsolutePath();
+        for (ArtifactTracker artifactTracker : pCachedArtifacts.keySet()) {
+            Path cachedFile = artifactTracker.getCachedFilePath()
+                    .toAbsolutePath();
+            String bundleKey = calculateBundleKey(artifactTracker);
+            pPublishState.put(artifactTracker.getCachedFilePath(), bundleKey);
+            obsoleteBundleKeys.remove(bundleKey);
+            if (!bundleKey.isEmpty()) {
+                job.addBundle(cachedFile, bundleKey);
+            } else if (cachedFile.startsWith(cacheDir)
+                    && cacheDir.relativize(cachedFile).getNameCount() > 1) {
+                // features and the other artifacts keep their cache layout
+                job.addArtifact(cachedFile, cacheDir.relativize(cachedFile)
+                        .toString().replace(File.separatorChar, '/'));
+            }
+        }
+        obsoleteBundleKeys.remove("");
+        try {
+            P2RepositoryPruner.prune(pOutputDir, obsoleteBundleKeys);
+            int published = publisherDaemon.submit(job).join();
+            if (isVerbose()) {
+                getLog().info("   The shared p2 publisher published "
+                        + published + " bundles, after "
+                        + publisherDaemon.getLaunches()
+                        + " Equinox launches in this session.");
+            }
+        } catch (IOException | CompletionException e) {
+            throw new MojoExecutionException(
+                    "An error occurred while publishing the p2 metadata.",
+                    e.getCause() != null ? e.getCause() : e);
+        }
+    }
+
+    private void publishP2ContentNatively(Path pOutputDir,
+            Map<ArtifactTracker, ResourceStatus> pCachedArtifacts,
+            P2PublishState pPublishState) throws MojoExecutionException {
+        P2NativePublisher publisher = new P2NativePublisher(
+                getProject().getArtifactId(),
+                getMavenSession().getStartTime().getTime());
+        try {
+            Set<String> obsoleteBundleKeys = new HashSet<>();
+            for (Path input : pPublishState.getInputs()) {
+                obsoleteBundleKeys.add(pPublishState.getBundleKey(input));
+            }
+            pPublishState.clear();
+            for (Map.Entry<ArtifactTracker, ResourceStatus> cachedArtifact : pCachedArtifacts
+                    .entrySet()) {
+                ArtifactTracker artifactTracker = cachedArtifact.getKey();
+                Map<String, String> manifestHeaders = readManifestHeaders(
+                        artifactTracker);
+                String bundleKey = calculateBundleKey(artifactTracker,
+                        manifestHeaders);
+                pPublishState.put(artifactTracker.getCachedFilePath(),
+                        bundleKey != null ? bundleKey : "");
+                obsoleteBundleKeys.remove(bundleKey);
+                if (!publisher.addBundle(manifestHeaders,
+                        artifactTracker.getCachedFilePath(),
+                        cachedArtifact.getValue() != ResourceStatus.UNMODIFIED)
+                        && isVerbose()) {
+                    getLog().info("   Skipping non bundle artifact: "
+                            + artifactTracker.getCachedFilePath());
+                }
+            }
+            obsoleteBundleKeys.remove("");
+            P2RepositoryPruner.prune(pOutputDir, obsoleteBundleKeys);
+            publisher.publish(pOutputDir);
+        } catch (IOException | IllegalArgumentException e) {
+            throw new MojoExecutionException(
+                    "An error occurred while publishing the p2 metadata.", e);
+        }
+    }
+
     @Override
     public void setCacheDirectory(File cacheDirectory) {
         super.setCacheDirectory(cacheDirectory);
@@ -13,11 +13,10 @@ package com.c8tech.tools.maven.plugin.osgi.repository;
 
 import java.io.File;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Optional;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
 
 import javax.inject.Inject;
 
@@ -28,6 +27,9 @@ import org.apache.maven.plugins.annotations.Parameter;
 import org.apache.maven.plugins.annotations.ResolutionScope;
 import org.apache.maven.project.MavenProject;
 
+import com.c8tech.tools.maven.plugin.osgi.repository.utils.P2UnitReader;
+import com.c8tech.tools.maven.plugin.osgi.repository.utils.TargetDefinitionWriter;
+
 import br.com.c8tech.tools.maven.osgi.lib.mojo.CommonMojoConstants;
 import br.com.c8tech.tools.maven.osgi.lib.mojo.incremental.ArtifactTracker;
 import br.com.c8tech.tools.maven.osgi.lib.mojo.incremental.ArtifactTrackerManager;
@@ -61,6 +63,15 @@ public class MojoGenerateTargetDefinitionFile
     @Parameter(defaultValue = "false")
     private boolean generateTargetPlatformDefinition;
 
+    /**
+     * Whether the units of the target definition must be read from the
+     * metadata of the generated p2 repository archive instead of resolving
+     * again the maven and p2 dependencies of the project.
+     */
+    @Parameter(defaultValue = "false",
+            property = "osgi.repository.targetUnitsFromP2Metadata")
+    private boolean targetUnitsFromP2Metadata;
+
     /**
      * The name used to identify the target definition file.
      */
@@ -72,15 +83,15 @@ public class MojoGenerateTargetDefinitionFile
         super(pProject);
     }
 
-    private String newUnitLine(ArtifactTracker pArtifactTracker)
-            throws IOException {
+    private boolean writeUnit(TargetDefinitionWriter pWriter,
+            ArtifactTracker pArtifactTracker) throws IOException {
         String id = pArtifactTracker.getManifestHeaders()
                 .get(CommonMojoConstants.OSGI_BUNDLE_HEADER_SN);
         if (id == null || id.isEmpty()) {
 
             getLog().warn("Ignoring bundle with invalid SN: "
                     + pArtifactTracker.getArtifactId());
-            return null;
+            return false;
         }
         int i = id.indexOf(';');
         if (i > 0) {
@@ -92,10 +103,11 @@ public class MojoGenerateTargetDefinitionFile
 
             getLog().warn("Ignoring bundle with invalid version: "
                     + pArtifactTracker.getArtifactId());
-            return null;
+            return false;
         }
 
-        return "<unit id=\"" + id + "\" version=\"" + version + "\"/>";
+        pWriter.addUnit(id.trim(), version.trim());
+        return true;
     }
 
     private File calculateTargetDefinitionFileName() {
@@ -128,6 +140,11 @@ public class MojoGenerateTargetDefinitionFile
             return;
         }
 
+        if (targetUnitsFromP2Metadata) {
+            prepareForTargetDefinitionFileGenerationFromP2Metadata();
+            return;
+        }
+
         ArtifactTrackerManager artifactTrackerManager = ArtifactTrackerManagerBuilder
                 .newBuilder(getMavenSession(),
                         getWorkSubDirectory(DEFAULT_WORK_DIR_NAME))
@@ -177,34 +194,78 @@ public class MojoGenerateTargetDefinitionFile
                 "Start generation of the target definition file for project "
                         + getProject().getArtifactId());
 
-        List<String> xmlFile = new ArrayList<>();
-        xmlFile.add(
-                "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>");
-        xmlFile.add("<?pde version=\"3.8\"?>");
-        xmlFile.add("<target name=\"" + targetDefinitionName
-                + "\" sequenceNumber=\"0\">");
-        xmlFile.add("<locations>");
-        xmlFile.add(
-                "<location includeAllPlatforms=\"false\" includeConfigurePhase=\"false\" "
-                        + "includeMode=\"slicer\" includeSource=\"false\" type=\"InstallableUnit\">");
-        xmlFile.add("<repository location=\"jar:file:"
-                + generatedP2ArchiveName.getAbsolutePath() + "!/\"/>");
-        for (File file : pInputs) {
-            ArtifactTracker artifact = pArtifactTrackers
-                    .searchByPath(file.getPath());
+        try (TargetDefinitionWriter writer = new TargetDefinitionWriter(
+                pOutputFile.newOutputStream(), targetDefinitionName)) {
+            writer.startLocation("jar:"
+                    + generatedP2ArchiveName.getAbsoluteFile().toURI() + "!/");
+            writeUnits(writer, pArtifactTrackers, pInputs);
+        }
 
-            if (artifact != null) {
-                Optional<String> result = getValidBundleTypes().stream()
-                        .filter(t -> t.trim().equals(artifact.getType().trim()))
-                        .findFirst();
-                if (result.isPresent()) {
-                    String piece = newUnitLine(artifact);
-                    if (piece != null && !piece.isEmpty()) {
-                        xmlFile.add(piece);
+        getLog().info(
+                "The platform definition file was successfully generated for project "
+                        + getProject().getArtifactId());
+    }
+
+    protected void generateTargetPlatformDefinitionFileFromP2Metadata(
+            Output<File> pOutputFile) throws IOException {
+        getLog().info(
+                "Start generation of the target definition file for project "
+                        + getProject().getArtifactId()
+                        + " from the generated p2 metadata");
+
+        try (TargetDefinitionWriter writer = new TargetDefinitionWriter(
+                pOutputFile.newOutputStream(), targetDefinitionName)) {
+            writer.startLocation("jar:"
+                    + generatedP2ArchiveName.getAbsoluteFile().toURI() + "!/");
+            int count = P2UnitReader.read(generatedP2ArchiveName.toPath(),
+                    (id, version) -> {
+                        writer.addUnit(id, version);
                         if (isVerbose()) {
-                            getLog().info("  Included unit for: "
-                                    + artifact.getArtifactId());
+                            getLog().info("  Included unit: " + id + " "
+                                    + version);
                         }
+                    });
+            getLog().info("The platform definition file was successfully "
+                    + "generated containing " + count + " units for project "
+                    + getProject().getArtifactId());
+        }
+    }
+
+    private void prepareForTargetDefinitionFileGenerationFromP2Metadata()
+            throws MojoExecutionException {
+        InputSet inputSet = aggregatorBuildContext.newInputSet();
+        try {
+            inputSet.addInput(generatedP2ArchiveName);
+            inputSet.aggregateIfNecessary(calculateTargetDefinitionFileName(),
+                    (output, inputs) -> generateTargetPlatformDefinitionFileFromP2Metadata(
+                            output));
+        } catch (IOException e) {
+            throw new MojoExecutionException(
+                    "Failure occurred while generating the target definition file",
+                    e);
+        }
+    }
+
+    private void writeUnits(TargetDefinitionWriter pWriter,
+            ArtifactTrackerManager pArtifactTrackers, Iterable<File> pInputs)
+            throws IOException {
+        Map<String, ArtifactTracker> trackersByPath = indexByCachedPath(
+                pArtifactTrackers);
+        Set<String> validBundleTypes = new HashSet<>();
+        for (String type : getValidBundleTypes()) {
+            validBundleTypes.add(type.trim());
+        }
+        for (File file : pInputs) {
+            ArtifactTracker artifact = trackersByPath.get(file.getPath());
+            if (artifact == null) {
+                artifact = pArtifactTrackers.searchByPath(file.getPath());
+            }
+
+            if (artifact != null) {
+                if (validBundleTypes.contains(artifact.getType().trim())) {
+                    if (writeUnit(pWriter, artifact) && isVerbose()) {
+                        getLog().info("  Included unit for: "
+                                + artifact.getArtifactId());
                     }
                 } else {
 
@@ -217,16 +278,24 @@ public class MojoGenerateTargetDefinitionFile
                 continue;
             }
         }
-        xmlFile.add("</location>");
-        xmlFile.add("</locations>");
-        xmlFile.add("</target>");
-
-        Files.write(pOutputFile.getResource().toPath(), xmlFile,
-                StandardCharsets.UTF_8);
+    }
 
-        getLog().info(
-                "The platform definition file was successfully generated for project "
-                        + getProject().getArtifactId());
+    /**
+     * Indexes the trackers by the path of their cached files, so each input
+     * is matched in constant time.
+     */
+    private static Map<String, ArtifactTracker> indexByCachedPath(
+            ArtifactTrackerManager pArtifactTrackers) {
+        Map<String, ArtifactTracker> trackersByPath = new HashMap<>();
+        for (ArtifactTracker artifactTracker : pArtifactTrackers
+                .getAllArtifactTrackers()) {
+            if (artifactTracker.getCachedFilePath() != null) {
+                trackersByPath.putIfAbsent(
+                        artifactTracker.getCachedFilePath().toString(),
+                        artifactTracker);
+            }
+        }
+        return trackersByPath;
     }
 
     private void prepareForTargetDefinitionFileGeneration(
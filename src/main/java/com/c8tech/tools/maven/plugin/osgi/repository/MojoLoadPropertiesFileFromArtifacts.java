@@ -12,8 +12,13 @@
 package com.c8tech.tools.maven.plugin.osgi.repository;
 
 import java.io.IOException;
-import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import javax.inject.Inject;
 
@@ -25,6 +30,8 @@ import org.apache.maven.plugins.annotations.Parameter;
 import org.apache.maven.plugins.annotations.ResolutionScope;
 import org.apache.maven.project.MavenProject;
 
+import com.c8tech.tools.maven.plugin.osgi.repository.utils.PropertiesArtifactCache;
+
 import br.com.c8tech.tools.maven.osgi.lib.mojo.beans.PropertiesArtifactSet;
 import br.com.c8tech.tools.maven.osgi.lib.mojo.incremental.ArtifactTracker;
 import br.com.c8tech.tools.maven.osgi.lib.mojo.incremental.ArtifactTrackerManager;
@@ -48,7 +55,7 @@ import io.takari.incrementalbuild.BuildContext;
  *
  */
 @Mojo(name = "loadProperties", defaultPhase = LifecyclePhase.VALIDATE,
-        threadSafe = false,
+        threadSafe = true,
         requiresDependencyResolution = ResolutionScope.RUNTIME_PLUS_SYSTEM,
         requiresProject = true, inheritByDefault = true, aggregator = false)
 public class MojoLoadPropertiesFileFromArtifacts
@@ -73,11 +80,15 @@ public class MojoLoadPropertiesFileFromArtifacts
     @Parameter
     private PropertiesArtifactSet propertiesArtifactSet;
 
+    private final PropertiesArtifactCache propertiesCache;
+
     @Inject
     public MojoLoadPropertiesFileFromArtifacts(MavenProject project,
-            BuildContext pCopyBuildContext) {
+            BuildContext pCopyBuildContext,
+            PropertiesArtifactCache pPropertiesCache) {
         super(project);
         copyBuildContext = pCopyBuildContext;
+        propertiesCache = pPropertiesCache;
         addExtraSupportedPackaging("osgi.repository");
     }
 
@@ -128,36 +139,57 @@ public class MojoLoadPropertiesFileFromArtifacts
             return;
         }
 
-        for (ArtifactTracker artifactTracker : artifactTrackerManager
-                .getPropertiesArtifactTrackers()) {
-
-            try {
-                loadProperties(artifactTracker);
-            } catch (IOException e) {
-                throw new MojoExecutionException(
-                        "Error reading properties for project.", e);
+        List<ArtifactTracker> artifactTrackers = new ArrayList<>(
+                artifactTrackerManager.getPropertiesArtifactTrackers());
+        ExecutorService executor = artifactTrackers.size() > 1
+                ? Executors.newFixedThreadPool(Math.min(artifactTrackers.size(),
+                        Runtime.getRuntime().availableProcessors()))
+                : null;
+        try {
+            // parsed concurrently but applied in the declaration order
+            List<CompletableFuture<Properties>> loadedProperties = new ArrayList<>();
+            for (ArtifactTracker artifactTracker : artifactTrackers) {
+                getLog().info("    Loading properties from "
+                        + artifactTracker.getCachedFilePath().toFile());
+                loadedProperties.add(executor != null
+                        ? propertiesCache.loadAsync(
+                                calculateCoordinates(artifactTracker),
+                                artifactTracker.getCachedFilePath(), executor)
+                        : CompletableFuture.completedFuture(
+                                propertiesCache.load(
+                                        calculateCoordinates(artifactTracker),
+                                        artifactTracker.getCachedFilePath())));
+            }
+            for (CompletableFuture<Properties> properties : loadedProperties) {
+                applyProperties(properties.join());
+            }
+        } catch (IOException | CompletionException e) {
+            throw new MojoExecutionException(
+                    "Error reading properties for project.",
+                    e.getCause() != null ? e.getCause() : e);
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
             }
         }
     }
 
-    private void loadProperties(ArtifactTracker pArtifactTracker)
-            throws IOException {
-        getLog().info("    Loading properties from "
-                + pArtifactTracker.getCachedFilePath().toFile());
-
-        try (final InputStream stream = pArtifactTracker.getCachedFilePath()
-                .toFile().toURI().toURL().openStream();) {
-
-            if (keyPrefix != null) {
-                Properties properties = new Properties();
-                properties.load(stream);
-                Properties projectProperties = getProject().getProperties();
-                for (String key : properties.stringPropertyNames()) {
-                    projectProperties.put(keyPrefix + key, properties.get(key));
-                }
-            } else {
-                getProject().getProperties().load(stream);
+    private void applyProperties(Properties pProperties) {
+        Properties projectProperties = getProject().getProperties();
+        if (keyPrefix != null) {
+            for (String key : pProperties.stringPropertyNames()) {
+                projectProperties.put(keyPrefix + key, pProperties.get(key));
             }
+        } else {
+            projectProperties.putAll(pProperties);
         }
     }
+
+    private static String calculateCoordinates(
+            ArtifactTracker pArtifactTracker) {
+        return pArtifactTracker.getGroupId() + ':'
+                + pArtifactTracker.getArtifactId() + ':'
+                + pArtifactTracker.getType() + ':'
+                + pArtifactTracker.getVersion();
+    }
 }
@@ -11,19 +11,38 @@
  */
 package com.c8tech.tools.maven.plugin.osgi.repository;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import javax.inject.Inject;
-import javax.inject.Named;
 
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipFile;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
 import org.apache.maven.plugins.annotations.ResolutionScope;
 import org.apache.maven.project.MavenProject;
-import org.codehaus.plexus.archiver.Archiver;
+import org.apache.maven.project.MavenProjectHelper;
+
+import com.c8tech.tools.maven.plugin.osgi.repository.utils.ParallelFrameOutputStream;
+import com.c8tech.tools.maven.plugin.osgi.repository.utils.ParallelZipWriter;
+import com.c8tech.tools.maven.plugin.osgi.repository.utils.TarArchiveWriter;
 
 import io.takari.incrementalbuild.Output;
 import io.takari.incrementalbuild.aggregator.AggregatorBuildContext;
@@ -45,15 +64,71 @@ import io.takari.incrementalbuild.aggregator.InputSet;
         requiresDependencyResolution = ResolutionScope.COMPILE)
 public class MojoPackRepositoryArchive extends AbstractOsgiRepositoryMojo {
 
+    private static final String ENTRY_POLICY_KEY = "@entryPolicy";
+
+    private static final String PACK_STATE_FILE_NAME = "pack-state.properties";
+
+    private static final String PREVIOUS_ARCHIVE_NAME = "previous.zip";
+
+    // 1980-01-01T00:00:02Z, the smallest time a zip entry can keep
+    private static final long REPRODUCIBLE_DEFAULT_TIME = 315532802000L;
+
+    private static final String SCATTER_DIR_NAME = "pack-scatter";
+
+    private static final String TAR_EXTENSION = "tar.";
+
     @Inject
     private AggregatorBuildContext aggregatorBuildContext;
 
     /**
-     * The Zip archiver.
+     * The number of threads compressing the archive entries concurrently. When
+     * not greater than zero the number of available processors is used.
+     */
+    @Parameter(defaultValue = "0", property = "osgi.repository.packThreads")
+    private int packThreads;
+
+    /**
+     * How the archive entries are compressed. With the default,
+     * <code>STORE_COMPRESSED</code>, entries already compressed like bundles,
+     * subsystems and other archives are stored, and only the remaining ones,
+     * like the index and p2 metadata files, are deflated. With
+     * <code>DEFLATE_ALL</code> every entry is deflated.
      */
+    @Parameter(defaultValue = "STORE_COMPRESSED",
+            property = "osgi.repository.archiveEntryPolicy")
+    private ParallelZipWriter.EntryPolicy archiveEntryPolicy;
+
+    /**
+     * Whether the archive generated by a previous build must be reused. The
+     * compressed bytes of the entries whose files kept the same size and
+     * modification time are copied from the previous archive, so only the
+     * changed files are compressed again.
+     */
+    @Parameter(defaultValue = "false",
+            property = "osgi.repository.incrementalArchive")
+    private boolean incrementalArchive;
+
+    /**
+     * The timestamp given to the archive entries in reproducible mode, either
+     * in ISO-8601 format or as seconds since the epoch. When not set a fixed
+     * date is used.
+     */
+    @Parameter(defaultValue = "${project.build.outputTimestamp}")
+    private String outputTimestamp;
+
     @Inject
-    @Named("zip")
-    private Archiver zipArchiver;
+    private MavenProjectHelper projectHelper;
+
+    /**
+     * An optional tar archive generated beside the zip one and attached to the
+     * project, either <code>tar.xz</code> or <code>tar.zst</code>.
+     * <p>
+     * The tar content is split into chunks compressed concurrently, which makes
+     * both formats pack and unpack much faster than the zip one for
+     * repositories made of many small entries.
+     */
+    @Parameter(property = "osgi.repository.tarArchiveFormat")
+    private String tarArchiveFormat;
 
     @Inject
     public MojoPackRepositoryArchive(MavenProject project) {
@@ -85,10 +160,29 @@ public class MojoPackRepositoryArchive extends AbstractOsgiRepositoryMojo {
 
             InputSet packInputSet = aggregatorBuildContext.newInputSet();
             packInputSet.addInputs(workdir.toFile(), null, null);
+            if (isDirectPack()) {
+                addCachedArtifacts(packInputSet);
+            }
             packInputSet.aggregateIfNecessary(archiveName,
                     (output, inputs) -> generateRepositoryArchive(workdir,
                             output, inputs));
             getProject().getArtifact().setFile(archiveName);
+
+            if (tarArchiveFormat != null && !tarArchiveFormat.isEmpty()) {
+                ParallelFrameOutputStream.Codec codec = calculateTarCodec();
+                File tarArchiveName = calculateTarArchiveName(codec);
+                InputSet tarInputSet = aggregatorBuildContext.newInputSet();
+                tarInputSet.addInputs(workdir.toFile(), null, null);
+                if (isDirectPack()) {
+                    addCachedArtifacts(tarInputSet);
+                }
+                tarInputSet.aggregateIfNecessary(tarArchiveName,
+                        (output, inputs) -> generateTarArchive(workdir,
+                                output, inputs, codec));
+                projectHelper.attachArtifact(getProject(),
+                        TAR_EXTENSION + codec.getExtension(), getClassifier(),
+                        tarArchiveName);
+            }
         } catch (IOException e) {
             throw new MojoExecutionException(
                     "Failure occurred while generating the OSGi repository archive",
@@ -103,17 +197,207 @@ public class MojoPackRepositoryArchive extends AbstractOsgiRepositoryMojo {
         getLog().info(
                 "Starting to pack the items of OSGi repository archive for project "
                         + getProject().getArtifactId());
-        for (File file : pInputs) {
-            Path target = pWorkDir.relativize(file.toPath());
-            zipArchiver.addFile(file, target.toString());
-            if (isVerbose()) {
-                getLog().info("  Included file: " + target.toString());
+        Map<String, Path> inputs = collectArchiveEntries(pWorkDir, pInputs);
+
+        Path packStateFile = getWorkDirectory().resolve(PACK_STATE_FILE_NAME);
+        Properties previousPackState = loadPackState(packStateFile);
+        Properties packState = new Properties();
+        packState.setProperty(ENTRY_POLICY_KEY, archiveEntryPolicy.name());
+
+        int threads = packThreads > 0 ? packThreads
+                : Runtime.getRuntime().availableProcessors();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        Path previousArchive = null;
+        boolean written = false;
+        File archive = pOutputFile.getResource();
+        try {
+            Path scatterDir = getWorkSubDirectory(SCATTER_DIR_NAME);
+            if (incrementalArchive && archive.isFile()
+                    && archiveEntryPolicy.name().equals(previousPackState
+                            .getProperty(ENTRY_POLICY_KEY))) {
+                Path movedArchive = scatterDir.resolve(PREVIOUS_ARCHIVE_NAME);
+                Files.move(archive.toPath(), movedArchive,
+                        StandardCopyOption.REPLACE_EXISTING);
+                previousArchive = movedArchive;
             }
+            int reused = 0;
+            try (ZipFile previousZipFile = previousArchive != null
+                    ? new ZipFile(previousArchive.toFile())
+                    : null;
+                    ParallelZipWriter zipWriter = new ParallelZipWriter(
+                            pOutputFile.process().getResource(), executor,
+                            scatterDir, archiveEntryPolicy, threads * 4)) {
+                if (isReproducible()) {
+                    zipWriter.setFixedEntryTime(calculateReproducibleTime());
+                }
+                for (Map.Entry<String, Path> input : inputs.entrySet()) {
+                    String entryName = input.getKey();
+                    Path file = input.getValue();
+                    String signature = Files.size(file) + ":"
+                            + Files.getLastModifiedTime(file).toMillis();
+                    packState.setProperty(entryName, signature);
+                    ZipArchiveEntry previousEntry = previousZipFile != null
+                            && signature.equals(
+                                    previousPackState.getProperty(entryName))
+                                            ? previousZipFile
+                                                    .getEntry(entryName)
+                                            : null;
+                    if (previousEntry != null) {
+                        zipWriter.addRawEntry(previousZipFile, previousEntry);
+                        reused++;
+                    } else {
+                        zipWriter.addFile(file, entryName);
+                    }
+                    if (isVerbose()) {
+                        getLog().info("  Included file: " + entryName
+                                + (previousEntry != null ? " (unchanged)"
+                                        : ""));
+                    }
+                }
+                zipWriter.finish();
+            }
+            written = true;
+            if (previousArchive != null) {
+                getLog().info("Reused " + reused + " of " + inputs.size()
+                        + " entries from the previous archive.");
+            }
+        } catch (MojoExecutionException e) {
+            throw new IOException(e);
+        } finally {
+            executor.shutdownNow();
+            if (previousArchive != null) {
+                if (written) {
+                    Files.deleteIfExists(previousArchive);
+                } else {
+                    // keeps the last good archive when the new one failed
+                    Files.move(previousArchive, archive.toPath(),
+                            StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+        }
+        try (OutputStream out = Files.newOutputStream(packStateFile)) {
+            packState.store(out, "repository archive entries");
         }
-        zipArchiver.setDestFile(pOutputFile.process().getResource());
-        zipArchiver.createArchive();
         getLog().info(
                 "OSGi repository archive was successfully generated for project "
                         + getProject().getArtifactId());
     }
+
+    private ParallelFrameOutputStream.Codec calculateTarCodec()
+            throws MojoExecutionException {
+        for (ParallelFrameOutputStream.Codec codec : ParallelFrameOutputStream.Codec
+                .values()) {
+            if (tarArchiveFormat
+                    .equalsIgnoreCase(TAR_EXTENSION + codec.getExtension())) {
+                return codec;
+            }
+        }
+        throw new MojoExecutionException("Unsupported tar archive format: "
+                + tarArchiveFormat + ". Use tar.xz or tar.zst.");
+    }
+
+    private File calculateTarArchiveName(
+            ParallelFrameOutputStream.Codec pCodec) {
+        String name = getArtifactFileName()
+                + (getClassifier() != null ? "-" + getClassifier() : "") + "."
+                + TAR_EXTENSION + pCodec.getExtension();
+        return new File(getProject().getBuild().getDirectory(), name);
+    }
+
+    private long calculateReproducibleTime() throws IOException {
+        if (outputTimestamp == null || outputTimestamp.trim().isEmpty()) {
+            return REPRODUCIBLE_DEFAULT_TIME;
+        }
+        String timestamp = outputTimestamp.trim();
+        try {
+            if (timestamp.chars().allMatch(Character::isDigit)) {
+                return Long.parseLong(timestamp) * 1000L;
+            }
+            return OffsetDateTime.parse(timestamp).toInstant().toEpochMilli();
+        } catch (DateTimeParseException | NumberFormatException e) {
+            throw new IOException(
+                    "Invalid project.build.outputTimestamp: " + timestamp, e);
+        }
+    }
+
+    private static Properties loadPackState(Path pPackStateFile) {
+        Properties packState = new Properties();
+        if (Files.isRegularFile(pPackStateFile)) {
+            try (InputStream in = Files.newInputStream(pPackStateFile)) {
+                packState.load(in);
+            } catch (IOException | IllegalArgumentException e) { // NOSONAR
+                packState.clear();
+            }
+        }
+        return packState;
+    }
+
+    /**
+     * Maps the inputs to their entry names, sorted so the entry order does not
+     * depend on the file system.
+     */
+    private Map<String, Path> collectArchiveEntries(Path pWorkDir,
+            Iterable<File> pInputs) {
+        Map<String, Path> inputs = new TreeMap<>();
+        for (File file : pInputs) {
+            Path input = file.toPath();
+            if (!input.startsWith(pWorkDir)) {
+                // a cached artifact, packed in direct mode
+                inputs.putIfAbsent(toEntryName(
+                        getCacheDirectory().relativize(input)), input);
+            } else {
+                inputs.put(toEntryName(pWorkDir.relativize(input)), input);
+            }
+        }
+        return inputs;
+    }
+
+    protected void generateTarArchive(Path pWorkDir, Output<File> pOutputFile,
+            Iterable<File> pInputs, ParallelFrameOutputStream.Codec pCodec)
+            throws IOException {
+        getLog().info("Starting to pack the items of OSGi repository "
+                + pCodec.getExtension() + " archive for project "
+                + getProject().getArtifactId());
+        Map<String, Path> inputs = collectArchiveEntries(pWorkDir, pInputs);
+        long fixedTime = isReproducible() ? calculateReproducibleTime() : -1;
+
+        int threads = packThreads > 0 ? packThreads
+                : Runtime.getRuntime().availableProcessors();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            TarArchiveWriter.write(new ParallelFrameOutputStream(
+                    new BufferedOutputStream(pOutputFile.newOutputStream()),
+                    pCodec, executor, threads * 2), inputs, fixedTime);
+        } finally {
+            executor.shutdownNow();
+        }
+        getLog().info("OSGi repository " + pCodec.getExtension()
+                + " archive was successfully generated for project "
+                + getProject().getArtifactId());
+    }
+
+    /**
+     * Registers as inputs the cached artifacts listed by the index generation
+     * when in direct mode.
+     */
+    private void addCachedArtifacts(InputSet pPackInputSet)
+            throws IOException {
+        Path listFile = getWorkDirectory().resolve(DIRECT_PACK_LIST_FILE_NAME);
+        if (!Files.isRegularFile(listFile)) {
+            getLog().warn(
+                    "No list of cached artifacts was found, only the work directory will be packed.");
+            return;
+        }
+        for (String line : Files.readAllLines(listFile,
+                StandardCharsets.UTF_8)) {
+            File cachedFile = new File(line);
+            if (cachedFile.isFile()) {
+                pPackInputSet.addInput(cachedFile);
+            }
+        }
+    }
+
+    private static String toEntryName(Path pRelativePath) {
+        return pRelativePath.toString().replace(File.separatorChar, '/');
+    }
 }
@@ -0,0 +1,246 @@
+/**
+ * ============================================================================
+ *  Copyright ©  2015-2019,    Cristiano V. Gavião
+ *
+ *  All rights reserved.
+ *  This program and the accompanying materials are made available under
+ *  the terms of the Eclipse Public License v1.0 which accompanies this
+ *  distribution and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * ============================================================================
+ */
+package com.c8tech.tools.maven.plugin.osgi.repository;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Inject;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.plugins.annotations.ResolutionScope;
+import org.apache.maven.project.MavenProject;
+
+import br.com.c8tech.tools.maven.osgi.lib.mojo.beans.FileSet;
+
+/**
+ * This mojo keeps the repository index file of a set of directories up to
+ * date, watching them for added, replaced or removed files.
+ * <p>
+ * It is intended to be run from the command line against a shared bundle
+ * directory. The indexer service is started once, bursts of changes are
+ * grouped and the index is only generated again when the indexed files have
+ * really changed. The new index replaces the previous one atomically, so
+ * readers never see a partial file.
+ * <p>
+ * A single index is kept at the root directory, the
+ * <code>indexPerFileSet</code> parameter is not used by this goal.
+ *
+ * @author Cristiano Gavião
+ *
+ */
+@Mojo(name = "watchFilesets", threadSafe = true, aggregator = false,
+        requiresDependencyResolution = ResolutionScope.COMPILE,
+        requiresDependencyCollection = ResolutionScope.COMPILE,
+        requiresProject = false, inheritByDefault = true)
+public class MojoWatchFilesets extends MojoGenerateIndexFromFilesets {
+
+    /**
+     * How long, in milliseconds, the directories must stay unchanged before
+     * the index is generated again.
+     */
+    @Parameter(defaultValue = "2000",
+            property = "osgi.repository.watchDebounce")
+    private long watchDebounce;
+
+    /**
+     * For how long, in milliseconds, the directories are watched. Zero means
+     * until the build is interrupted.
+     */
+    @Parameter(defaultValue = "0", property = "osgi.repository.watchTimeout")
+    private long watchTimeout;
+
+    private final Map<WatchKey, Path> watchedDirectories = new HashMap<>();
+
+    @Inject
+    public MojoWatchFilesets(final MavenProject project) {
+        super(project);
+    }
+
+    private static Map<File, String> calculateState(Set<File> pFiles) {
+        Map<File, String> state = new HashMap<>();
+        for (File file : pFiles) {
+            state.put(file, file.length() + ":" + file.lastModified());
+        }
+        return state;
+    }
+
+    @Override
+    protected void executeMojo()
+            throws MojoExecutionException, MojoFailureException {
+
+        long deadline = watchTimeout > 0
+                ? System.currentTimeMillis() + watchTimeout
+                : Long.MAX_VALUE;
+        try (WatchService watchService = FileSystems.getDefault()
+                .newWatchService()) {
+            Path rootDirPath = calculateRootDirPath();
+            for (FileSet fileSet : getFileSets()) {
+                Path directory = Paths.get(fileSet.getDirectory());
+                if (Files.isDirectory(directory)) {
+                    register(watchService, directory);
+                }
+            }
+            Map<File, String> indexedState = updateIndex(rootDirPath, null);
+            getLog().info("Watching the filesets " + getFileSets()
+                    + " for changes.");
+            while (waitForChanges(watchService, deadline)) {
+                indexedState = updateIndex(rootDirPath, indexedState);
+            }
+        } catch (IOException e) {
+            throw new MojoExecutionException(
+                    "An error occurred while watching the filesets.", e);
+        } catch (InterruptedException e) {
+            getLog().info("Stopped watching the filesets.");
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private boolean handleEvents(WatchService pWatchService, WatchKey pKey)
+            throws IOException {
+        Path directory = watchedDirectories.get(pKey);
+        boolean changed = false;
+        for (WatchEvent<?> event : pKey.pollEvents()) {
+            changed = true;
+            if (event.kind() == ENTRY_CREATE && directory != null) {
+                Path created = directory.resolve((Path) event.context());
+                if (Files.isDirectory(created)) {
+                    register(pWatchService, created);
+                }
+            }
+        }
+        if (!pKey.reset()) {
+            watchedDirectories.remove(pKey);
+        }
+        return changed;
+    }
+
+    private static void moveIndexFile(Path pTemporaryFile, Path pOutputFile)
+            throws IOException {
+        try {
+            Files.move(pTemporaryFile, pOutputFile,
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(pTemporaryFile, pOutputFile,
+                    StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private void register(WatchService pWatchService, Path pDirectory)
+            throws IOException {
+        Files.walkFileTree(pDirectory, new SimpleFileVisitor<Path>() {
+
+            @Override
+            public FileVisitResult preVisitDirectory(Path pDir,
+                    BasicFileAttributes pAttrs) throws IOException {
+                watchedDirectories.put(pDir.register(pWatchService,
+                        ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY), pDir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private Map<File, String> updateIndex(Path pRootDirPath,
+            Map<File, String> pIndexedState) throws IOException {
+        Set<File> filesToIndex = findFiles(getFileSets());
+        Map<File, String> state = calculateState(filesToIndex);
+        if (state.equals(pIndexedState)) {
+            if (isVerbose()) {
+                getLog().info("The indexed files did not change.");
+            }
+            return pIndexedState;
+        }
+        Path outputFile = calculateIndexFilePath(isCompressed(), pRootDirPath,
+                getIndexFileName());
+        if (filesToIndex.isEmpty()) {
+            getLog().warn(
+                    "No files was found using the provided fileSets parameter:"
+                            + getFileSets());
+            Files.deleteIfExists(outputFile);
+            return state;
+        }
+        Path temporaryFile = outputFile
+                .resolveSibling(outputFile.getFileName() + ".tmp");
+        try {
+            // the digests of a previous update must not be kept
+            prepareInputManifest();
+            try (OutputStream out = Files.newOutputStream(temporaryFile)) {
+                generateRepository(pRootDirPath, out, filesToIndex);
+            }
+            moveIndexFile(temporaryFile, outputFile);
+            saveInputManifest();
+        } catch (IOException e) {
+            getLog().warn("The repository index file could not be generated,"
+                    + " it will be tried again on the next change.", e);
+            Files.deleteIfExists(temporaryFile);
+            return pIndexedState;
+        }
+        getLog().info("Repository index file of " + filesToIndex.size()
+                + " files was generated at :"
+                + outputFile.toAbsolutePath());
+        return state;
+    }
+
+    /**
+     * Waits for a change and then until no change happens during the
+     * debounce time.
+     *
+     * @return false when the watch time has elapsed.
+     */
+    private boolean waitForChanges(WatchService pWatchService, long pDeadline)
+            throws IOException, InterruptedException {
+        boolean changed = false;
+        while (!changed) {
+            long remaining = pDeadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                return false;
+            }
+            WatchKey key = pWatchService.poll(remaining,
+                    TimeUnit.MILLISECONDS);
+            if (key == null) {
+                return false;
+            }
+            changed = handleEvents(pWatchService, key);
+        }
+        WatchKey key;
+        while ((key = pWatchService.poll(watchDebounce,
+                TimeUnit.MILLISECONDS)) != null) {
+            handleEvents(pWatchService, key);
+        }
+        return true;
+    }
+}
@@ -0,0 +1,144 @@
+/**
+ * ============================================================================
+ *  Copyright ©  2015-2019,    Cristiano V. Gavião
+ *
+ *  All rights reserved.
+ *  This program and the accompanying materials are made available under
+ *  the terms of the Eclipse Public License v1.0 which accompanies this
+ *  distribution and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * ============================================================================
+ */
+package com.c8tech.tools.maven.plugin.osgi.repository.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.jdom2.Document;
+import org.jdom2.Element;
+import org.jdom2.JDOMException;
+import org.jdom2.input.SAXBuilder;
+import org.jdom2.output.Format;
+import org.jdom2.output.XMLOutputter;
+
+/**
+ * Adds to the resources of a repository index an extra
+ * <i>osgi.content</i> capability for each duplicated copy of their content,
+ * pointing to the copy.
+ * <p>
+ * It allows a resource whose file was found several times to be indexed only
+ * once while still advertising every location where it can be downloaded.
+ *
+ * @author Cristiano Gavião
+ *
+ */
+public final class ContentCapabilityAppender {
+
+    private static final String OSGI_CONTENT = "osgi.content";
+
+    private ContentCapabilityAppender() {
+    }
+
+    private static String calculateUrl(String pCanonicalUrl, Path pRootDir,
+            File pDuplicate) {
+        Path duplicate = pDuplicate.toPath().toAbsolutePath();
+        Path rootDir = pRootDir.toAbsolutePath();
+        if (pCanonicalUrl.contains(":") || !duplicate.startsWith(rootDir)) {
+            return duplicate.toUri().toString();
+        }
+        return rootDir.relativize(duplicate).toString()
+                .replace(File.separatorChar, '/');
+    }
+
+    private static Element findAttribute(Element pCapability, String pName) {
+        for (Element attribute : pCapability.getChildren("attribute",
+                RepoIndexBridge.NS)) {
+            if (pName.equals(attribute.getAttributeValue("name"))) {
+                return attribute;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Copies a repository index adding the content capabilities of the
+     * duplicated files.
+     *
+     * @param pIndex
+     *                        The index generated for the canonical files.
+     * @param pOut
+     *                        The stream receiving the updated index. It is
+     *                        closed by this method.
+     * @param pDuplicates
+     *                        The duplicated files of each content, keyed by
+     *                        the hexadecimal SHA-256 digest.
+     * @param pRootDir
+     *                        The directory relative urls are resolved against.
+     * @param pCompressed
+     *                        Whether the index is gzip compressed.
+     * @param pPretty
+     *                        Whether the updated index should be indented.
+     * @return the number of capabilities added.
+     * @throws IOException
+     *                         When the index could not be parsed or written.
+     */
+    public static int append(InputStream pIndex, OutputStream pOut,
+            Map<String, List<File>> pDuplicates, Path pRootDir,
+            boolean pCompressed, boolean pPretty) throws IOException {
+        Document document;
+        try (InputStream in = pCompressed ? new GZIPInputStream(pIndex)
+                : pIndex) {
+            SAXBuilder builder = new SAXBuilder();
+            builder.setExpandEntities(false);
+            document = builder.build(in);
+        } catch (JDOMException e) {
+            throw new IOException("Failure while parsing the repository index.",
+                    e);
+        }
+        int added = 0;
+        for (Element resource : document.getRootElement()
+                .getChildren("resource", RepoIndexBridge.NS)) {
+            List<Element> capabilities = resource.getChildren("capability",
+                    RepoIndexBridge.NS);
+            for (Element capability : new ArrayList<>(capabilities)) {
+                if (!OSGI_CONTENT
+                        .equals(capability.getAttributeValue("namespace"))) {
+                    continue;
+                }
+                Element digest = findAttribute(capability, OSGI_CONTENT);
+                Element url = findAttribute(capability, "url");
+                List<File> duplicates = digest != null
+                        ? pDuplicates.get(digest.getAttributeValue("value")
+                                .toLowerCase())
+                        : null;
+                if (url == null || duplicates == null) {
+                    continue;
+                }
+                int position = capabilities.indexOf(capability);
+                for (File duplicate : duplicates) {
+                    Element copy = capability.clone();
+                    findAttribute(copy, "url").setAttribute("value",
+                            calculateUrl(url.getAttributeValue("value"),
+                                    pRootDir, duplicate));
+                    capabilities.add(++position, copy);
+                    added++;
+                }
+            }
+        }
+        Format format = pPretty ? Format.getPrettyFormat()
+                : Format.getRawFormat();
+        try (OutputStream out = pCompressed ? new GZIPOutputStream(pOut)
+                : pOut) {
+            new XMLOutputter(format).output(document, out);
+        }
+        return added;
+    }
+}
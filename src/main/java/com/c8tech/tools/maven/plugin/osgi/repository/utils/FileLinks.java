@@ -0,0 +1,57 @@
+/**
+ * ============================================================================
+ *  Copyright ©  2015-2019,    Cristiano V. Gavião
+ *
+ *  All rights reserved.
+ *  This program and the accompanying materials are made available under
+ *  the terms of the Eclipse Public License v1.0 which accompanies this
+ *  distribution and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * ============================================================================
+ */
+package com.c8tech.tools.maven.plugin.osgi.repository.utils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Helpers to build views of existing files without copying their bytes.
+ *
+ * @author Cristiano Gavião
+ *
+ */
+public final class FileLinks {
+
+    private FileLinks() {
+    }
+
+    /**
+     * Creates a hard link to a file, or copies it when the file system does
+     * not support hard links between the informed locations, like when they
+     * are on different devices. An existing target is replaced.
+     *
+     * @param pSource
+     *                    The existing file.
+     * @param pTarget
+     *                    The link to create.
+     * @return <code>true</code> if a link was created, <code>false</code> when
+     *         the file was copied.
+     * @throws IOException
+     *                         When neither a link nor a copy could be made.
+     */
+    public static boolean linkOrCopy(Path pSource, Path pTarget)
+            throws IOException {
+        Files.createDirectories(pTarget.getParent());
+        Files.deleteIfExists(pTarget);
+        try {
+            Files.createLink(pTarget, pSource);
+            return true;
+        } catch (IOException | UnsupportedOperationException
+                | SecurityException e) { // NOSONAR
+            Files.copy(pSource, pTarget, StandardCopyOption.REPLACE_EXISTING);
+            return false;
+        }
+    }
+}
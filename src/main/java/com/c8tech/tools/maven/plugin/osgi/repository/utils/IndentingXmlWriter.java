@@ -0,0 +1,122 @@
+/**
+ * ============================================================================
+ *  Copyright ©  2015-2019,    Cristiano V. Gavião
+ *
+ *  All rights reserved.
+ *  This program and the accompanying materials are made available under
+ *  the terms of the Eclipse Public License v1.0 which accompanies this
+ *  distribution and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * ============================================================================
+ */
+package com.c8tech.tools.maven.plugin.osgi.repository.utils;
+
+import java.io.OutputStream;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+/**
+ * A thin indenting wrapper over a {@link XMLStreamWriter}, used to stream the
+ * XML files generated by the plugin.
+ *
+ * @author Cristiano Gavião
+ *
+ */
+public final class IndentingXmlWriter {
+
+    private int depth;
+
+    private final XMLStreamWriter writer;
+
+    /**
+     * Starts a new UTF-8 document.
+     *
+     * @param pOut
+     *                                The stream to write into.
+     * @param pInstructionTarget
+     *                                The target of the processing instruction
+     *                                written after the XML declaration.
+     * @param pInstructionData
+     *                                The data of the processing instruction.
+     * @throws XMLStreamException
+     *                                When the document could not be started.
+     */
+    public IndentingXmlWriter(OutputStream pOut, String pInstructionTarget,
+            String pInstructionData) throws XMLStreamException {
+        writer = XMLOutputFactory.newInstance().createXMLStreamWriter(pOut,
+                "UTF-8");
+        writer.writeStartDocument("UTF-8", "1.0");
+        writer.writeCharacters("\n");
+        writer.writeProcessingInstruction(pInstructionTarget,
+                pInstructionData);
+    }
+
+    /**
+     * Ends the document, without closing the underlying stream.
+     *
+     * @throws XMLStreamException
+     *                                When the document could not be written.
+     */
+    public void close() throws XMLStreamException {
+        writer.writeCharacters("\n");
+        writer.writeEndDocument();
+        writer.close();
+    }
+
+    public void empty(String pName, String... pAttributes)
+            throws XMLStreamException {
+        indent();
+        writer.writeEmptyElement(pName);
+        writeAttributes(pAttributes);
+    }
+
+    public void end() throws XMLStreamException {
+        depth--;
+        indent();
+        writer.writeEndElement();
+    }
+
+    /**
+     * Writes the buffered content into the underlying stream.
+     *
+     * @throws XMLStreamException
+     *                                When the content could not be written.
+     */
+    public void flush() throws XMLStreamException {
+        writer.flush();
+    }
+
+    private void indent() throws XMLStreamException {
+        StringBuilder indentation = new StringBuilder("\n");
+        for (int i = 0; i < depth; i++) {
+            indentation.append("  ");
+        }
+        writer.writeCharacters(indentation.toString());
+    }
+
+    public void start(String pName, String... pAttributes)
+            throws XMLStreamException {
+        indent();
+        writer.writeStartElement(pName);
+        writeAttributes(pAttributes);
+        depth++;
+    }
+
+    public void text(String pName, String pText, String... pAttributes)
+            throws XMLStreamException {
+        indent();
+        writer.writeStartElement(pName);
+        writeAttributes(pAttributes);
+        writer.writeCharacters(pText);
+        writer.writeEndElement();
+    }
+
+    private void writeAttributes(String... pAttributes)
+            throws XMLStreamException {
+        for (int i = 0; i < pAttributes.length; i += 2) {
+            writer.writeAttribute(pAttributes[i], pAttributes[i + 1]);
+        }
+    }
+}
@@ -0,0 +1,290 @@
+/**
+ * ============================================================================
+ *  Copyright ©  2015-2019,    Cristiano V. Gavião
+ *
+ *  All rights reserved.
+ *  This program and the accompanying materials are made available under
+ *  the terms of the Eclipse Public License v1.0 which accompanies this
+ *  distribution and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * ============================================================================
+ */
+package com.c8tech.tools.maven.plugin.osgi.repository.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+/**
+ * Keeps the SHA-256 digests of a large set of files between builds, together
+ * with their size, modification time and file key, so only the files whose
+ * metadata changed are read again.
+ * <p>
+ * The digests are written into a list file that is the only input registered
+ * in the incremental build context. It is rewritten only when the content of
+ * a file really changed, so a run over unchanged files is a no-op.
+ * <p>
+ * On file systems with coarse timestamps a file changed right after the
+ * previous build may keep its size and modification time. In strict mode the
+ * files modified less than {@link #RACY_WINDOW_MILLIS} before the previous
+ * build started taking the digests are always read again.
+ *
+ * @author Cristiano Gavião
+ *
+ */
+public final class InputManifest {
+
+    /**
+     * The interval, coarser than the timestamp resolution of the usual file
+     * systems, during which an unchanged metadata is not trusted in strict
+     * mode.
+     */
+    public static final long RACY_WINDOW_MILLIS = 2000L;
+
+    /**
+     * The state entry holding the time the digests started being taken. It
+     * can not clash with the absolute paths of the files.
+     */
+    private static final String START_TIME_KEY = "build.startTime";
+
+    private final Map<String, String> currentState = new ConcurrentHashMap<>();
+
+    private final Properties previousState = new Properties();
+
+    private final long previousStateTime;
+
+    private final long startTime = System.currentTimeMillis();
+
+    private final Path stateFile;
+
+    private final boolean strict;
+
+    /**
+     * Loads the state saved by the previous build. The creation time is kept
+     * as the time this build started taking the digests.
+     *
+     * @param pStateFile
+     *                       The file where the state is kept.
+     * @param pStrict
+     *                       Whether recently modified files should always be
+     *                       read again.
+     * @throws IOException
+     *                         When the state file could not be read.
+     */
+    public InputManifest(Path pStateFile, boolean pStrict) throws IOException {
+        stateFile = pStateFile;
+        strict = pStrict;
+        if (Files.isRegularFile(pStateFile)) {
+            try (InputStream in = Files.newInputStream(pStateFile)) {
+                previousState.load(in);
+            }
+            previousStateTime = parseStartTime(
+                    (String) previousState.remove(START_TIME_KEY));
+        } else {
+            previousStateTime = 0L;
+        }
+    }
+
+    private static String calculateDigest(Path pFile) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = Files.newInputStream(pFile)) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        StringBuilder builder = new StringBuilder();
+        for (byte b : digest.digest()) {
+            builder.append(Character.forDigit((b >> 4) & 0xF, 16))
+                    .append(Character.forDigit(b & 0xF, 16));
+        }
+        return builder.toString();
+    }
+
+    private static long parseStartTime(String pValue) {
+        if (pValue == null) {
+            return 0L;
+        }
+        try {
+            return Long.parseLong(pValue);
+        } catch (NumberFormatException e) { // NOSONAR
+            return 0L;
+        }
+    }
+
+    /**
+     * Reads the files of a list file written by
+     * {@link #writeList(Path, Map)}.
+     *
+     * @param pListFile
+     *                      The list file.
+     * @return the files, in the list order.
+     * @throws IOException
+     *                         When the list could not be read.
+     */
+    public static List<File> readList(Path pListFile) throws IOException {
+        List<File> files = new ArrayList<>();
+        for (String line : Files.readAllLines(pListFile,
+                StandardCharsets.UTF_8)) {
+            int separator = line.indexOf(' ');
+            if (separator > 0) {
+                files.add(new File(line.substring(separator + 1)));
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Returns the digest of a file, reading it only when its metadata does
+     * not match the one already digested during this build or saved by the
+     * previous build.
+     *
+     * @param pFile
+     *                  The file.
+     * @return the hexadecimal SHA-256 digest.
+     * @throws IOException
+     *                         When the file could not be read.
+     */
+    public String digest(File pFile) throws IOException {
+        Path path = pFile.toPath().toAbsolutePath();
+        BasicFileAttributes attributes = Files.readAttributes(path,
+                BasicFileAttributes.class);
+        long modified = attributes.lastModifiedTime().toMillis();
+        String metadata = attributes.size() + ":" + modified + ":"
+                + (attributes.fileKey() != null ? attributes.fileKey() : "");
+        String key = path.toString();
+        String current = currentState.get(key);
+        if (current != null && current.startsWith(metadata + "=")) {
+            return current.substring(metadata.length() + 1);
+        }
+        String previous = previousState.getProperty(key);
+        String digest;
+        if (previous != null && previous.startsWith(metadata + "=")
+                && (!strict || modified
+                        + RACY_WINDOW_MILLIS < previousStateTime)) {
+            digest = previous.substring(metadata.length() + 1);
+        } else {
+            digest = calculateDigest(path);
+        }
+        currentState.put(key, metadata + "=" + digest);
+        return digest;
+    }
+
+    /**
+     * Returns the digests of a set of files, reading the changed ones
+     * concurrently.
+     *
+     * @param pFiles
+     *                      The files.
+     * @param pExecutor
+     *                      The executor where the files are read.
+     * @return the digest of each file, in the iteration order of the set.
+     * @throws IOException
+     *                         When a file could not be read.
+     */
+    public Map<File, String> digestAll(Collection<File> pFiles,
+            Executor pExecutor) throws IOException {
+        Map<File, CompletableFuture<String>> futures = new LinkedHashMap<>();
+        for (File file : pFiles) {
+            futures.put(file, CompletableFuture.supplyAsync(() -> {
+                try {
+                    return digest(file);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, pExecutor));
+        }
+        Map<File, String> digests = new LinkedHashMap<>();
+        try {
+            for (Map.Entry<File, CompletableFuture<String>> future : futures
+                    .entrySet()) {
+                digests.put(future.getKey(), future.getValue().join());
+            }
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+        return digests;
+    }
+
+    /**
+     * Saves the metadata and digests of the files handled during this build,
+     * forgetting the ones that were not handled.
+     *
+     * @throws IOException
+     *                         When the state could not be written.
+     */
+    public void save() throws IOException {
+        Properties state = new Properties();
+        state.putAll(currentState);
+        state.setProperty(START_TIME_KEY, Long.toString(startTime));
+        Files.createDirectories(stateFile.getParent());
+        try (OutputStream out = Files.newOutputStream(stateFile)) {
+            state.store(out, null);
+        }
+    }
+
+    /**
+     * Writes the digests and the paths of a set of files, sorted by path,
+     * unless the list file already has the same content.
+     *
+     * @param pListFile
+     *                      The list file.
+     * @param pDigests
+     *                      The digest of each file.
+     * @return true when the list file was written.
+     * @throws IOException
+     *                         When the list could not be written.
+     */
+    public static boolean writeList(Path pListFile, Map<File, String> pDigests)
+            throws IOException {
+        Map<String, String> sorted = new TreeMap<>();
+        for (Map.Entry<File, String> entry : pDigests.entrySet()) {
+            sorted.put(entry.getKey().getAbsolutePath(), entry.getValue());
+        }
+        StringBuilder content = new StringBuilder();
+        for (Map.Entry<String, String> entry : sorted.entrySet()) {
+            content.append(entry.getValue()).append(' ').append(entry.getKey())
+                    .append('\n');
+        }
+        byte[] bytes = content.toString().getBytes(StandardCharsets.UTF_8);
+        if (Files.isRegularFile(pListFile)
+                && Arrays.equals(bytes, Files.readAllBytes(pListFile))) {
+            return false;
+        }
+        Path parent = pListFile.getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        Files.write(pListFile, bytes);
+        return true;
+    }
+}
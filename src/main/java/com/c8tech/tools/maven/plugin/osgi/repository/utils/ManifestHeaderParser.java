@@ -0,0 +1,162 @@
+/**
+ * ============================================================================
+ *  Copyright ©  2015-2019,    Cristiano V. Gavião
+ *
+ *  All rights reserved.
+ *  This program and the accompanying materials are made available under
+ *  the terms of the Eclipse Public License v1.0 which accompanies this
+ *  distribution and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * ============================================================================
+ */
+package com.c8tech.tools.maven.plugin.osgi.repository.utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A minimal parser for OSGi manifest headers, like <i>Export-Package</i> or
+ * <i>Require-Bundle</i>, following the common header syntax of the OSGi core
+ * specification.
+ *
+ * @author Cristiano Gavião
+ *
+ */
+public final class ManifestHeaderParser {
+
+    /**
+     * One clause of a manifest header. A clause may hold more than one path
+     * sharing the same attributes and directives.
+     */
+    public static final class Clause {
+
+        private final Map<String, String> attributes = new LinkedHashMap<>();
+
+        private final Map<String, String> directives = new LinkedHashMap<>();
+
+        private final List<String> paths = new ArrayList<>(1);
+
+        public String getAttribute(String pName) {
+            return attributes.get(pName);
+        }
+
+        public Map<String, String> getAttributes() {
+            return Collections.unmodifiableMap(attributes);
+        }
+
+        public String getDirective(String pName) {
+            return directives.get(pName);
+        }
+
+        public Map<String, String> getDirectives() {
+            return Collections.unmodifiableMap(directives);
+        }
+
+        public List<String> getPaths() {
+            return Collections.unmodifiableList(paths);
+        }
+    }
+
+    private ManifestHeaderParser() {
+    }
+
+    /**
+     * Parses the value of a manifest header.
+     *
+     * @param pHeaderValue
+     *                         The header value, may be <code>null</code>.
+     * @return the clauses found, possibly empty.
+     */
+    public static List<Clause> parse(String pHeaderValue) {
+        if (pHeaderValue == null || pHeaderValue.trim().isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<Clause> clauses = new ArrayList<>();
+        for (String clauseText : split(pHeaderValue, ',')) {
+            Clause clause = new Clause();
+            for (String part : split(clauseText, ';')) {
+                int separator = indexOfUnquoted(part, '=');
+                if (separator < 0) {
+                    clause.paths.add(part);
+                } else
+                    if (separator > 0 && part.charAt(separator - 1) == ':') {
+                        clause.directives.put(
+                                part.substring(0, separator - 1).trim(),
+                                unquote(part.substring(separator + 1)));
+                    } else {
+                        String name = part.substring(0, separator).trim();
+                        int type = name.indexOf(':');
+                        if (type > 0) {
+                            name = name.substring(0, type).trim();
+                        }
+                        clause.attributes.put(name,
+                                unquote(part.substring(separator + 1)));
+                    }
+            }
+            if (!clause.paths.isEmpty()) {
+                clauses.add(clause);
+            }
+        }
+        return clauses;
+    }
+
+    /**
+     * Returns the first path of a header, like the symbolic name of a
+     * <i>Bundle-SymbolicName</i> header, ignoring its attributes and
+     * directives.
+     *
+     * @param pHeaderValue
+     *                         The header value, may be <code>null</code>.
+     * @return the first path or <code>null</code>.
+     */
+    public static String firstPath(String pHeaderValue) {
+        List<Clause> clauses = parse(pHeaderValue);
+        return clauses.isEmpty() ? null : clauses.get(0).paths.get(0);
+    }
+
+    private static int indexOfUnquoted(String pText, char pChar) {
+        boolean quoted = false;
+        for (int i = 0; i < pText.length(); i++) {
+            char c = pText.charAt(i);
+            if (c == '"') {
+                quoted = !quoted;
+            } else
+                if (c == pChar && !quoted) {
+                    return i;
+                }
+        }
+        return -1;
+    }
+
+    private static List<String> split(String pText, char pSeparator) {
+        List<String> parts = new ArrayList<>();
+        boolean quoted = false;
+        int start = 0;
+        for (int i = 0; i <= pText.length(); i++) {
+            char c = i < pText.length() ? pText.charAt(i) : pSeparator;
+            if (c == '"') {
+                quoted = !quoted;
+            } else
+                if (c == pSeparator && !quoted) {
+                    String part = pText.substring(start, i).trim();
+                    if (!part.isEmpty()) {
+                        parts.add(part);
+                    }
+                    start = i + 1;
+                }
+        }
+        return parts;
+    }
+
+    private static String unquote(String pValue) {
+        String value = pValue.trim();
+        if (value.length() >= 2 && value.charAt(0) == '"'
+                && value.charAt(value.length() - 1) == '"') {
+            return value.substring(1, value.length() - 1);
+        }
+        return value;
+    }
+}
@@ -0,0 +1,99 @@
+/**
+ * ============================================================================
+ *  Copyright ©  2015-2019,    Cristiano V. Gavião
+ *
+ *  All rights reserved.
+ *  This program and the accompanying materials are made available under
+ *  the terms of the Eclipse Public License v1.0 which accompanies this
+ *  distribution and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * ============================================================================
+ */
+package com.c8tech.tools.maven.plugin.osgi.repository.utils;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * An artifact descriptor read from the <i>artifacts.xml</i> file of a simple
+ * p2 artifact repository.
+ *
+ * @author Cristiano Gavião
+ *
+ */
+public final class P2ArtifactDescriptor {
+
+    public static final String CLASSIFIER_BUNDLE = "osgi.bundle";
+
+    public static final String CLASSIFIER_FEATURE = "org.eclipse.update.feature";
+
+    private final String classifier;
+
+    private final String id;
+
+    private final Map<String, String> properties;
+
+    private final P2ArtifactRepository repository;
+
+    private final String version;
+
+    P2ArtifactDescriptor(P2ArtifactRepository pRepository, String pClassifier,
+            String pId, String pVersion, Map<String, String> pProperties) {
+        repository = pRepository;
+        classifier = pClassifier;
+        id = pId;
+        version = pVersion;
+        properties = Collections.unmodifiableMap(pProperties);
+    }
+
+    /**
+     * Builds the key used to lookup a descriptor into a
+     * {@link P2RepositoryResolver.Index}.
+     *
+     * @param pClassifier
+     *                        The artifact classifier, like
+     *                        {@link #CLASSIFIER_BUNDLE}.
+     * @param pId
+     *                        The artifact id.
+     * @param pVersion
+     *                        The artifact version.
+     * @return the lookup key.
+     */
+    public static String toKey(String pClassifier, String pId,
+            String pVersion) {
+        return pClassifier + '/' + pId + '/' + pVersion;
+    }
+
+    public String getClassifier() {
+        return classifier;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getKey() {
+        return toKey(classifier, id, version);
+    }
+
+    public Map<String, String> getProperties() {
+        return properties;
+    }
+
+    public String getProperty(String pName) {
+        return properties.get(pName);
+    }
+
+    public P2ArtifactRepository getRepository() {
+        return repository;
+    }
+
+    public String getVersion() {
+        return version;
+    }
+
+    @Override
+    public String toString() {
+        return getKey() + " @ " + repository.getLocation();
+    }
+}
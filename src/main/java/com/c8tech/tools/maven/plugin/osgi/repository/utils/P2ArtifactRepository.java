@@ -0,0 +1,353 @@
+/**
+ * ============================================================================
+ *  Copyright ©  2015-2019,    Cristiano V. Gavião
+ *
+ *  All rights reserved.
+ *  This program and the accompanying materials are made available under
+ *  the terms of the Eclipse Public License v1.0 which accompanies this
+ *  distribution and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * ============================================================================
+ */
+package com.c8tech.tools.maven.plugin.osgi.repository.utils;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A read-only view of the <i>artifacts.xml</i> or
+ * <i>compositeArtifacts.xml</i> file of a p2 artifact repository.
+ * <p>
+ * Only the information needed by the plugin is read: the repository
+ * properties, its mapping rules, the artifact descriptors and, for composite
+ * repositories, the location of its children.
+ *
+ * @author Cristiano Gavião
+ *
+ */
+public final class P2ArtifactRepository {
+
+    private static final String ATTR_CLASSIFIER = "classifier";
+
+    private static final String ATTR_ID = "id";
+
+    private static final String ATTR_LOCATION = "location";
+
+    private static final String ATTR_NAME = "name";
+
+    private static final String ATTR_VERSION = "version";
+
+    private static final String[][] DEFAULT_MAPPING_RULES = {
+            { "(& (classifier=osgi.bundle))",
+                    "${repoUrl}/plugins/${id}_${version}.jar" },
+            { "(& (classifier=binary))", "${repoUrl}/binary/${id}_${version}" },
+            { "(& (classifier=org.eclipse.update.feature))",
+                    "${repoUrl}/features/${id}_${version}.jar" } };
+
+    private static final String[] FILE_NAMES_COMPOSITE = {
+            "compositeArtifacts.jar", "compositeArtifacts.xml" };
+
+    private static final String[] FILE_NAMES_SIMPLE = { "artifacts.jar",
+            "artifacts.xml" };
+
+    private static final Logger LOGGER = LoggerFactory
+            .getLogger(P2ArtifactRepository.class);
+
+    public static final String PROP_MIRRORS_URL = "p2.mirrorsURL";
+
+    private static final String REPO_URL_VARIABLE = "${repoUrl}";
+
+    private final List<P2ArtifactDescriptor> artifacts = new ArrayList<>();
+
+    private final List<URI> children = new ArrayList<>();
+
+    private final boolean composite;
+
+    private final URI location;
+
+    private final List<String[]> mappingRules = new ArrayList<>();
+
+    private final Map<String, String> properties = new LinkedHashMap<>();
+
+    private P2ArtifactRepository(URI pLocation, boolean pComposite) {
+        location = pLocation;
+        composite = pComposite;
+    }
+
+    /**
+     * Creates an empty repository for a location that could not be read.
+     *
+     * @param pLocation
+     *                      The repository location.
+     * @return an empty repository.
+     */
+    static P2ArtifactRepository empty(URI pLocation) {
+        return new P2ArtifactRepository(normalize(pLocation), false);
+    }
+
+    private static XMLInputFactory newInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES,
+                Boolean.FALSE);
+        return factory;
+    }
+
+    static URI normalize(URI pLocation) {
+        String uri = pLocation.toString();
+        if (uri.endsWith("/")) {
+            return pLocation;
+        }
+        try {
+            return new URI(uri + '/');
+        } catch (URISyntaxException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    private static InputStream openRepositoryFile(URI pLocation,
+            String pFileName) throws IOException {
+        InputStream stream = pLocation.resolve(pFileName).toURL().openStream();
+        if (!pFileName.endsWith(".jar")) {
+            return stream;
+        }
+        String entryName = pFileName.replace(".jar", ".xml");
+        ZipInputStream zip = new ZipInputStream(stream);
+        ZipEntry entry;
+        while ((entry = zip.getNextEntry()) != null) {
+            if (entryName.equals(entry.getName())) {
+                return zip;
+            }
+        }
+        zip.close();
+        throw new IOException(
+                "Entry " + entryName + " was not found in " + pFileName);
+    }
+
+    /**
+     * Reads the artifact repository found at the informed location.
+     * <p>
+     * A composite repository file has precedence over a simple one, and jar
+     * compressed files have precedence over plain xml files, as p2 does.
+     *
+     * @param pLocation
+     *                      The repository location.
+     * @return the repository read, never <code>null</code>.
+     * @throws IOException
+     *                         When no repository file could be found or
+     *                         parsed.
+     */
+    public static P2ArtifactRepository read(URI pLocation) throws IOException {
+        URI location = normalize(pLocation);
+        IOException lastError = null;
+        for (boolean composite : new boolean[] { true, false }) {
+            for (String fileName : composite ? FILE_NAMES_COMPOSITE
+                    : FILE_NAMES_SIMPLE) {
+                try (InputStream stream = openRepositoryFile(location,
+                        fileName)) {
+                    LOGGER.debug("Reading p2 artifact repository file {}{}",
+                            location, fileName);
+                    return parse(location, stream, composite);
+                } catch (FileNotFoundException e) { // NOSONAR
+                    // try the next possible file
+                } catch (IOException e) {
+                    lastError = e;
+                }
+            }
+        }
+        if (lastError != null) {
+            throw lastError;
+        }
+        throw new FileNotFoundException(
+                "No p2 artifact repository was found at " + location);
+    }
+
+    static P2ArtifactRepository parse(URI pLocation, InputStream pStream,
+            boolean pComposite) throws IOException {
+        P2ArtifactRepository repository = new P2ArtifactRepository(
+                normalize(pLocation), pComposite);
+        try {
+            XMLStreamReader reader = newInputFactory()
+                    .createXMLStreamReader(pStream);
+            try {
+                repository.readContent(reader);
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException(
+                    "Failure while parsing p2 artifact repository at "
+                            + pLocation,
+                    e);
+        }
+        if (repository.mappingRules.isEmpty()) {
+            for (String[] rule : DEFAULT_MAPPING_RULES) {
+                repository.mappingRules.add(rule);
+            }
+        }
+        return repository;
+    }
+
+    private String expandRule(String pOutput,
+            P2ArtifactDescriptor pDescriptor) {
+        return pOutput.replace("${id}", pDescriptor.getId())
+                .replace("${version}", pDescriptor.getVersion())
+                .replace("${classifier}", pDescriptor.getClassifier());
+    }
+
+    /**
+     * Returns the URL from where the informed artifact can be downloaded.
+     *
+     * @param pDescriptor
+     *                        An artifact descriptor of this repository.
+     * @return the artifact URL.
+     * @throws MalformedURLException
+     *                                   When the computed location is not a
+     *                                   valid URL.
+     */
+    public URL getArtifactURL(P2ArtifactDescriptor pDescriptor)
+            throws MalformedURLException {
+        return location.resolve(getRelativePath(pDescriptor)).toURL();
+    }
+
+    public List<P2ArtifactDescriptor> getArtifacts() {
+        return Collections.unmodifiableList(artifacts);
+    }
+
+    public List<URI> getChildren() {
+        return Collections.unmodifiableList(children);
+    }
+
+    public URI getLocation() {
+        return location;
+    }
+
+    public String getMirrorsURL() {
+        return properties.get(PROP_MIRRORS_URL);
+    }
+
+    public Map<String, String> getProperties() {
+        return Collections.unmodifiableMap(properties);
+    }
+
+    /**
+     * Applies the repository mapping rules in order to calculate the location
+     * of an artifact relative to the repository root.
+     * <p>
+     * Rules for packed formats are never selected.
+     *
+     * @param pDescriptor
+     *                        An artifact descriptor of this repository.
+     * @return the relative path of the artifact.
+     */
+    public String getRelativePath(P2ArtifactDescriptor pDescriptor) {
+        String classifierClause = "(classifier="
+                + pDescriptor.getClassifier() + ")";
+        for (String[] rule : mappingRules) {
+            String filter = rule[0].replace(" ", "");
+            if (filter.contains(classifierClause)
+                    && !filter.contains("(format=")) {
+                String output = expandRule(rule[1], pDescriptor);
+                if (output.startsWith(REPO_URL_VARIABLE)) {
+                    output = output.substring(REPO_URL_VARIABLE.length());
+                }
+                while (output.startsWith("/")) {
+                    output = output.substring(1);
+                }
+                return output;
+            }
+        }
+        return pDescriptor.getId() + "_" + pDescriptor.getVersion();
+    }
+
+    public boolean isComposite() {
+        return composite;
+    }
+
+    private void readContent(XMLStreamReader pReader)
+            throws XMLStreamException {
+        Deque<String> path = new ArrayDeque<>();
+        String[] currentArtifact = null;
+        Map<String, String> currentProperties = null;
+        while (pReader.hasNext()) {
+            int event = pReader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                String name = pReader.getLocalName();
+                String parent = path.peek();
+                if ("artifact".equals(name) && "artifacts".equals(parent)) {
+                    currentArtifact = new String[] {
+                            pReader.getAttributeValue(null, ATTR_CLASSIFIER),
+                            pReader.getAttributeValue(null, ATTR_ID),
+                            pReader.getAttributeValue(null, ATTR_VERSION) };
+                    currentProperties = new HashMap<>();
+                } else if ("property".equals(name)) {
+                    readProperty(pReader, currentArtifact != null
+                            ? currentProperties : properties);
+                } else if ("rule".equals(name)) {
+                    mappingRules.add(new String[] {
+                            pReader.getAttributeValue(null, "filter"),
+                            pReader.getAttributeValue(null, "output") });
+                } else if ("child".equals(name)) {
+                    String childLocation = pReader.getAttributeValue(null,
+                            ATTR_LOCATION);
+                    if (childLocation != null) {
+                        children.add(location
+                                .resolve(normalize(URI.create(childLocation))));
+                    }
+                }
+                path.push(name);
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                path.pop();
+                if ("artifact".equals(pReader.getLocalName())
+                        && currentArtifact != null) {
+                    if (currentArtifact[0] != null && currentArtifact[1] != null
+                            && currentArtifact[2] != null) {
+                        artifacts.add(new P2ArtifactDescriptor(this,
+                                currentArtifact[0], currentArtifact[1],
+                                currentArtifact[2], currentProperties));
+                    }
+                    currentArtifact = null;
+                    currentProperties = null;
+                }
+            }
+        }
+    }
+
+    private void readProperty(XMLStreamReader pReader,
+            Map<String, String> pTarget) {
+        String name = pReader.getAttributeValue(null, ATTR_NAME);
+        String value = pReader.getAttributeValue(null, "value");
+        if (name != null && value != null) {
+            pTarget.put(name, value);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return (composite ? "composite " : "") + "p2 artifact repository "
+                + location;
+    }
+}
@@ -0,0 +1,355 @@
+/**
+ * ============================================================================
+ *  Copyright ©  2015-2019,    Cristiano V. Gavião
+ *
+ *  All rights reserved.
+ *  This program and the accompanying materials are made available under
+ *  the terms of the Eclipse Public License v1.0 which accompanies this
+ *  distribution and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * ============================================================================
+ */
+package com.c8tech.tools.maven.plugin.osgi.repository.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jdom2.Document;
+import org.jdom2.Element;
+import org.jdom2.JDOMException;
+import org.jdom2.input.SAXBuilder;
+import org.jdom2.output.Format;
+import org.jdom2.output.XMLOutputter;
+
+/**
+ * Publishes the categories declared in a p2 <i>category.xml</i> file directly
+ * into the <i>content.xml</i> of a metadata repository, avoiding a second
+ * launch of the Equinox <i>CategoryPublisher</i> application.
+ * <p>
+ * Only the subset of the category definition format used for bundle only
+ * repositories is supported: <code>category-def</code> elements,
+ * <code>bundle</code> and <code>iu</code> entries identified by id and
+ * version, and <code>iu</code> entries using the query that matches all the
+ * bundles. Any other construct, like features or repository references, must
+ * be published by the Equinox application, what can be checked through
+ * {@link #isSupported()}.
+ *
+ * @author Cristiano Gavião
+ *
+ */
+public final class P2CategoryPublisher {
+
+    /**
+     * An entry of the category definition that selects installable units.
+     */
+    private static final class Entry {
+
+        private final boolean allBundles;
+
+        private final boolean bundleOnly;
+
+        private final List<String> categories = new ArrayList<>(1);
+
+        private final String id;
+
+        private final String version;
+
+        Entry(String pId, String pVersion, boolean pBundleOnly,
+                boolean pAllBundles) {
+            id = pId;
+            version = pVersion;
+            bundleOnly = pBundleOnly;
+            allBundles = pAllBundles;
+        }
+
+        boolean matches(String pId, String pVersion, boolean pBundle) {
+            if (allBundles) {
+                return pBundle;
+            }
+            if (bundleOnly && !pBundle || !id.equals(pId)) {
+                return false;
+            }
+            return version == null || version.isEmpty()
+                    || ANY_VERSION.equals(version) || version.equals(pVersion);
+        }
+    }
+
+    private static final String ALL_BUNDLES_QUERY = "providedCapabilities.exists(p|p.namespace=='osgi.bundle')";
+
+    private static final String ANY_VERSION = "0.0.0";
+
+    private static final String NAMESPACE_IU = "org.eclipse.equinox.p2.iu";
+
+    private static final String NAMESPACE_OSGI_BUNDLE = "osgi.bundle";
+
+    private static final String PROP_DESCRIPTION = "org.eclipse.equinox.p2.description";
+
+    private static final String PROP_NAME = "org.eclipse.equinox.p2.name";
+
+    private static final String PROP_TYPE_CATEGORY = "org.eclipse.equinox.p2.type.category";
+
+    private final Map<String, String[]> categories = new LinkedHashMap<>();
+
+    private final List<Entry> entries = new ArrayList<>();
+
+    private String unsupportedConstruct;
+
+    private P2CategoryPublisher() {
+    }
+
+    private static Element newProperty(String pName, String pValue) {
+        return new Element("property").setAttribute("name", pName)
+                .setAttribute("value", pValue);
+    }
+
+    private static Document parse(Path pFile) throws IOException {
+        SAXBuilder builder = new SAXBuilder();
+        builder.setExpandEntities(false);
+        try (InputStream in = Files.newInputStream(pFile)) {
+            return builder.build(in);
+        } catch (JDOMException e) {
+            throw new IOException("Failure while parsing " + pFile, e);
+        }
+    }
+
+    /**
+     * Reads a p2 category definition file.
+     *
+     * @param pCategoryDefinition
+     *                                The <i>category.xml</i> file.
+     * @return the publisher for the categories read.
+     * @throws IOException
+     *                         When the file could not be read.
+     */
+    public static P2CategoryPublisher read(Path pCategoryDefinition)
+            throws IOException {
+        P2CategoryPublisher publisher = new P2CategoryPublisher();
+        Element site = parse(pCategoryDefinition).getRootElement();
+        for (Element element : site.getChildren()) {
+            switch (element.getName()) {
+            case "category-def":
+                publisher.readCategoryDefinition(element);
+                break;
+            case "bundle":
+                publisher.readEntry(element, true);
+                break;
+            case "iu":
+                publisher.readEntry(element, false);
+                break;
+            case "description":
+                break;
+            default:
+                publisher.unsupported(element.getName());
+            }
+        }
+        return publisher;
+    }
+
+    private void readCategoryDefinition(Element pElement) {
+        String name = pElement.getAttributeValue("name");
+        if (name == null || !pElement.getChildren("category").isEmpty()) {
+            unsupported("nested category-def");
+            return;
+        }
+        String label = pElement.getAttributeValue("label", name);
+        categories.put(name,
+                new String[] { label, pElement.getChildTextTrim("description") });
+    }
+
+    private void readEntry(Element pElement, boolean pBundleOnly) {
+        String id = pElement.getAttributeValue("id");
+        Element query = pElement.getChild("query");
+        Entry entry;
+        if (query != null) {
+            Element expression = query.getChild("expression");
+            if (id != null || expression == null
+                    || !"match".equals(expression.getAttributeValue("type"))
+                    || !ALL_BUNDLES_QUERY.equals(
+                            expression.getTextTrim().replaceAll("\\s", ""))
+                    || !query.getChildren("param").isEmpty()) {
+                unsupported("custom iu query");
+                return;
+            }
+            entry = new Entry(null, null, false, true);
+        } else {
+            if (id == null || pElement.getAttribute("range") != null) {
+                unsupported(pElement.getName() + " without exact id");
+                return;
+            }
+            entry = new Entry(id, pElement.getAttributeValue("version"),
+                    pBundleOnly, false);
+        }
+        for (Element category : pElement.getChildren("category")) {
+            entry.categories.add(category.getAttributeValue("name"));
+        }
+        entries.add(entry);
+    }
+
+    private void unsupported(String pConstruct) {
+        if (unsupportedConstruct == null) {
+            unsupportedConstruct = pConstruct;
+        }
+    }
+
+    /**
+     * Returns the first construct found in the category definition that this
+     * publisher can't handle.
+     *
+     * @return the construct name or <code>null</code> when all are supported.
+     */
+    public String getUnsupportedConstruct() {
+        return unsupportedConstruct;
+    }
+
+    public boolean isSupported() {
+        return unsupportedConstruct == null;
+    }
+
+    /**
+     * Adds the category installable units into a <i>content.xml</i> file,
+     * replacing any category unit previously published with the same id.
+     *
+     * @param pContentFile
+     *                         The uncompressed <i>content.xml</i> file.
+     * @param pVersion
+     *                         The version of the category units.
+     * @return the number of categories published.
+     * @throws IOException
+     *                         When the content file could not be read or
+     *                         written.
+     */
+    public int publish(Path pContentFile, String pVersion) throws IOException {
+        if (!isSupported()) {
+            throw new IllegalStateException(
+                    "Unsupported category definition: " + unsupportedConstruct);
+        }
+        Document document = parse(pContentFile);
+        Element units = document.getRootElement().getChild("units");
+        if (units == null) {
+            throw new IOException(
+                    "No units were found in " + pContentFile + ".");
+        }
+
+        Map<String, List<Element>> requirements = new LinkedHashMap<>();
+        for (String category : categories.keySet()) {
+            requirements.put(category, new ArrayList<>());
+        }
+        Iterator<Element> iterator = units.getChildren("unit").iterator();
+        while (iterator.hasNext()) {
+            Element unit = iterator.next();
+            String id = unit.getAttributeValue("id");
+            String version = unit.getAttributeValue("version");
+            if (isCategory(unit)) {
+                if (categories.containsKey(id)) {
+                    iterator.remove();
+                }
+                continue;
+            }
+            boolean bundle = providesBundle(unit);
+            for (Entry entry : entries) {
+                if (!entry.matches(id, version, bundle)) {
+                    continue;
+                }
+                for (String category : entry.categories) {
+                    List<Element> required = requirements.get(category);
+                    if (required != null) {
+                        required.add(new Element("required")
+                                .setAttribute("namespace", NAMESPACE_IU)
+                                .setAttribute("name", id)
+                                .setAttribute("range",
+                                        "[" + version + "," + version + "]"));
+                    }
+                }
+            }
+        }
+
+        for (Map.Entry<String, List<Element>> category : requirements
+                .entrySet()) {
+            units.addContent(newCategoryUnit(category.getKey(), pVersion,
+                    category.getValue()));
+        }
+        units.setAttribute("size",
+                Integer.toString(units.getChildren("unit").size()));
+
+        Path tempFile = Files.createTempFile(pContentFile.getParent(),
+                "content", ".xml");
+        try {
+            try (OutputStream out = Files.newOutputStream(tempFile)) {
+                new XMLOutputter(Format.getPrettyFormat()).output(document,
+                        out);
+            }
+            Files.move(tempFile, pContentFile,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+        return requirements.size();
+    }
+
+    private static boolean isCategory(Element pUnit) {
+        Element properties = pUnit.getChild("properties");
+        if (properties == null) {
+            return false;
+        }
+        for (Element property : properties.getChildren("property")) {
+            if (PROP_TYPE_CATEGORY.equals(property.getAttributeValue("name"))) {
+                return Boolean.parseBoolean(property.getAttributeValue("value"));
+            }
+        }
+        return false;
+    }
+
+    private static boolean providesBundle(Element pUnit) {
+        Element provides = pUnit.getChild("provides");
+        if (provides == null) {
+            return false;
+        }
+        for (Element provided : provides.getChildren("provided")) {
+            if (NAMESPACE_OSGI_BUNDLE
+                    .equals(provided.getAttributeValue("namespace"))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Element newCategoryUnit(String pName, String pVersion,
+            List<Element> pRequirements) {
+        String[] definition = categories.get(pName);
+        Element properties = new Element("properties");
+        properties.addContent(newProperty(PROP_NAME, definition[0]));
+        if (definition[1] != null && !definition[1].isEmpty()) {
+            properties.addContent(newProperty(PROP_DESCRIPTION, definition[1]));
+        }
+        properties.addContent(newProperty(PROP_TYPE_CATEGORY, "true"));
+        properties.setAttribute("size",
+                Integer.toString(properties.getChildren().size()));
+
+        Element unit = new Element("unit").setAttribute("id", pName)
+                .setAttribute("version", pVersion);
+        unit.addContent(properties);
+        unit.addContent(new Element("provides").setAttribute("size", "1")
+                .addContent(new Element("provided")
+                        .setAttribute("namespace", NAMESPACE_IU)
+                        .setAttribute("name", pName)
+                        .setAttribute("version", pVersion)));
+        if (!pRequirements.isEmpty()) {
+            unit.addContent(new Element("requires")
+                    .setAttribute("size",
+                            Integer.toString(pRequirements.size()))
+                    .addContent(pRequirements));
+        }
+        unit.addContent(new Element("touchpoint").setAttribute("id", "null")
+                .setAttribute("version", "0.0.0"));
+        return unit;
+    }
+}
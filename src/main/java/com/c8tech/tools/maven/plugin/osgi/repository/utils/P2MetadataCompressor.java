@@ -0,0 +1,356 @@
+/**
+ * ============================================================================
+ *  Copyright ©  2015-2019,    Cristiano V. Gavião
+ *
+ *  All rights reserved.
+ *  This program and the accompanying materials are made available under
+ *  the terms of the Eclipse Public License v1.0 which accompanies this
+ *  distribution and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * ============================================================================
+ */
+package com.c8tech.tools.maven.plugin.osgi.repository.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import org.tukaani.xz.LZMA2Options;
+import org.tukaani.xz.XZOutputStream;
+
+/**
+ * Writes the compressed forms of the metadata files of a p2 repository: the
+ * <i>.jar</i> files understood by every p2 version and the <i>.xml.xz</i>
+ * files preferred by the recent ones, announced through a <i>p2.index</i>
+ * file.
+ * <p>
+ * The digests of the compressed files are kept in a state file, so a metadata
+ * file that was not changed since the last build is not compressed again. The
+ * compressed forms are moved aside while the repository is published, and
+ * moved back when the metadata file was not changed.
+ *
+ * @author Cristiano Gavião
+ *
+ */
+public final class P2MetadataCompressor {
+
+    public static final String ARTIFACTS = "artifacts";
+
+    public static final String CONTENT = "content";
+
+    private static final String P2_INDEX = "p2.index";
+
+    private static final List<String> P2_INDEX_LINES = Arrays.asList(
+            "version=1",
+            "metadata.repository.factory.order=content.xml.xz,content.xml,\\!",
+            "artifact.repository.factory.order=artifacts.xml.xz,artifacts.xml,\\!");
+
+    private final Properties digests = new Properties();
+
+    private final Executor executor;
+
+    private final Path asideDir;
+
+    private final Path stateFile;
+
+    /**
+     * Creates a new compressor whose compressed forms were kept in the
+     * repository.
+     *
+     * @param pExecutor
+     *                      The executor where the files are compressed.
+     * @param pStateFile
+     *                      The file keeping the digests of the last compressed
+     *                      files. It must not be placed inside the repository.
+     */
+    public P2MetadataCompressor(Executor pExecutor, Path pStateFile) {
+        this(pExecutor, pStateFile, null);
+    }
+
+    /**
+     * Creates a new compressor.
+     *
+     * @param pExecutor
+     *                      The executor where the files are compressed.
+     * @param pStateFile
+     *                      The file keeping the digests of the last compressed
+     *                      files. It must not be placed inside the repository.
+     * @param pAsideDir
+     *                      The directory where
+     *                      {@link #moveCompressedForms(Path, Path)} has put the
+     *                      compressed forms of the last build, may be null.
+     */
+    public P2MetadataCompressor(Executor pExecutor, Path pStateFile,
+            Path pAsideDir) {
+        executor = pExecutor;
+        stateFile = pStateFile;
+        asideDir = pAsideDir;
+        if (Files.isRegularFile(pStateFile)) {
+            try (InputStream in = Files.newInputStream(pStateFile)) {
+                digests.load(in);
+            } catch (IOException | IllegalArgumentException e) { // NOSONAR
+                digests.clear();
+            }
+        }
+    }
+
+    /**
+     * Deletes the compressed metadata files and the <i>p2.index</i> file of a
+     * repository.
+     * <p>
+     * p2 readers, including the Equinox publisher when appending, prefer the
+     * compressed forms, so they must be removed before the <i>.xml</i> files
+     * are changed, or whenever they are no longer generated.
+     *
+     * @param pRepositoryDir
+     *                           The p2 repository directory.
+     * @return the number of files deleted.
+     * @throws IOException
+     *                         When a file could not be deleted.
+     */
+    public static int deleteCompressedForms(Path pRepositoryDir)
+            throws IOException {
+        int deleted = 0;
+        for (String baseName : Arrays.asList(CONTENT, ARTIFACTS)) {
+            if (Files.deleteIfExists(pRepositoryDir.resolve(baseName + ".jar"))) {
+                deleted++;
+            }
+            if (Files.deleteIfExists(
+                    pRepositoryDir.resolve(baseName + ".xml.xz"))) {
+                deleted++;
+            }
+        }
+        if (Files.deleteIfExists(pRepositoryDir.resolve(P2_INDEX))) {
+            deleted++;
+        }
+        return deleted;
+    }
+
+    /**
+     * Moves the compressed metadata files of a repository to another
+     * directory and deletes its <i>p2.index</i> file, so they are not read
+     * while the repository is published and can be restored when the
+     * metadata did not change.
+     *
+     * @param pRepositoryDir
+     *                           The p2 repository directory.
+     * @param pAsideDir
+     *                           The directory receiving the compressed files.
+     * @return the number of files moved.
+     * @throws IOException
+     *                         When a file could not be moved.
+     */
+    public static int moveCompressedForms(Path pRepositoryDir, Path pAsideDir)
+            throws IOException {
+        int moved = 0;
+        for (String baseName : Arrays.asList(CONTENT, ARTIFACTS)) {
+            for (String fileName : Arrays.asList(baseName + ".jar",
+                    baseName + ".xml.xz")) {
+                Path file = pRepositoryDir.resolve(fileName);
+                if (Files.isRegularFile(file)) {
+                    Files.createDirectories(pAsideDir);
+                    Files.move(file, pAsideDir.resolve(fileName),
+                            StandardCopyOption.REPLACE_EXISTING);
+                    moved++;
+                }
+            }
+        }
+        Files.deleteIfExists(pRepositoryDir.resolve(P2_INDEX));
+        return moved;
+    }
+
+    private static String digest(Path pFile) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = new DigestInputStream(Files.newInputStream(pFile),
+                digest)) {
+            while (in.read(buffer) != -1) {
+                // only digesting
+            }
+        }
+        StringBuilder builder = new StringBuilder();
+        for (byte b : digest.digest()) {
+            builder.append(Character.forDigit((b >> 4) & 0xF, 16))
+                    .append(Character.forDigit(b & 0xF, 16));
+        }
+        return builder.toString();
+    }
+
+    private static void replace(Path pTempFile, Path pTarget)
+            throws IOException {
+        Files.move(pTempFile, pTarget, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static void writeJar(Path pXmlFile, Path pTarget)
+            throws IOException {
+        Path tempFile = Files.createTempFile(pTarget.getParent(),
+                pTarget.getFileName().toString(), ".tmp");
+        try {
+            try (JarOutputStream out = new JarOutputStream(
+                    Files.newOutputStream(tempFile))) {
+                JarEntry entry = new JarEntry(
+                        pXmlFile.getFileName().toString());
+                entry.setTime(Files.getLastModifiedTime(pXmlFile).toMillis());
+                out.putNextEntry(entry);
+                Files.copy(pXmlFile, out);
+                out.closeEntry();
+            }
+            replace(tempFile, pTarget);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    private static void writeXz(Path pXmlFile, Path pTarget)
+            throws IOException {
+        Path tempFile = Files.createTempFile(pTarget.getParent(),
+                pTarget.getFileName().toString(), ".tmp");
+        try {
+            try (OutputStream out = new XZOutputStream(
+                    Files.newOutputStream(tempFile), new LZMA2Options())) {
+                Files.copy(pXmlFile, out);
+            }
+            replace(tempFile, pTarget);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    /**
+     * Starts the compression of one metadata file of a repository, writing
+     * its <i>.jar</i> and <i>.xml.xz</i> forms concurrently.
+     *
+     * @param pRepositoryDir
+     *                           The p2 repository directory.
+     * @param pBaseName
+     *                           The metadata file name without extension,
+     *                           {@link #CONTENT} or {@link #ARTIFACTS}.
+     * @return a future telling whether the file was compressed, or
+     *         <code>false</code> when it was not modified since the last
+     *         compression.
+     */
+    public CompletableFuture<Boolean> compressAsync(Path pRepositoryDir,
+            String pBaseName) {
+        Path xmlFile = pRepositoryDir.resolve(pBaseName + ".xml");
+        Path jarFile = pRepositoryDir.resolve(pBaseName + ".jar");
+        Path xzFile = pRepositoryDir.resolve(pBaseName + ".xml.xz");
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return digest(xmlFile);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, executor).thenCompose(digest -> {
+            try {
+                if (digest.equals(digests.getProperty(pBaseName))
+                        && restoreAside(jarFile) && restoreAside(xzFile)) {
+                    return CompletableFuture.completedFuture(Boolean.FALSE);
+                }
+                deleteAside(jarFile);
+                deleteAside(xzFile);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            CompletableFuture<Void> jar = CompletableFuture.runAsync(() -> {
+                try {
+                    writeJar(xmlFile, jarFile);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, executor);
+            CompletableFuture<Void> xz = CompletableFuture.runAsync(() -> {
+                try {
+                    writeXz(xmlFile, xzFile);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, executor);
+            return CompletableFuture.allOf(jar, xz).thenApply(v -> {
+                synchronized (digests) {
+                    digests.setProperty(pBaseName, digest);
+                }
+                return Boolean.TRUE;
+            });
+        });
+    }
+
+    private void deleteAside(Path pFile) throws IOException {
+        if (asideDir != null) {
+            Files.deleteIfExists(asideDir.resolve(pFile.getFileName()));
+        }
+    }
+
+    /**
+     * Moves back a compressed form put aside, when the repository does not
+     * already hold it.
+     *
+     * @return whether the repository holds the compressed form.
+     */
+    private boolean restoreAside(Path pFile) throws IOException {
+        if (Files.isRegularFile(pFile)) {
+            return true;
+        }
+        if (asideDir == null) {
+            return false;
+        }
+        Path aside = asideDir.resolve(pFile.getFileName());
+        if (!Files.isRegularFile(aside)) {
+            return false;
+        }
+        Files.move(aside, pFile, StandardCopyOption.REPLACE_EXISTING);
+        return true;
+    }
+
+    /**
+     * Saves the digests of the compressed files.
+     *
+     * @throws IOException
+     *                         When the state file could not be written.
+     */
+    public void saveState() throws IOException {
+        Files.createDirectories(stateFile.getParent());
+        try (OutputStream out = Files.newOutputStream(stateFile)) {
+            synchronized (digests) {
+                digests.store(out, "p2 compressed metadata");
+            }
+        }
+    }
+
+    /**
+     * Writes the <i>p2.index</i> file of a repository, giving precedence to
+     * the xz compressed metadata files.
+     *
+     * @param pRepositoryDir
+     *                           The p2 repository directory.
+     * @throws IOException
+     *                         When the file could not be written.
+     */
+    public static void writeIndex(Path pRepositoryDir) throws IOException {
+        Path index = pRepositoryDir.resolve(P2_INDEX);
+        if (Files.isRegularFile(index) && P2_INDEX_LINES.equals(
+                Files.readAllLines(index, StandardCharsets.ISO_8859_1))) {
+            return;
+        }
+        Files.write(index, P2_INDEX_LINES, StandardCharsets.ISO_8859_1);
+    }
+}
@@ -0,0 +1,238 @@
+/**
+ * ============================================================================
+ *  Copyright ©  2015-2019,    Cristiano V. Gavião
+ *
+ *  All rights reserved.
+ *  This program and the accompanying materials are made available under
+ *  the terms of the Eclipse Public License v1.0 which accompanies this
+ *  distribution and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * ============================================================================
+ */
+package com.c8tech.tools.maven.plugin.osgi.repository.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads the mirrors advertised by a p2 repository through its
+ * <i>p2.mirrorsURL</i> property and ranks them by probing their latency and
+ * throughput.
+ *
+ * @author Cristiano Gavião
+ *
+ */
+public class P2MirrorSelector {
+
+    /**
+     * A mirror that answered the probe request.
+     */
+    public static final class Mirror {
+
+        private final double bytesPerMilli;
+
+        private final long latencyInMillis;
+
+        private final URI location;
+
+        Mirror(URI pLocation, long pLatencyInMillis, double pBytesPerMilli) {
+            location = pLocation;
+            latencyInMillis = pLatencyInMillis;
+            bytesPerMilli = pBytesPerMilli;
+        }
+
+        /**
+         * The estimated time, in milliseconds, to download an artifact of a
+         * typical size from this mirror.
+         *
+         * @return the mirror score, the lower the better.
+         */
+        public long estimatedTimeInMillis() {
+            return latencyInMillis
+                    + (long) (TYPICAL_ARTIFACT_SIZE / bytesPerMilli);
+        }
+
+        public double getBytesPerMilli() {
+            return bytesPerMilli;
+        }
+
+        public long getLatencyInMillis() {
+            return latencyInMillis;
+        }
+
+        public URI getLocation() {
+            return location;
+        }
+
+        @Override
+        public String toString() {
+            return location + " (latency " + latencyInMillis + "ms, "
+                    + (long) bytesPerMilli + " bytes/ms)";
+        }
+    }
+
+    private static final Logger LOGGER = LoggerFactory
+            .getLogger(P2MirrorSelector.class);
+
+    private static final int PROBE_SIZE = 64 * 1024;
+
+    private static final long TYPICAL_ARTIFACT_SIZE = 256 * 1024L;
+
+    private final int connectTimeoutInMillis;
+
+    private final Executor executor;
+
+    private final int readTimeoutInMillis;
+
+    /**
+     * Creates a new selector.
+     *
+     * @param pExecutor
+     *                                    The executor used to probe the
+     *                                    mirrors concurrently.
+     * @param pConnectTimeoutInMillis
+     *                                    The connection timeout.
+     * @param pReadTimeoutInMillis
+     *                                    The read timeout, after which a mirror
+     *                                    is considered stalled.
+     */
+    public P2MirrorSelector(Executor pExecutor, int pConnectTimeoutInMillis,
+            int pReadTimeoutInMillis) {
+        executor = pExecutor;
+        connectTimeoutInMillis = pConnectTimeoutInMillis;
+        readTimeoutInMillis = pReadTimeoutInMillis;
+    }
+
+    /**
+     * Probes one mirror by downloading the first bytes of a file that must
+     * exist in the repository.
+     *
+     * @param pMirror
+     *                       The mirror base location.
+     * @param pProbePath
+     *                       A path relative to the repository root.
+     * @return the measured mirror.
+     * @throws IOException
+     *                         When the mirror could not serve the file.
+     */
+    public Mirror probe(URI pMirror, String pProbePath) throws IOException {
+        URLConnection connection = pMirror.resolve(pProbePath).toURL()
+                .openConnection();
+        connection.setConnectTimeout(connectTimeoutInMillis);
+        connection.setReadTimeout(readTimeoutInMillis);
+        byte[] buffer = new byte[8 * 1024];
+        long start = System.nanoTime();
+        try (InputStream in = connection.getInputStream()) {
+            int read = in.read(buffer);
+            long firstByte = System.nanoTime();
+            long total = Math.max(read, 0);
+            while (read != -1 && total < PROBE_SIZE) {
+                read = in.read(buffer);
+                if (read > 0) {
+                    total += read;
+                }
+            }
+            long end = System.nanoTime();
+            double transferMillis = Math.max((end - firstByte) / 1_000_000d,
+                    0.001d);
+            return new Mirror(pMirror, (firstByte - start) / 1_000_000L,
+                    Math.max(total, 1) / transferMillis);
+        }
+    }
+
+    /**
+     * Probes the informed mirrors concurrently and returns the ones that
+     * answered, fastest first.
+     *
+     * @param pMirrors
+     *                       The mirrors base locations.
+     * @param pProbePath
+     *                       A path, relative to the repository root, of a file
+     *                       that must exist in all mirrors.
+     * @return the ranked mirrors, possibly empty.
+     */
+    public List<Mirror> rank(List<URI> pMirrors, String pProbePath) {
+        List<CompletableFuture<Mirror>> probes = new ArrayList<>(
+                pMirrors.size());
+        for (URI mirror : pMirrors) {
+            probes.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    return probe(mirror, pProbePath);
+                } catch (IOException | RuntimeException e) {
+                    LOGGER.debug("Discarding p2 mirror {}: {}", mirror,
+                            e.getMessage());
+                    return null;
+                }
+            }, executor));
+        }
+        List<Mirror> ranked = new ArrayList<>();
+        for (CompletableFuture<Mirror> probe : probes) {
+            Mirror mirror = probe.join();
+            if (mirror != null) {
+                ranked.add(mirror);
+            }
+        }
+        Collections.sort(ranked,
+                Comparator.comparingLong(Mirror::estimatedTimeInMillis));
+        return ranked;
+    }
+
+    /**
+     * Reads the list of mirrors published at a p2 <i>p2.mirrorsURL</i>
+     * location.
+     *
+     * @param pMirrorsURL
+     *                        The mirrors list location.
+     * @return the mirrors base locations, in the published order.
+     * @throws IOException
+     *                         When the list could not be read.
+     */
+    public List<URI> readMirrors(URL pMirrorsURL) throws IOException {
+        URLConnection connection = pMirrorsURL.openConnection();
+        connection.setConnectTimeout(connectTimeoutInMillis);
+        connection.setReadTimeout(readTimeoutInMillis);
+        List<URI> mirrors = new ArrayList<>();
+        try (InputStream in = connection.getInputStream()) {
+            XMLInputFactory factory = XMLInputFactory.newInstance();
+            factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+            XMLStreamReader reader = factory.createXMLStreamReader(in);
+            try {
+                while (reader.hasNext()) {
+                    if (reader.next() == XMLStreamConstants.START_ELEMENT
+                            && "mirror".equals(reader.getLocalName())) {
+                        String url = reader.getAttributeValue(null, "url");
+                        if (url != null && !url.trim().isEmpty()) {
+                            mirrors.add(P2ArtifactRepository
+                                    .normalize(new URI(url.trim())));
+                        }
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException | URISyntaxException e) {
+            throw new IOException(
+                    "Failure while reading p2 mirrors list " + pMirrorsURL,
+                    e);
+        }
+        return mirrors;
+    }
+}
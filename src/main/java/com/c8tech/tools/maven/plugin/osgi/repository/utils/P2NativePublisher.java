@@ -0,0 +1,519 @@
+/**
+ * ============================================================================
+ *  Copyright ©  2015-2019,    Cristiano V. Gavião
+ *
+ *  All rights reserved.
+ *  This program and the accompanying materials are made available under
+ *  the terms of the Eclipse Public License v1.0 which accompanies this
+ *  distribution and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * ============================================================================
+ */
+package com.c8tech.tools.maven.plugin.osgi.repository.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.osgi.framework.Version;
+
+import com.c8tech.tools.maven.plugin.osgi.repository.utils.ManifestHeaderParser.Clause;
+
+/**
+ * Publishes a set of plain OSGi bundles as a p2 repository, generating the
+ * <i>content.xml</i> and <i>artifacts.xml</i> files straight from the bundles
+ * manifest headers, without launching the Equinox publisher applications.
+ * <p>
+ * It produces the same installable units as the <i>BundlesAction</i> of the
+ * p2 publisher for bundles that are not Eclipse plugins: the bundle identity,
+ * its exported packages, imported packages, required bundles and fragment
+ * host. Configuration units and features are not generated.
+ *
+ * @author Cristiano Gavião
+ *
+ */
+public final class P2NativePublisher {
+
+    private static final class Bundle {
+
+        private final Map<String, String> headers;
+
+        private final String id;
+
+        private final boolean modified;
+
+        private final Map<String, String> properties = new LinkedHashMap<>();
+
+        private final Path source;
+
+        private final String version;
+
+        Bundle(String pId, String pVersion, Map<String, String> pHeaders,
+                Path pSource, boolean pModified) {
+            id = pId;
+            version = pVersion;
+            headers = pHeaders;
+            source = pSource;
+            modified = pModified;
+        }
+    }
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final String CLASSIFIER_BUNDLE = "osgi.bundle";
+
+    private static final String DIRECTIVE_RESOLUTION = "resolution";
+
+    private static final String HEADER_BUNDLE_NAME = "Bundle-Name";
+
+    private static final String HEADER_BUNDLE_VENDOR = "Bundle-Vendor";
+
+    private static final String HEADER_BUNDLE_VERSION = "Bundle-Version";
+
+    private static final String HEADER_EXPORT_PACKAGE = "Export-Package";
+
+    private static final String HEADER_FRAGMENT_HOST = "Fragment-Host";
+
+    private static final String HEADER_IMPORT_PACKAGE = "Import-Package";
+
+    private static final String HEADER_REQUIRE_BUNDLE = "Require-Bundle";
+
+    private static final String HEADER_SYMBOLIC_NAME = "Bundle-SymbolicName";
+
+    private static final String NAMESPACE_IU = "org.eclipse.equinox.p2.iu";
+
+    private static final String NAMESPACE_JAVA_PACKAGE = "java.package";
+
+    private static final String ZERO_VERSION = "0.0.0";
+
+    private final Map<String, Bundle> bundles = new TreeMap<>();
+
+    private final String repositoryName;
+
+    private final long timestamp;
+
+    /**
+     * Creates a new publisher.
+     *
+     * @param pRepositoryName
+     *                            The name of the generated repositories.
+     * @param pTimestamp
+     *                            The value of the <i>p2.timestamp</i>
+     *                            repository property.
+     */
+    public P2NativePublisher(String pRepositoryName, long pTimestamp) {
+        repositoryName = pRepositoryName;
+        timestamp = pTimestamp;
+    }
+
+    private static String toHex(byte[] pBytes) {
+        StringBuilder builder = new StringBuilder(pBytes.length * 2);
+        for (byte b : pBytes) {
+            builder.append(Character.forDigit((b >> 4) & 0xF, 16))
+                    .append(Character.forDigit(b & 0xF, 16));
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Normalizes an OSGi version range, or a single version, into the format
+     * used by p2.
+     *
+     * @param pRange
+     *                   The range, may be <code>null</code>.
+     * @return the normalized range.
+     */
+    static String toRange(String pRange) {
+        if (pRange == null || pRange.trim().isEmpty()) {
+            return ZERO_VERSION;
+        }
+        String range = pRange.trim();
+        char first = range.charAt(0);
+        if (first != '[' && first != '(') {
+            return toVersion(range);
+        }
+        int comma = range.indexOf(',');
+        if (comma < 0) {
+            return toVersion(range.substring(1, range.length() - 1));
+        }
+        return first + toVersion(range.substring(1, comma)) + ','
+                + toVersion(range.substring(comma + 1, range.length() - 1))
+                + range.charAt(range.length() - 1);
+    }
+
+    /**
+     * Normalizes an OSGi version, filling the missing segments.
+     *
+     * @param pVersion
+     *                     The version, may be <code>null</code>.
+     * @return the normalized version.
+     * @throws IllegalArgumentException
+     *                                      When the version is not a valid
+     *                                      OSGi version, like
+     *                                      <i>1.0.0-SNAPSHOT</i>.
+     */
+    static String toVersion(String pVersion) {
+        if (pVersion == null || pVersion.trim().isEmpty()) {
+            return ZERO_VERSION;
+        }
+        return Version.parseVersion(pVersion).toString();
+    }
+
+    /**
+     * Adds a bundle to be published.
+     *
+     * @param pHeaders
+     *                     The bundle manifest headers.
+     * @param pFile
+     *                     The bundle file.
+     * @return <code>false</code> when the headers do not belong to a bundle
+     *         and the file was ignored.
+     */
+    public boolean addBundle(Map<String, String> pHeaders, Path pFile) {
+        return addBundle(pHeaders, pFile, true);
+    }
+
+    /**
+     * Adds a bundle to be published.
+     *
+     * @param pHeaders
+     *                      The bundle manifest headers.
+     * @param pFile
+     *                      The bundle file.
+     * @param pModified
+     *                      Whether the bundle file has changed since it was
+     *                      published into the repository. An unmodified
+     *                      bundle already present in the repository is
+     *                      neither copied nor digested again.
+     * @return <code>false</code> when the headers do not belong to a bundle
+     *         and the file was ignored.
+     * @throws IllegalArgumentException
+     *                                      When the bundle version is not a
+     *                                      valid OSGi version.
+     */
+    public boolean addBundle(Map<String, String> pHeaders, Path pFile,
+            boolean pModified) {
+        String id = ManifestHeaderParser
+                .firstPath(pHeaders.get(HEADER_SYMBOLIC_NAME));
+        if (id == null) {
+            return false;
+        }
+        String version = toVersion(pHeaders.get(HEADER_BUNDLE_VERSION));
+        bundles.put(id + '_' + version,
+                new Bundle(id, version, pHeaders, pFile, pModified));
+        return true;
+    }
+
+    public boolean isEmpty() {
+        return bundles.isEmpty();
+    }
+
+    /**
+     * Copies the bundles into the <i>plugins</i> directory of the repository
+     * and writes its <i>artifacts.xml</i> and <i>content.xml</i> files.
+     *
+     * @param pRepositoryDir
+     *                           The p2 repository directory.
+     * @return the bundle files written into the repository.
+     * @throws IOException
+     *                         When any file could not be read or written.
+     */
+    public List<Path> publish(Path pRepositoryDir) throws IOException {
+        Path pluginsDir = pRepositoryDir.resolve("plugins");
+        Files.createDirectories(pluginsDir);
+        P2RepositoryResolver.Index previous = readPreviousArtifacts(
+                pRepositoryDir);
+        List<Path> published = new ArrayList<>(bundles.size());
+        for (Bundle bundle : bundles.values()) {
+            Path target = pluginsDir
+                    .resolve(bundle.id + '_' + bundle.version + ".jar");
+            P2ArtifactDescriptor descriptor = previous == null ? null
+                    : previous.lookup(CLASSIFIER_BUNDLE, bundle.id,
+                            bundle.version);
+            if (!bundle.modified && descriptor != null
+                    && Files.isRegularFile(target)) {
+                bundle.properties.putAll(descriptor.getProperties());
+            } else {
+                copyAndDigest(bundle, target);
+            }
+            published.add(target);
+        }
+        try {
+            writeArtifacts(pRepositoryDir.resolve("artifacts.xml"));
+            writeContent(pRepositoryDir.resolve("content.xml"));
+        } catch (XMLStreamException e) {
+            throw new IOException("Failure while writing the p2 metadata.", e);
+        }
+        return published;
+    }
+
+    private P2RepositoryResolver.Index readPreviousArtifacts(
+            Path pRepositoryDir) throws IOException {
+        boolean reusable = false;
+        for (Bundle bundle : bundles.values()) {
+            reusable |= !bundle.modified;
+        }
+        if (!reusable
+                || !Files.isRegularFile(pRepositoryDir.resolve("artifacts.xml"))) {
+            return null;
+        }
+        return P2RepositoryResolver.Index
+                .of(P2ArtifactRepository.read(pRepositoryDir.toUri()));
+    }
+
+    private void copyAndDigest(Bundle pBundle, Path pTarget)
+            throws IOException {
+        MessageDigest md5;
+        MessageDigest sha256;
+        try {
+            md5 = MessageDigest.getInstance("MD5");
+            sha256 = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+        long size = 0;
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try (InputStream in = Files.newInputStream(pBundle.source);
+                OutputStream out = Files.newOutputStream(pTarget)) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+                md5.update(buffer, 0, read);
+                sha256.update(buffer, 0, read);
+                size += read;
+            }
+        }
+        pBundle.properties.put(VerifiedDownloader.PROP_ARTIFACT_SIZE,
+                Long.toString(size));
+        pBundle.properties.put(VerifiedDownloader.PROP_DOWNLOAD_SIZE,
+                Long.toString(size));
+        pBundle.properties.put(VerifiedDownloader.PROP_DOWNLOAD_MD5,
+                toHex(md5.digest()));
+        pBundle.properties.put(VerifiedDownloader.PROP_CHECKSUM_SHA_256,
+                toHex(sha256.digest()));
+    }
+
+    private static void writeRequired(IndentingXmlWriter pWriter,
+            String pNamespace, Clause pClause, String pName, String pRange)
+            throws XMLStreamException {
+        if ("optional".equals(pClause.getDirective(DIRECTIVE_RESOLUTION))) {
+            pWriter.empty("required", "namespace", pNamespace, "name", pName,
+                    "range", toRange(pRange), "optional", "true", "greedy",
+                    "false");
+        } else {
+            pWriter.empty("required", "namespace", pNamespace, "name", pName,
+                    "range", toRange(pRange));
+        }
+    }
+
+    private void writeArtifacts(Path pFile)
+            throws IOException, XMLStreamException {
+        try (OutputStream out = Files.newOutputStream(pFile)) {
+            IndentingXmlWriter writer = new IndentingXmlWriter(out,
+                    "artifactRepository", "version='1.1.0'");
+            writer.start("repository", "name", repositoryName, "type",
+                    "org.eclipse.equinox.p2.artifact.repository.simpleRepository",
+                    "version", "1");
+            writer.start("properties", "size", "2");
+            writer.empty("property", "name", "p2.timestamp", "value",
+                    Long.toString(timestamp));
+            writer.empty("property", "name", "p2.compressed", "value",
+                    "false");
+            writer.end();
+            writer.start("mappings", "size", "3");
+            writer.empty("rule", "filter", "(& (classifier=osgi.bundle))",
+                    "output", "${repoUrl}/plugins/${id}_${version}.jar");
+            writer.empty("rule", "filter", "(& (classifier=binary))", "output",
+                    "${repoUrl}/binary/${id}_${version}");
+            writer.empty("rule", "filter",
+                    "(& (classifier=org.eclipse.update.feature))", "output",
+                    "${repoUrl}/features/${id}_${version}.jar");
+            writer.end();
+            writer.start("artifacts", "size", Integer.toString(bundles.size()));
+            for (Bundle bundle : bundles.values()) {
+                writer.start("artifact", "classifier", CLASSIFIER_BUNDLE, "id",
+                        bundle.id, "version", bundle.version);
+                writer.start("properties", "size",
+                        Integer.toString(bundle.properties.size()));
+                for (Map.Entry<String, String> property : bundle.properties
+                        .entrySet()) {
+                    writer.empty("property", "name", property.getKey(),
+                            "value", property.getValue());
+                }
+                writer.end();
+                writer.end();
+            }
+            writer.end();
+            writer.end();
+            writer.close();
+        }
+    }
+
+    private void writeContent(Path pFile)
+            throws IOException, XMLStreamException {
+        try (OutputStream out = Files.newOutputStream(pFile)) {
+            IndentingXmlWriter writer = new IndentingXmlWriter(out,
+                    "metadataRepository", "version='1.1.0'");
+            writer.start("repository", "name", repositoryName, "type",
+                    "org.eclipse.equinox.internal.p2.metadata.repository.LocalMetadataRepository",
+                    "version", "1");
+            writer.start("properties", "size", "2");
+            writer.empty("property", "name", "p2.timestamp", "value",
+                    Long.toString(timestamp));
+            writer.empty("property", "name", "p2.compressed", "value",
+                    "false");
+            writer.end();
+            writer.start("units", "size", Integer.toString(bundles.size()));
+            for (Bundle bundle : bundles.values()) {
+                try {
+                    writeUnit(writer, bundle);
+                } catch (IllegalArgumentException e) {
+                    throw new IOException("The manifest of " + bundle.source
+                            + " has an invalid version: " + e.getMessage(), e);
+                }
+            }
+            writer.end();
+            writer.end();
+            writer.close();
+        }
+    }
+
+    private void writeUnit(IndentingXmlWriter pWriter, Bundle pBundle)
+            throws XMLStreamException {
+        Map<String, String> headers = pBundle.headers;
+        List<Clause> symbolicName = ManifestHeaderParser
+                .parse(headers.get(HEADER_SYMBOLIC_NAME));
+        boolean singleton = "true"
+                .equals(symbolicName.get(0).getDirective("singleton"));
+        List<Clause> exports = ManifestHeaderParser
+                .parse(headers.get(HEADER_EXPORT_PACKAGE));
+        List<Clause> imports = ManifestHeaderParser
+                .parse(headers.get(HEADER_IMPORT_PACKAGE));
+        List<Clause> requiredBundles = ManifestHeaderParser
+                .parse(headers.get(HEADER_REQUIRE_BUNDLE));
+        List<Clause> host = ManifestHeaderParser
+                .parse(headers.get(HEADER_FRAGMENT_HOST));
+
+        if (singleton) {
+            pWriter.start("unit", "id", pBundle.id, "version",
+                    pBundle.version);
+        } else {
+            pWriter.start("unit", "id", pBundle.id, "version",
+                    pBundle.version, "singleton", "false");
+        }
+        pWriter.empty("update", "id", pBundle.id, "range",
+                "[0.0.0," + pBundle.version + ")", "severity", "0");
+
+        Map<String, String> properties = new LinkedHashMap<>();
+        if (headers.get(HEADER_BUNDLE_NAME) != null) {
+            properties.put("org.eclipse.equinox.p2.name",
+                    headers.get(HEADER_BUNDLE_NAME));
+        }
+        if (headers.get(HEADER_BUNDLE_VENDOR) != null) {
+            properties.put("org.eclipse.equinox.p2.provider",
+                    headers.get(HEADER_BUNDLE_VENDOR));
+        }
+        if (!properties.isEmpty()) {
+            pWriter.start("properties", "size",
+                    Integer.toString(properties.size()));
+            for (Map.Entry<String, String> property : properties.entrySet()) {
+                pWriter.empty("property", "name", property.getKey(), "value",
+                        property.getValue());
+            }
+            pWriter.end();
+        }
+
+        int provided = 3 + (host.isEmpty() ? 0 : 1);
+        for (Clause export : exports) {
+            provided += export.getPaths().size();
+        }
+        pWriter.start("provides", "size", Integer.toString(provided));
+        pWriter.empty("provided", "namespace", NAMESPACE_IU, "name",
+                pBundle.id, "version", pBundle.version);
+        pWriter.empty("provided", "namespace", CLASSIFIER_BUNDLE, "name",
+                pBundle.id, "version", pBundle.version);
+        for (Clause export : exports) {
+            String version = export.getAttribute("version") != null
+                    ? export.getAttribute("version")
+                    : export.getAttribute("specification-version");
+            for (String packageName : export.getPaths()) {
+                pWriter.empty("provided", "namespace", NAMESPACE_JAVA_PACKAGE,
+                        "name", packageName, "version", toVersion(version));
+            }
+        }
+        pWriter.empty("provided", "namespace",
+                "org.eclipse.equinox.p2.eclipse.type", "name",
+                host.isEmpty() ? "bundle" : "fragment", "version", "1.0.0");
+        if (!host.isEmpty()) {
+            pWriter.empty("provided", "namespace", "osgi.fragment", "name",
+                    host.get(0).getPaths().get(0), "version",
+                    pBundle.version);
+        }
+        pWriter.end();
+
+        int required = host.size();
+        for (Clause clause : imports) {
+            required += clause.getPaths().size();
+        }
+        for (Clause clause : requiredBundles) {
+            required += clause.getPaths().size();
+        }
+        if (required > 0) {
+            pWriter.start("requires", "size", Integer.toString(required));
+            for (Clause clause : host) {
+                writeRequired(pWriter, CLASSIFIER_BUNDLE, clause,
+                        clause.getPaths().get(0),
+                        clause.getAttribute("bundle-version"));
+            }
+            for (Clause clause : imports) {
+                String range = clause.getAttribute("version") != null
+                        ? clause.getAttribute("version")
+                        : clause.getAttribute("specification-version");
+                for (String packageName : clause.getPaths()) {
+                    writeRequired(pWriter, NAMESPACE_JAVA_PACKAGE, clause,
+                            packageName, range);
+                }
+            }
+            for (Clause clause : requiredBundles) {
+                for (String bundleName : clause.getPaths()) {
+                    writeRequired(pWriter, CLASSIFIER_BUNDLE, clause,
+                            bundleName, clause.getAttribute("bundle-version"));
+                }
+            }
+            pWriter.end();
+        }
+
+        pWriter.start("artifacts", "size", "1");
+        pWriter.empty("artifact", "classifier", CLASSIFIER_BUNDLE, "id",
+                pBundle.id, "version", pBundle.version);
+        pWriter.end();
+        pWriter.empty("touchpoint", "id", "org.eclipse.equinox.p2.osgi",
+                "version", "1.0.0");
+        pWriter.start("touchpointData", "size", "1");
+        pWriter.start("instructions", "size", "1");
+        StringBuilder manifest = new StringBuilder();
+        manifest.append(HEADER_BUNDLE_VERSION).append(": ")
+                .append(pBundle.version).append('\n');
+        manifest.append(HEADER_SYMBOLIC_NAME).append(": ")
+                .append(headers.get(HEADER_SYMBOLIC_NAME)).append('\n');
+        if (!host.isEmpty()) {
+            manifest.append(HEADER_FRAGMENT_HOST).append(": ")
+                    .append(headers.get(HEADER_FRAGMENT_HOST)).append('\n');
+        }
+        pWriter.text("instruction", manifest.toString(), "key", "manifest");
+        pWriter.end();
+        pWriter.end();
+        pWriter.end();
+    }
+}
@@ -0,0 +1,141 @@
+/**
+ * ============================================================================
+ *  Copyright ©  2015-2019,    Cristiano V. Gavião
+ *
+ *  All rights reserved.
+ *  This program and the accompanying materials are made available under
+ *  the terms of the Eclipse Public License v1.0 which accompanies this
+ *  distribution and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * ============================================================================
+ */
+package com.c8tech.tools.maven.plugin.osgi.repository.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Remembers which bundle, identified by its symbolic name and version, was
+ * published into a p2 repository from each input file, so a later build can
+ * tell which installable units must be removed or replaced.
+ *
+ * @author Cristiano Gavião
+ *
+ */
+public final class P2PublishState {
+
+    private static final Logger LOGGER = LoggerFactory
+            .getLogger(P2PublishState.class);
+
+    private final Path file;
+
+    private final Properties published = new Properties();
+
+    private P2PublishState(Path pFile) {
+        file = pFile;
+    }
+
+    /**
+     * Loads the state saved by a previous build.
+     *
+     * @param pFile
+     *                  The state file.
+     * @return the state read, empty when the file doesn't exist or could not
+     *         be read.
+     */
+    public static P2PublishState load(Path pFile) {
+        P2PublishState state = new P2PublishState(pFile);
+        if (Files.isRegularFile(pFile)) {
+            try (InputStream in = Files.newInputStream(pFile)) {
+                state.published.load(in);
+            } catch (IOException | IllegalArgumentException e) {
+                LOGGER.warn("Discarding unreadable p2 publish state {}: {}",
+                        pFile, e.getMessage());
+                state.published.clear();
+            }
+        }
+        return state;
+    }
+
+    /**
+     * Calculates the key, in the form <i>id_version</i>, of the bundle
+     * described by the informed manifest headers. It is also the name, without
+     * extension, of the bundle file in the <i>plugins</i> directory of a p2
+     * repository.
+     *
+     * @param pManifestHeaders
+     *                             The bundle manifest headers.
+     * @return the bundle key or <code>null</code> if it is not a bundle.
+     * @throws IllegalArgumentException
+     *                                      When the bundle version is not a
+     *                                      valid OSGi version.
+     */
+    public static String toBundleKey(Map<String, String> pManifestHeaders) {
+        String id = ManifestHeaderParser
+                .firstPath(pManifestHeaders.get("Bundle-SymbolicName"));
+        if (id == null) {
+            return null;
+        }
+        return id + '_' + P2NativePublisher
+                .toVersion(pManifestHeaders.get("Bundle-Version"));
+    }
+
+    public void clear() {
+        published.clear();
+    }
+
+    /**
+     * Returns the key of the bundle published from an input file.
+     *
+     * @param pInput
+     *                   The input file.
+     * @return the bundle key or <code>null</code>.
+     */
+    public String getBundleKey(Path pInput) {
+        return published.getProperty(pInput.toAbsolutePath().toString());
+    }
+
+    public Set<Path> getInputs() {
+        Set<Path> inputs = new TreeSet<>();
+        for (String input : published.stringPropertyNames()) {
+            inputs.add(Paths.get(input));
+        }
+        return inputs;
+    }
+
+    public boolean isEmpty() {
+        return published.isEmpty();
+    }
+
+    public void put(Path pInput, String pBundleKey) {
+        published.setProperty(pInput.toAbsolutePath().toString(), pBundleKey);
+    }
+
+    public void remove(Path pInput) {
+        published.remove(pInput.toAbsolutePath().toString());
+    }
+
+    /**
+     * Saves the state into its file.
+     *
+     * @throws IOException
+     *                         When the file could not be written.
+     */
+    public void save() throws IOException {
+        Files.createDirectories(file.getParent());
+        try (OutputStream out = Files.newOutputStream(file)) {
+            published.store(out, "p2 published bundles");
+        }
+    }
+}
@@ -0,0 +1,507 @@
+/**
+ * ============================================================================
+ *  Copyright ©  2015-2019,    Cristiano V. Gavião
+ *
+ *  All rights reserved.
+ *  This program and the accompanying materials are made available under
+ *  the terms of the Eclipse Public License v1.0 which accompanies this
+ *  distribution and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * ============================================================================
+ */
+package com.c8tech.tools.maven.plugin.osgi.repository.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Named;
+
+import org.apache.maven.SessionScoped;
+import org.apache.maven.shared.utils.io.FileUtils;
+import org.jdom2.Document;
+import org.jdom2.Element;
+import org.jdom2.JDOMException;
+import org.jdom2.ProcessingInstruction;
+import org.jdom2.input.SAXBuilder;
+import org.jdom2.output.Format;
+import org.jdom2.output.XMLOutputter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A publisher service that lives for the whole maven session, shared by all
+ * the modules of a reactor that generate p2 repositories.
+ * <p>
+ * The jobs submitted by the modules, even the ones built concurrently, are
+ * queued and executed one at a time. The installable unit and the artifact
+ * descriptor generated by the Equinox publisher for each bundle are kept in
+ * memory, keyed by the bundle digest. So the Equinox runtime is launched only
+ * for the bundles not published yet in the session, and a module whose
+ * bundles were all published before by other modules gets its repository
+ * assembled without any launch.
+ * <p>
+ * The default configuration units generated by the launches, whose ids start
+ * with <i>tooling</i>, are also kept in memory and added to the repository of
+ * every job, so it does not depend on the order the modules were built. The
+ * other artifacts of a job, like features, are not kept: the Equinox runtime
+ * is launched for them every time, and their units and files only go to the
+ * repository of that job.
+ * <p>
+ * A new instance is created for each maven session, so nothing is kept
+ * between the builds of an embedded maven. The queue thread ends after being
+ * idle for a while, so it does not outlive the session either.
+ *
+ * @author Cristiano Gavião
+ *
+ */
+@Named
+@SessionScoped
+public class P2PublisherDaemon {
+
+    /**
+     * The Equinox publisher launch, provided by the module submitting a job.
+     */
+    @FunctionalInterface
+    public interface Launch {
+
+        /**
+         * Publishes the bundles found in the <i>plugins</i> subdirectory of
+         * the source directory, and the other artifacts found in its other
+         * subdirectories, into a new repository.
+         *
+         * @param pSourceDir
+         *                          The source directory.
+         * @param pRepositoryDir
+         *                          The repository directory.
+         * @throws Exception
+         *                       When the publisher fails.
+         */
+        void publish(Path pSourceDir, Path pRepositoryDir) throws Exception; // NOSONAR
+    }
+
+    /**
+     * A publishing request of one module.
+     */
+    public static final class Job {
+
+        private final Map<Path, String> artifacts = new LinkedHashMap<>();
+
+        private final Map<Path, String> bundles = new LinkedHashMap<>();
+
+        private final Launch launch;
+
+        private final Path outputDir;
+
+        private final String repositoryName;
+
+        private final Path scratchDir;
+
+        private final long timestamp;
+
+        /**
+         * Creates a new job.
+         *
+         * @param pRepositoryName
+         *                            The name of the repository to assemble.
+         * @param pTimestamp
+         *                            The repository timestamp.
+         * @param pOutputDir
+         *                            The repository directory.
+         * @param pScratchDir
+         *                            A directory, owned by the module, where
+         *                            the Equinox publisher is launched when
+         *                            needed.
+         * @param pLaunch
+         *                            The Equinox publisher launch.
+         */
+        public Job(String pRepositoryName, long pTimestamp, Path pOutputDir,
+                Path pScratchDir, Launch pLaunch) {
+            repositoryName = pRepositoryName;
+            timestamp = pTimestamp;
+            outputDir = pOutputDir;
+            scratchDir = pScratchDir;
+            launch = pLaunch;
+        }
+
+        /**
+         * Adds a bundle to be published.
+         *
+         * @param pFile
+         *                       The bundle file.
+         * @param pBundleKey
+         *                       The bundle key, in the form <i>id_version</i>.
+         * @return this job.
+         */
+        public Job addBundle(Path pFile, String pBundleKey) {
+            bundles.put(pFile, pBundleKey);
+            return this;
+        }
+
+        /**
+         * Adds an artifact that is not a bundle, like a feature, to be
+         * published.
+         *
+         * @param pFile
+         *                         The artifact file.
+         * @param pRelativePath
+         *                         The path of the artifact in the source
+         *                         directory of the Equinox publisher, like
+         *                         <i>features/aFeature.jar</i>.
+         * @return this job.
+         */
+        public Job addArtifact(Path pFile, String pRelativePath) {
+            artifacts.put(pFile, pRelativePath);
+            return this;
+        }
+    }
+
+    private static final class PublishedBundle {
+
+        private final Element artifact;
+
+        private final String key;
+
+        private final Element unit;
+
+        PublishedBundle(String pKey, Element pUnit, Element pArtifact) {
+            key = pKey;
+            unit = pUnit;
+            artifact = pArtifact;
+        }
+    }
+
+    private static final Logger LOGGER = LoggerFactory
+            .getLogger(P2PublisherDaemon.class);
+
+    private static final String OSGI_BUNDLE = "osgi.bundle";
+
+    private static final String PLUGINS_DIR = "plugins";
+
+    private static final String SHARED_UNIT_PREFIX = "tooling";
+
+    private static final long QUEUE_KEEP_ALIVE_SECONDS = 30L;
+
+    private int launches;
+
+    // only touched by the queue thread
+    private final Map<String, PublishedBundle> publishedBundles = new HashMap<>();
+
+    // only touched by the queue thread
+    private final Map<String, Element> sharedUnits = new TreeMap<>();
+
+    // a single thread, ended when idle
+    private final ExecutorService queue = new ThreadPoolExecutor(0, 1,
+            QUEUE_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(), runnable -> {
+                Thread thread = new Thread(runnable, "p2-publisher-daemon");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    private static String digest(Path pFile) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = new DigestInputStream(Files.newInputStream(pFile),
+                digest)) {
+            while (in.read(buffer) != -1) {
+                // only digesting
+            }
+        }
+        StringBuilder builder = new StringBuilder();
+        for (byte b : digest.digest()) {
+            builder.append(Character.forDigit((b >> 4) & 0xF, 16))
+                    .append(Character.forDigit(b & 0xF, 16));
+        }
+        return builder.toString();
+    }
+
+    private static Element findBundleArtifact(Element pUnit) {
+        Element artifacts = pUnit.getChild("artifacts");
+        if (artifacts == null) {
+            return null;
+        }
+        for (Element artifact : artifacts.getChildren("artifact")) {
+            if (OSGI_BUNDLE.equals(artifact.getAttributeValue("classifier"))) {
+                return artifact;
+            }
+        }
+        return null;
+    }
+
+    private static String key(Element pElement) {
+        return pElement.getAttributeValue("id") + '_'
+                + pElement.getAttributeValue("version");
+    }
+
+    private static Document parse(Path pFile) throws IOException {
+        SAXBuilder builder = new SAXBuilder();
+        builder.setExpandEntities(false);
+        try (InputStream in = Files.newInputStream(pFile)) {
+            return builder.build(in);
+        } catch (JDOMException e) {
+            throw new IOException("Failure while parsing " + pFile, e);
+        }
+    }
+
+    private static void write(Path pFile, String pInstruction, Element pRoot)
+            throws IOException {
+        Document document = new Document();
+        document.addContent(
+                new ProcessingInstruction(pInstruction, "version='1.1.0'"));
+        document.setRootElement(pRoot);
+        try (OutputStream out = Files.newOutputStream(pFile)) {
+            new XMLOutputter(Format.getPrettyFormat()).output(document, out);
+        }
+    }
+
+    private static Element repositoryProperties(long pTimestamp) {
+        Element properties = new Element("properties").setAttribute("size",
+                "2");
+        properties.addContent(new Element("property")
+                .setAttribute("name", "p2.timestamp")
+                .setAttribute("value", Long.toString(pTimestamp)));
+        properties.addContent(new Element("property")
+                .setAttribute("name", "p2.compressed")
+                .setAttribute("value", "false"));
+        return properties;
+    }
+
+    /**
+     * Returns how many times the Equinox publisher was launched in this
+     * session.
+     *
+     * @return the number of launches.
+     */
+    public synchronized int getLaunches() {
+        return launches;
+    }
+
+    /**
+     * Queues a publishing job.
+     *
+     * @param pJob
+     *                 The job.
+     * @return a future for the number of bundles published.
+     */
+    public CompletableFuture<Integer> submit(Job pJob) {
+        CompletableFuture<Integer> result = new CompletableFuture<>();
+        queue.execute(() -> {
+            try {
+                result.complete(execute(pJob));
+            } catch (Exception e) { // NOSONAR
+                result.completeExceptionally(e);
+            }
+        });
+        return result;
+    }
+
+    private int execute(Job pJob) throws Exception { // NOSONAR
+        Map<String, Path> missing = new LinkedHashMap<>();
+        Map<Path, String> digests = new LinkedHashMap<>();
+        for (Path bundle : pJob.bundles.keySet()) {
+            String digest = digest(bundle);
+            digests.put(bundle, digest);
+            if (!publishedBundles.containsKey(digest)) {
+                missing.put(digest, bundle);
+            }
+        }
+        List<Element> jobUnits = new ArrayList<>();
+        List<Element> jobArtifacts = new ArrayList<>();
+        if (!missing.isEmpty() || !pJob.artifacts.isEmpty()) {
+            launch(pJob, missing, jobUnits, jobArtifacts);
+        }
+
+        Files.createDirectories(pJob.outputDir.resolve(PLUGINS_DIR));
+        Map<String, PublishedBundle> assembled = new TreeMap<>();
+        for (Map.Entry<Path, String> bundle : digests.entrySet()) {
+            PublishedBundle published = publishedBundles
+                    .get(bundle.getValue());
+            if (published.unit == null) {
+                continue;
+            }
+            assembled.put(published.key, published);
+            Files.copy(bundle.getKey(),
+                    pJob.outputDir.resolve(
+                            PLUGINS_DIR + '/' + published.key + ".jar"),
+                    StandardCopyOption.REPLACE_EXISTING);
+        }
+        jobUnits.addAll(sharedUnits.values());
+        writeRepository(pJob, assembled.values(), jobUnits, jobArtifacts);
+        return assembled.size();
+    }
+
+    private void launch(Job pJob, Map<String, Path> pMissing,
+            List<Element> pJobUnits, List<Element> pJobArtifacts)
+            throws Exception { // NOSONAR
+        Path sourceDir = pJob.scratchDir.resolve("source");
+        Path repositoryDir = pJob.scratchDir.resolve("repository");
+        FileUtils.deleteDirectory(pJob.scratchDir.toFile());
+        Map<String, String> digestsByKey = new HashMap<>();
+        for (Map.Entry<String, Path> bundle : pMissing.entrySet()) {
+            String bundleKey = pJob.bundles.get(bundle.getValue());
+            digestsByKey.put(bundleKey, bundle.getKey());
+            FileLinks.linkOrCopy(bundle.getValue(), sourceDir
+                    .resolve(PLUGINS_DIR + '/' + bundleKey + ".jar"));
+        }
+        for (Map.Entry<Path, String> artifact : pJob.artifacts.entrySet()) {
+            FileLinks.linkOrCopy(artifact.getKey(),
+                    sourceDir.resolve(artifact.getValue()));
+        }
+        Files.createDirectories(repositoryDir);
+        pJob.launch.publish(sourceDir, repositoryDir);
+        synchronized (this) {
+            launches++;
+        }
+
+        Map<String, Element> artifacts = new HashMap<>();
+        Element artifactsElement = parse(repositoryDir.resolve("artifacts.xml"))
+                .getRootElement().getChild("artifacts");
+        if (artifactsElement != null) {
+            for (Element artifact : artifactsElement.getChildren("artifact")) {
+                if (OSGI_BUNDLE
+                        .equals(artifact.getAttributeValue("classifier"))) {
+                    artifacts.put(key(artifact), artifact.clone());
+                } else {
+                    pJobArtifacts.add(artifact.clone());
+                }
+            }
+        }
+        Element units = parse(repositoryDir.resolve("content.xml"))
+                .getRootElement().getChild("units");
+        if (units != null) {
+            for (Element unit : units.getChildren("unit")) {
+                Element bundleArtifact = findBundleArtifact(unit);
+                String digest = bundleArtifact != null
+                        ? digestsByKey.get(key(bundleArtifact))
+                        : null;
+                if (digest != null) {
+                    String bundleKey = key(bundleArtifact);
+                    publishedBundles.put(digest, new PublishedBundle(bundleKey,
+                            unit.clone(), artifacts.get(bundleKey)));
+                } else if (unit.getAttributeValue("id", "")
+                        .startsWith(SHARED_UNIT_PREFIX)) {
+                    sharedUnits.put(key(unit), unit.clone());
+                } else {
+                    pJobUnits.add(unit.clone());
+                }
+            }
+        }
+        copyArtifactFiles(repositoryDir, pJob.outputDir);
+        for (String digest : pMissing.keySet()) {
+            if (!publishedBundles.containsKey(digest)) {
+                LOGGER.warn("The p2 publisher ignored the bundle {}",
+                        pMissing.get(digest));
+                publishedBundles.put(digest,
+                        new PublishedBundle(null, null, null));
+            }
+        }
+    }
+
+    /**
+     * Copies the files of the published artifacts other than bundles, like
+     * the <i>features</i> directory, into the job repository.
+     */
+    private static void copyArtifactFiles(Path pRepositoryDir,
+            Path pOutputDir) throws IOException {
+        try (DirectoryStream<Path> directories = Files
+                .newDirectoryStream(pRepositoryDir, Files::isDirectory)) {
+            for (Path directory : directories) {
+                String name = directory.getFileName().toString();
+                if (PLUGINS_DIR.equals(name)) {
+                    continue;
+                }
+                try (DirectoryStream<Path> files = Files
+                        .newDirectoryStream(directory, Files::isRegularFile)) {
+                    for (Path file : files) {
+                        Path target = pOutputDir.resolve(name)
+                                .resolve(file.getFileName().toString());
+                        Files.createDirectories(target.getParent());
+                        Files.copy(file, target,
+                                StandardCopyOption.REPLACE_EXISTING);
+                    }
+                }
+            }
+        }
+    }
+
+    private static void writeRepository(Job pJob,
+            Iterable<PublishedBundle> pBundles, Iterable<Element> pOtherUnits,
+            Iterable<Element> pOtherArtifacts) throws IOException {
+        List<Element> unitList = new ArrayList<>();
+        List<Element> artifactList = new ArrayList<>();
+        for (PublishedBundle bundle : pBundles) {
+            unitList.add(bundle.unit.clone());
+            if (bundle.artifact != null) {
+                artifactList.add(bundle.artifact.clone());
+            }
+        }
+        for (Element unit : pOtherUnits) {
+            unitList.add(unit.clone());
+        }
+        for (Element artifact : pOtherArtifacts) {
+            artifactList.add(artifact.clone());
+        }
+
+        Element content = new Element("repository")
+                .setAttribute("name", pJob.repositoryName)
+                .setAttribute("type",
+                        "org.eclipse.equinox.internal.p2.metadata.repository.LocalMetadataRepository")
+                .setAttribute("version", "1");
+        content.addContent(repositoryProperties(pJob.timestamp));
+        content.addContent(new Element("units")
+                .setAttribute("size", Integer.toString(unitList.size()))
+                .addContent(unitList));
+        write(pJob.outputDir.resolve("content.xml"), "metadataRepository",
+                content);
+
+        Element artifacts = new Element("repository")
+                .setAttribute("name", pJob.repositoryName)
+                .setAttribute("type",
+                        "org.eclipse.equinox.p2.artifact.repository.simpleRepository")
+                .setAttribute("version", "1");
+        artifacts.addContent(repositoryProperties(pJob.timestamp));
+        Element mappings = new Element("mappings").setAttribute("size", "3");
+        mappings.addContent(new Element("rule")
+                .setAttribute("filter", "(& (classifier=osgi.bundle))")
+                .setAttribute("output",
+                        "${repoUrl}/plugins/${id}_${version}.jar"));
+        mappings.addContent(new Element("rule")
+                .setAttribute("filter", "(& (classifier=binary))")
+                .setAttribute("output", "${repoUrl}/binary/${id}_${version}"));
+        mappings.addContent(new Element("rule")
+                .setAttribute("filter",
+                        "(& (classifier=org.eclipse.update.feature))")
+                .setAttribute("output",
+                        "${repoUrl}/features/${id}_${version}.jar"));
+        artifacts.addContent(mappings);
+        artifacts.addContent(new Element("artifacts")
+                .setAttribute("size", Integer.toString(artifactList.size()))
+                .addContent(artifactList));
+        write(pJob.outputDir.resolve("artifacts.xml"), "artifactRepository",
+                artifacts);
+    }
+}
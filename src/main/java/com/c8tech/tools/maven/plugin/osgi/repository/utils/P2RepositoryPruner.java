@@ -0,0 +1,122 @@
+/**
+ * ============================================================================
+ *  Copyright ©  2015-2019,    Cristiano V. Gavião
+ *
+ *  All rights reserved.
+ *  This program and the accompanying materials are made available under
+ *  the terms of the Eclipse Public License v1.0 which accompanies this
+ *  distribution and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * ============================================================================
+ */
+package com.c8tech.tools.maven.plugin.osgi.repository.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.Iterator;
+
+import org.jdom2.Document;
+import org.jdom2.Element;
+import org.jdom2.JDOMException;
+import org.jdom2.input.SAXBuilder;
+import org.jdom2.output.Format;
+import org.jdom2.output.XMLOutputter;
+
+/**
+ * Removes bundles from an uncompressed p2 repository: its installable units
+ * from <i>content.xml</i>, its artifact descriptors from <i>artifacts.xml</i>
+ * and its files from the <i>plugins</i> directory.
+ * <p>
+ * The Equinox publisher can only add units to an existing repository, so this
+ * is used to remove the units of deleted or modified inputs before appending
+ * the new ones.
+ *
+ * @author Cristiano Gavião
+ *
+ */
+public final class P2RepositoryPruner {
+
+    private P2RepositoryPruner() {
+    }
+
+    private static int prune(Path pFile, String pContainer, String pElement,
+            Collection<String> pBundleKeys) throws IOException {
+        if (!Files.isRegularFile(pFile)) {
+            return 0;
+        }
+        Document document;
+        try (InputStream in = Files.newInputStream(pFile)) {
+            SAXBuilder builder = new SAXBuilder();
+            builder.setExpandEntities(false);
+            document = builder.build(in);
+        } catch (JDOMException e) {
+            throw new IOException("Failure while parsing " + pFile, e);
+        }
+        Element container = document.getRootElement().getChild(pContainer);
+        if (container == null) {
+            return 0;
+        }
+        int removed = 0;
+        Iterator<Element> iterator = container.getChildren(pElement)
+                .iterator();
+        while (iterator.hasNext()) {
+            Element element = iterator.next();
+            String classifier = element.getAttributeValue("classifier");
+            if ((classifier == null || "osgi.bundle".equals(classifier))
+                    && pBundleKeys.contains(element.getAttributeValue("id")
+                            + '_' + element.getAttributeValue("version"))) {
+                iterator.remove();
+                removed++;
+            }
+        }
+        if (removed == 0) {
+            return 0;
+        }
+        container.setAttribute("size",
+                Integer.toString(container.getChildren(pElement).size()));
+        Path tempFile = Files.createTempFile(pFile.getParent(),
+                pFile.getFileName().toString(), ".tmp");
+        try {
+            try (OutputStream out = Files.newOutputStream(tempFile)) {
+                new XMLOutputter(Format.getPrettyFormat()).output(document,
+                        out);
+            }
+            Files.move(tempFile, pFile, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+        return removed;
+    }
+
+    /**
+     * Removes the informed bundles from a p2 repository.
+     *
+     * @param pRepositoryDir
+     *                           The p2 repository directory.
+     * @param pBundleKeys
+     *                           The keys, in the form <i>id_version</i>, of
+     *                           the bundles to remove.
+     * @return the number of installable units removed.
+     * @throws IOException
+     *                         When the repository could not be updated.
+     */
+    public static int prune(Path pRepositoryDir,
+            Collection<String> pBundleKeys) throws IOException {
+        if (pBundleKeys.isEmpty()) {
+            return 0;
+        }
+        prune(pRepositoryDir.resolve("artifacts.xml"), "artifacts",
+                "artifact", pBundleKeys);
+        for (String bundleKey : pBundleKeys) {
+            Files.deleteIfExists(
+                    pRepositoryDir.resolve("plugins/" + bundleKey + ".jar"));
+        }
+        return prune(pRepositoryDir.resolve("content.xml"), "units", "unit",
+                pBundleKeys);
+    }
+}
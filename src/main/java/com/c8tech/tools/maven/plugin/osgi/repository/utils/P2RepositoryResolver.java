@@ -0,0 +1,265 @@
+/**
+ * ============================================================================
+ *  Copyright ©  2015-2019,    Cristiano V. Gavião
+ *
+ *  All rights reserved.
+ *  This program and the accompanying materials are made available under
+ *  the terms of the Eclipse Public License v1.0 which accompanies this
+ *  distribution and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * ============================================================================
+ */
+package com.c8tech.tools.maven.plugin.osgi.repository.utils;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Resolves p2 artifact repositories, fanning out concurrently over the
+ * children of composite repositories.
+ * <p>
+ * The artifacts of all simple repositories reached are merged into one
+ * {@link Index}. When the same artifact key is provided by more than one
+ * repository, the precedence is given by the declaration order, in a depth
+ * first walk, of the repositories in their composite parents. So the result
+ * does not depend on which child was read first.
+ *
+ * @author Cristiano Gavião
+ *
+ */
+public class P2RepositoryResolver {
+
+    /**
+     * The merged view of the artifacts found in a set of p2 repositories.
+     */
+    public static final class Index {
+
+        private final Map<String, List<P2ArtifactDescriptor>> descriptors = new LinkedHashMap<>();
+
+        private final List<P2ArtifactRepository> repositories = new ArrayList<>();
+
+        /**
+         * Creates an index for the artifacts of a single repository.
+         *
+         * @param pRepository
+         *                        The repository.
+         * @return the repository index.
+         */
+        public static Index of(P2ArtifactRepository pRepository) {
+            Index index = new Index();
+            index.add(pRepository);
+            return index;
+        }
+
+        private void add(P2ArtifactRepository pRepository) {
+            repositories.add(pRepository);
+            for (P2ArtifactDescriptor descriptor : pRepository
+                    .getArtifacts()) {
+                descriptors.computeIfAbsent(descriptor.getKey(),
+                        k -> new ArrayList<>(1)).add(descriptor);
+            }
+        }
+
+        /**
+         * Returns all descriptors found for an artifact, ordered by
+         * precedence.
+         *
+         * @param pClassifier
+         *                        The artifact classifier.
+         * @param pId
+         *                        The artifact id.
+         * @param pVersion
+         *                        The artifact version.
+         * @return a list of descriptors, possibly empty.
+         */
+        public List<P2ArtifactDescriptor> candidates(String pClassifier,
+                String pId, String pVersion) {
+            List<P2ArtifactDescriptor> found = descriptors.get(
+                    P2ArtifactDescriptor.toKey(pClassifier, pId, pVersion));
+            return found != null ? Collections.unmodifiableList(found)
+                    : Collections.emptyList();
+        }
+
+        public List<P2ArtifactRepository> getRepositories() {
+            return Collections.unmodifiableList(repositories);
+        }
+
+        public boolean isEmpty() {
+            return descriptors.isEmpty();
+        }
+
+        /**
+         * Returns the descriptor with the highest precedence for an artifact.
+         *
+         * @param pClassifier
+         *                        The artifact classifier.
+         * @param pId
+         *                        The artifact id.
+         * @param pVersion
+         *                        The artifact version.
+         * @return the descriptor found or <code>null</code>.
+         */
+        public P2ArtifactDescriptor lookup(String pClassifier, String pId,
+                String pVersion) {
+            List<P2ArtifactDescriptor> found = candidates(pClassifier, pId,
+                    pVersion);
+            return found.isEmpty() ? null : found.get(0);
+        }
+
+        public int size() {
+            return descriptors.size();
+        }
+    }
+
+    private static final Logger LOGGER = LoggerFactory
+            .getLogger(P2RepositoryResolver.class);
+
+    private final Executor executor;
+
+    /**
+     * The repositories read, each one completed without waiting for any other
+     * repository, so a cycle between composites can not block the reading.
+     */
+    private final ConcurrentMap<URI, CompletableFuture<P2ArtifactRepository>> read = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a new resolver.
+     *
+     * @param pExecutor
+     *                      The executor used to read the repositories.
+     */
+    public P2RepositoryResolver(Executor pExecutor) {
+        executor = pExecutor;
+    }
+
+    private static URI canonical(URI pLocation) {
+        return P2ArtifactRepository.normalize(pLocation.normalize());
+    }
+
+    /**
+     * Collects, in a depth first walk, the simple repositories reachable from
+     * a location whose whole graph was already read.
+     */
+    private void collect(URI pLocation, Set<URI> pAncestors,
+            Set<URI> pVisited, List<P2ArtifactRepository> pCollected) {
+        if (!pVisited.add(pLocation)) {
+            return;
+        }
+        P2ArtifactRepository repository = read.get(pLocation).join();
+        if (!repository.isComposite()) {
+            pCollected.add(repository);
+            return;
+        }
+        pAncestors.add(pLocation);
+        for (URI child : repository.getChildren()) {
+            URI childLocation = canonical(child);
+            if (pAncestors.contains(childLocation)) {
+                LOGGER.warn("Ignoring cyclic reference to {} from {}",
+                        childLocation, pLocation);
+                continue;
+            }
+            collect(childLocation, pAncestors, pVisited, pCollected);
+        }
+        pAncestors.remove(pLocation);
+    }
+
+    private CompletableFuture<P2ArtifactRepository> read(URI pLocation) {
+        return read.computeIfAbsent(pLocation, location -> CompletableFuture
+                .supplyAsync(() -> {
+                    try {
+                        return P2ArtifactRepository.read(location);
+                    } catch (IOException e) {
+                        throw new CompletionException(e);
+                    }
+                }, executor).exceptionally(e -> {
+                    LOGGER.warn("Ignoring p2 artifact repository {}: {}",
+                            location,
+                            e.getCause() != null ? e.getCause().getMessage()
+                                    : e.getMessage());
+                    return P2ArtifactRepository.empty(location);
+                }));
+    }
+
+    /**
+     * Reads a repository and, when it is a composite, its children. Each
+     * location is visited once, and the graph is considered read when no
+     * visit is pending anymore.
+     */
+    private void visit(URI pLocation, Set<URI> pVisited,
+            AtomicInteger pPending, CompletableFuture<Void> pGraphRead) {
+        if (!pVisited.add(pLocation)) {
+            return;
+        }
+        pPending.incrementAndGet();
+        read(pLocation).whenComplete((repository, e) -> {
+            try {
+                if (repository != null && repository.isComposite()) {
+                    for (URI child : repository.getChildren()) {
+                        visit(canonical(child), pVisited,
+                                pPending, pGraphRead);
+                    }
+                }
+            } finally {
+                if (pPending.decrementAndGet() == 0) {
+                    pGraphRead.complete(null);
+                }
+            }
+        });
+    }
+
+    /**
+     * Starts the resolution of the informed repositories.
+     * <p>
+     * The returned future can be joined later, allowing the caller to do other
+     * work while the repositories are being read.
+     *
+     * @param pLocations
+     *                       The repositories locations, in precedence order.
+     * @return a future for the merged index.
+     */
+    public CompletableFuture<Index> resolveAsync(List<URI> pLocations) {
+        List<URI> roots = new ArrayList<>();
+        for (URI location : pLocations) {
+            roots.add(canonical(location));
+        }
+        // the graph is read first, and then merged in precedence order
+        Set<URI> visited = ConcurrentHashMap.newKeySet();
+        AtomicInteger pending = new AtomicInteger(1);
+        CompletableFuture<Void> graphRead = new CompletableFuture<>();
+        for (URI root : roots) {
+            visit(root, visited, pending, graphRead);
+        }
+        if (pending.decrementAndGet() == 0) {
+            graphRead.complete(null);
+        }
+        return graphRead.thenApply(v -> {
+            Index index = new Index();
+            List<P2ArtifactRepository> collected = new ArrayList<>();
+            Set<URI> collectedLocations = new HashSet<>();
+            for (URI root : roots) {
+                collect(root, new HashSet<>(), collectedLocations, collected);
+            }
+            for (P2ArtifactRepository repository : collected) {
+                index.add(repository);
+            }
+            return index;
+        });
+    }
+
+}
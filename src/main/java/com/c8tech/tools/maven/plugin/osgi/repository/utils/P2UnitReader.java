@@ -0,0 +1,174 @@
+/**
+ * ============================================================================
+ *  Copyright ©  2015-2019,    Cristiano V. Gavião
+ *
+ *  All rights reserved.
+ *  This program and the accompanying materials are made available under
+ *  the terms of the Eclipse Public License v1.0 which accompanies this
+ *  distribution and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * ============================================================================
+ */
+package com.c8tech.tools.maven.plugin.osgi.repository.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.jar.JarEntry;
+import java.util.jar.JarInputStream;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Streams the bundle installable units declared in the metadata of a p2
+ * repository, either a repository directory or a zipped one, without loading
+ * the whole <i>content.xml</i> file in memory.
+ *
+ * @author Cristiano Gavião
+ *
+ */
+public final class P2UnitReader {
+
+    /**
+     * Receives the units read.
+     */
+    @FunctionalInterface
+    public interface UnitHandler {
+
+        /**
+         * Handles a bundle unit.
+         *
+         * @param pId
+         *                     The unit id.
+         * @param pVersion
+         *                     The unit version.
+         * @throws IOException
+         *                         When the unit could not be handled.
+         */
+        void unit(String pId, String pVersion) throws IOException;
+    }
+
+    private static final String CONTENT_JAR = "content.jar";
+
+    private static final String CONTENT_XML = "content.xml";
+
+    private P2UnitReader() {
+    }
+
+    /**
+     * Reads the bundle units of a p2 repository, preferring its
+     * <i>content.xml</i> file and falling back to <i>content.jar</i>.
+     *
+     * @param pRepository
+     *                        The repository directory or zip archive.
+     * @param pHandler
+     *                        The handler receiving the units.
+     * @return the number of units read.
+     * @throws IOException
+     *                         When the repository has no metadata file or it
+     *                         could not be read.
+     */
+    public static int read(Path pRepository, UnitHandler pHandler)
+            throws IOException {
+        if (Files.isDirectory(pRepository)) {
+            return readRoot(pRepository, pHandler);
+        }
+        URI uri = URI.create("jar:" + pRepository.toUri());
+        try (FileSystem zipFileSystem = FileSystems.newFileSystem(uri,
+                Collections.<String, Object> emptyMap())) {
+            return readRoot(zipFileSystem.getPath("/"), pHandler);
+        }
+    }
+
+    private static int readRoot(Path pRoot, UnitHandler pHandler)
+            throws IOException {
+        Path contentXml = pRoot.resolve(CONTENT_XML);
+        if (Files.isRegularFile(contentXml)) {
+            try (InputStream in = Files.newInputStream(contentXml)) {
+                return read(in, pHandler);
+            }
+        }
+        Path contentJar = pRoot.resolve(CONTENT_JAR);
+        if (Files.isRegularFile(contentJar)) {
+            try (JarInputStream in = new JarInputStream(
+                    Files.newInputStream(contentJar))) {
+                JarEntry entry;
+                while ((entry = in.getNextJarEntry()) != null) {
+                    if (CONTENT_XML.equals(entry.getName())) {
+                        return read(in, pHandler);
+                    }
+                }
+            }
+        }
+        throw new IOException("No p2 metadata file was found in " + pRoot);
+    }
+
+    /**
+     * Reads the bundle units of a <i>content.xml</i> stream. The units that
+     * do not hold a bundle artifact, like categories and configuration
+     * units, are skipped.
+     *
+     * @param pContentXml
+     *                        The stream, left open.
+     * @param pHandler
+     *                        The handler receiving the units.
+     * @return the number of units read.
+     * @throws IOException
+     *                         When the stream could not be parsed.
+     */
+    public static int read(InputStream pContentXml, UnitHandler pHandler)
+            throws IOException {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES,
+                Boolean.FALSE);
+        int count = 0;
+        try {
+            XMLStreamReader reader = factory
+                    .createXMLStreamReader(pContentXml);
+            try {
+                String unitId = null;
+                String unitVersion = null;
+                boolean bundle = false;
+                while (reader.hasNext()) {
+                    int event = reader.next();
+                    if (event == XMLStreamConstants.START_ELEMENT) {
+                        String name = reader.getLocalName();
+                        if ("unit".equals(name)) {
+                            unitId = reader.getAttributeValue(null, "id");
+                            unitVersion = reader.getAttributeValue(null,
+                                    "version");
+                            bundle = false;
+                        } else if ("artifact".equals(name) && unitId != null
+                                && "osgi.bundle".equals(reader
+                                        .getAttributeValue(null, "classifier"))) {
+                            bundle = true;
+                        }
+                    } else if (event == XMLStreamConstants.END_ELEMENT
+                            && "unit".equals(reader.getLocalName())) {
+                        if (bundle && unitVersion != null) {
+                            pHandler.unit(unitId, unitVersion);
+                            count++;
+                        }
+                        unitId = null;
+                        unitVersion = null;
+                        bundle = false;
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException("Failure while reading the p2 metadata.", e);
+        }
+        return count;
+    }
+}
@@ -0,0 +1,318 @@
+/**
+ * ============================================================================
+ *  Copyright ©  2015-2019,    Cristiano V. Gavião
+ *
+ *  All rights reserved.
+ *  This program and the accompanying materials are made available under
+ *  the terms of the Eclipse Public License v1.0 which accompanies this
+ *  distribution and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * ============================================================================
+ */
+package com.c8tech.tools.maven.plugin.osgi.repository.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.regex.Pattern;
+
+/**
+ * Finds the files of a directory tree matching ant like include and exclude
+ * patterns, walking the subdirectories concurrently.
+ * <p>
+ * The patterns are compiled once, and a directory is never entered when it
+ * matches an exclude pattern, like <code>**&#47;.cache</code>, or when it can
+ * not hold any included file. Links to directories are followed, unless they
+ * point to the directory holding them or to one of its parents.
+ *
+ * @author Cristiano Gavião
+ *
+ */
+public final class ParallelFileWalker {
+
+    /**
+     * A set of compiled ant like patterns, matched against paths relative to
+     * the walked directory and using '/' as separator.
+     */
+    public static final class GlobMatcher {
+
+        private final List<Pattern> patterns = new ArrayList<>();
+
+        private final List<Pattern[]> segmentPatterns = new ArrayList<>();
+
+        private GlobMatcher(Collection<String> pPatterns) {
+            for (String pattern : pPatterns) {
+                String normalized = normalize(pattern);
+                if (normalized.isEmpty()) {
+                    continue;
+                }
+                patterns.add(Pattern.compile(toRegex(normalized)));
+                String[] segments = normalized.split("/");
+                Pattern[] compiledSegments = new Pattern[segments.length];
+                for (int i = 0; i < segments.length; i++) {
+                    compiledSegments[i] = "**".equals(segments[i]) ? null
+                            : Pattern.compile(toRegex(segments[i]));
+                }
+                segmentPatterns.add(compiledSegments);
+            }
+        }
+
+        /**
+         * Compiles a set of patterns.
+         *
+         * @param pPatterns
+         *                      The patterns, like <code>**&#47;*.jar</code>.
+         * @return the compiled patterns.
+         */
+        public static GlobMatcher compile(Collection<String> pPatterns) {
+            return new GlobMatcher(pPatterns);
+        }
+
+        private static String normalize(String pPattern) {
+            String normalized = pPattern.trim().replace('\\', '/');
+            while (normalized.startsWith("/")) {
+                normalized = normalized.substring(1);
+            }
+            if (normalized.endsWith("/")) {
+                normalized = normalized + "**";
+            }
+            return normalized;
+        }
+
+        private static String toRegex(String pPattern) {
+            StringBuilder regex = new StringBuilder();
+            int i = 0;
+            while (i < pPattern.length()) {
+                if (pPattern.startsWith("**/", i)) {
+                    regex.append("(?:.*/)?");
+                    i += 3;
+                } else if (pPattern.startsWith("/**", i)
+                        && i + 3 == pPattern.length()) {
+                    regex.append("(?:/.*)?");
+                    i += 3;
+                } else if (pPattern.startsWith("**", i)) {
+                    regex.append(".*");
+                    i += 2;
+                } else {
+                    char c = pPattern.charAt(i++);
+                    if (c == '*') {
+                        regex.append("[^/]*");
+                    } else if (c == '?') {
+                        regex.append("[^/]");
+                    } else {
+                        regex.append(Pattern.quote(String.valueOf(c)));
+                    }
+                }
+            }
+            return regex.toString();
+        }
+
+        /**
+         * Whether a directory may hold paths matched by any of the patterns.
+         *
+         * @param pDirectory
+         *                       The relative path of the directory.
+         * @return false when no path below the directory can match.
+         */
+        public boolean couldHoldMatches(String pDirectory) {
+            String[] directorySegments = pDirectory.split("/");
+            for (Pattern[] segments : segmentPatterns) {
+                if (couldHoldMatches(segments, directorySegments)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private static boolean couldHoldMatches(Pattern[] pPatternSegments,
+                String[] pDirectorySegments) {
+            for (int i = 0; i < pDirectorySegments.length; i++) {
+                if (i >= pPatternSegments.length - 1) {
+                    return pPatternSegments[pPatternSegments.length
+                            - 1] == null;
+                }
+                if (pPatternSegments[i] == null) {
+                    return true;
+                }
+                if (!pPatternSegments[i].matcher(pDirectorySegments[i])
+                        .matches()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Whether no pattern was compiled.
+         *
+         * @return true when the matcher has no pattern.
+         */
+        public boolean isEmpty() {
+            return patterns.isEmpty();
+        }
+
+        /**
+         * Whether a path matches any of the patterns.
+         *
+         * @param pPath
+         *                  The relative path.
+         * @return true when a pattern matches.
+         */
+        public boolean matches(String pPath) {
+            for (Pattern pattern : patterns) {
+                if (pattern.matcher(pPath).matches()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private final class DirectoryWalk extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final transient Path directory;
+
+        private final transient DirectoryWalk parent;
+
+        private final transient Path realPath;
+
+        private final String relativePath;
+
+        private final transient Queue<File> found;
+
+        private final transient GlobMatcher includes;
+
+        private final transient GlobMatcher excludes;
+
+        DirectoryWalk(DirectoryWalk pParent, Path pDirectory, Path pRealPath,
+                String pRelativePath, GlobMatcher pIncludes,
+                GlobMatcher pExcludes, Queue<File> pFound) {
+            parent = pParent;
+            directory = pDirectory;
+            realPath = pRealPath;
+            relativePath = pRelativePath;
+            includes = pIncludes;
+            excludes = pExcludes;
+            found = pFound;
+        }
+
+        @Override
+        protected void compute() {
+            List<DirectoryWalk> subdirectories = new ArrayList<>();
+            try (DirectoryStream<Path> entries = Files
+                    .newDirectoryStream(directory)) {
+                for (Path entry : entries) {
+                    String entryPath = relativePath.isEmpty()
+                            ? entry.getFileName().toString()
+                            : relativePath + '/' + entry.getFileName();
+                    BasicFileAttributes attributes = Files.readAttributes(
+                            entry, BasicFileAttributes.class,
+                            LinkOption.NOFOLLOW_LINKS);
+                    boolean linkedDirectory = attributes.isSymbolicLink()
+                            && Files.isDirectory(entry);
+                    if (attributes.isDirectory() || linkedDirectory) {
+                        if (excludes.matches(entryPath)
+                                || !includes.couldHoldMatches(entryPath)) {
+                            continue;
+                        }
+                        Path entryRealPath = linkedDirectory
+                                ? entry.toRealPath()
+                                : realPath.resolve(entry.getFileName());
+                        if (isCycle(entryRealPath)) {
+                            continue;
+                        }
+                        subdirectories.add(new DirectoryWalk(this, entry,
+                                entryRealPath, entryPath, includes, excludes,
+                                found));
+                    } else if ((attributes.isRegularFile()
+                            || attributes.isSymbolicLink()
+                                    && Files.isRegularFile(entry))
+                            && includes.matches(entryPath)
+                            && !excludes.matches(entryPath)) {
+                        found.add(entry.toFile());
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            invokeAll(subdirectories);
+        }
+
+        private boolean isCycle(Path pRealPath) {
+            for (DirectoryWalk walk = this; walk != null; walk = walk.parent) {
+                if (walk.realPath.equals(pRealPath)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static final List<String> INCLUDE_ALL = Collections
+            .singletonList("**");
+
+    private final ForkJoinPool pool;
+
+    /**
+     * Creates a new walker.
+     *
+     * @param pPool
+     *                  The pool where the directories are walked.
+     */
+    public ParallelFileWalker(ForkJoinPool pPool) {
+        pool = pPool;
+    }
+
+    /**
+     * Finds the files of a directory tree.
+     *
+     * @param pDirectory
+     *                       The directory to walk.
+     * @param pIncludes
+     *                       The include patterns. When null or empty every
+     *                       file is included.
+     * @param pExcludes
+     *                       The exclude patterns, may be null.
+     * @return the files found, sorted by their paths.
+     * @throws IOException
+     *                         When a directory could not be read.
+     */
+    public Set<File> findFiles(Path pDirectory, Collection<String> pIncludes,
+            Collection<String> pExcludes) throws IOException {
+        Set<File> files = new TreeSet<>();
+        if (!Files.isDirectory(pDirectory)) {
+            return files;
+        }
+        GlobMatcher includes = GlobMatcher.compile(
+                pIncludes == null || pIncludes.isEmpty() ? INCLUDE_ALL
+                        : pIncludes);
+        GlobMatcher excludes = GlobMatcher.compile(pExcludes == null
+                ? Collections.<String> emptyList() : pExcludes);
+        Queue<File> found = new ConcurrentLinkedQueue<>();
+        try {
+            pool.invoke(new DirectoryWalk(null, pDirectory,
+                    pDirectory.toRealPath(), "", includes, excludes, found));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        files.addAll(found);
+        return files;
+    }
+}
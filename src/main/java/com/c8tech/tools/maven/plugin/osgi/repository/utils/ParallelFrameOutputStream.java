@@ -0,0 +1,200 @@
+/**
+ * ============================================================================
+ *  Copyright ©  2015-2019,    Cristiano V. Gavião
+ *
+ *  All rights reserved.
+ *  This program and the accompanying materials are made available under
+ *  the terms of the Eclipse Public License v1.0 which accompanies this
+ *  distribution and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * ============================================================================
+ */
+package com.c8tech.tools.maven.plugin.osgi.repository.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+import org.tukaani.xz.LZMA2Options;
+import org.tukaani.xz.XZOutputStream;
+
+import io.airlift.compress.zstd.ZstdCompressor;
+
+/**
+ * An output stream compressing its content concurrently.
+ * <p>
+ * The content is split into chunks that are compressed by the executor as
+ * independent frames, xz streams or zstd frames, and written in order. The
+ * concatenation of frames is a valid file for both formats, and the output
+ * does not depend on the number of threads.
+ *
+ * @author Cristiano Gavião
+ *
+ */
+public final class ParallelFrameOutputStream extends OutputStream {
+
+    /**
+     * The supported compression formats.
+     */
+    public enum Codec {
+
+        XZ("xz") {
+
+            @Override
+            byte[] compress(byte[] pData, int pLength) throws IOException {
+                ByteArrayOutputStream out = new ByteArrayOutputStream(
+                        pLength / 4);
+                try (XZOutputStream xz = new XZOutputStream(out,
+                        new LZMA2Options())) {
+                    xz.write(pData, 0, pLength);
+                }
+                return out.toByteArray();
+            }
+        },
+
+        ZSTD("zst") {
+
+            @Override
+            byte[] compress(byte[] pData, int pLength) {
+                ZstdCompressor compressor = new ZstdCompressor();
+                byte[] out = new byte[compressor.maxCompressedLength(pLength)];
+                int written = compressor.compress(pData, 0, pLength, out, 0,
+                        out.length);
+                return Arrays.copyOf(out, written);
+            }
+        };
+
+        private final String extension;
+
+        Codec(String pExtension) {
+            extension = pExtension;
+        }
+
+        abstract byte[] compress(byte[] pData, int pLength) throws IOException;
+
+        /**
+         * Returns the file extension of the format.
+         *
+         * @return the extension, without the leading dot.
+         */
+        public String getExtension() {
+            return extension;
+        }
+    }
+
+    private static final int CHUNK_SIZE = 8 * 1024 * 1024;
+
+    private byte[] buffer = new byte[CHUNK_SIZE];
+
+    private int buffered;
+
+    private boolean closed;
+
+    private final Codec codec;
+
+    private final Executor executor;
+
+    private final int maxPendingChunks;
+
+    private final OutputStream out;
+
+    private final Deque<CompletableFuture<byte[]>> pendingChunks = new ArrayDeque<>();
+
+    /**
+     * Creates a new stream.
+     *
+     * @param pOut
+     *                              The stream receiving the compressed frames.
+     * @param pCodec
+     *                              The compression format.
+     * @param pExecutor
+     *                              The executor where the chunks are
+     *                              compressed.
+     * @param pMaxPendingChunks
+     *                              The maximum number of chunks kept in memory
+     *                              while being compressed.
+     */
+    public ParallelFrameOutputStream(OutputStream pOut, Codec pCodec,
+            Executor pExecutor, int pMaxPendingChunks) {
+        out = pOut;
+        codec = pCodec;
+        executor = pExecutor;
+        maxPendingChunks = Math.max(1, pMaxPendingChunks);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            submitChunk();
+            while (!pendingChunks.isEmpty()) {
+                writeOldestChunk();
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    private void submitChunk() throws IOException {
+        if (buffered == 0) {
+            return;
+        }
+        byte[] chunk = buffer;
+        int length = buffered;
+        pendingChunks.add(CompletableFuture.supplyAsync(() -> {
+            try {
+                return codec.compress(chunk, length);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, executor));
+        buffer = new byte[CHUNK_SIZE];
+        buffered = 0;
+        while (pendingChunks.size() >= maxPendingChunks) {
+            writeOldestChunk();
+        }
+    }
+
+    @Override
+    public void write(byte[] pBytes, int pOffset, int pLength)
+            throws IOException {
+        int offset = pOffset;
+        int remaining = pLength;
+        while (remaining > 0) {
+            int length = Math.min(remaining, CHUNK_SIZE - buffered);
+            System.arraycopy(pBytes, offset, buffer, buffered, length);
+            buffered += length;
+            offset += length;
+            remaining -= length;
+            if (buffered == CHUNK_SIZE) {
+                submitChunk();
+            }
+        }
+    }
+
+    @Override
+    public void write(int pByte) throws IOException {
+        write(new byte[] { (byte) pByte }, 0, 1);
+    }
+
+    private void writeOldestChunk() throws IOException {
+        try {
+            out.write(pendingChunks.removeFirst().join());
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+}
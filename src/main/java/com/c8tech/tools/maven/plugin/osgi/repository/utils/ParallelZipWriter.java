@@ -0,0 +1,454 @@
+/**
+ * ============================================================================
+ *  Copyright ©  2015-2019,    Cristiano V. Gavião
+ *
+ *  All rights reserved.
+ *  This program and the accompanying materials are made available under
+ *  the terms of the Eclipse Public License v1.0 which accompanies this
+ *  distribution and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * ============================================================================
+ */
+package com.c8tech.tools.maven.plugin.osgi.repository.utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.ZipEntry;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+
+/**
+ * Writes a zip archive compressing its entries concurrently.
+ * <p>
+ * Each added file is compressed by the executor into a buffer, kept in memory
+ * for small files and in a temporary file otherwise. The compressed buffers
+ * are copied into the archive as raw entries, in the order the files were
+ * added, so the archive content does not depend on the order the
+ * compressions finish. At most a given number of entries are pending at any
+ * time: adding a file first writes the oldest entries, waiting for their
+ * compression, when that number is reached.
+ * <p>
+ * Depending on the {@link EntryPolicy}, files whose content is already
+ * compressed, like bundles and other archives, are stored as they are. Only
+ * their CRC is calculated concurrently, and their bytes are copied straight
+ * from the source file when the archive is written.
+ * <p>
+ * Entries of a previously written archive may also be added unchanged, their
+ * compressed bytes being copied without being inflated.
+ * <p>
+ * When a fixed entry time is set the archive is reproducible: every entry gets
+ * that time, whatever the default time zone, and normalized permissions.
+ *
+ * @author Cristiano Gavião
+ *
+ */
+public final class ParallelZipWriter implements Closeable {
+
+    /**
+     * Tells how the entries are compressed.
+     */
+    public enum EntryPolicy {
+
+        /**
+         * All entries are deflated.
+         */
+        DEFLATE_ALL,
+
+        /**
+         * Entries whose names have the extension of an already compressed
+         * format are stored, the others are deflated.
+         */
+        STORE_COMPRESSED;
+
+        private static final String[] COMPRESSED_EXTENSIONS = { ".jar",
+                ".esa", ".war", ".zip", ".gz", ".tgz", ".xz", ".zst", ".bz2",
+                ".7z", ".png", ".jpg", ".jpeg", ".gif" };
+
+        /**
+         * Returns the compression method for an entry.
+         *
+         * @param pEntryName
+         *                       The entry name.
+         * @return {@link ZipEntry#STORED} or {@link ZipEntry#DEFLATED}.
+         */
+        public int methodFor(String pEntryName) {
+            if (this == STORE_COMPRESSED) {
+                String name = pEntryName.toLowerCase(Locale.ENGLISH);
+                for (String extension : COMPRESSED_EXTENSIONS) {
+                    if (name.endsWith(extension)) {
+                        return ZipEntry.STORED;
+                    }
+                }
+            }
+            return ZipEntry.DEFLATED;
+        }
+    }
+
+    private static final class PreparedEntry {
+
+        private byte[] bytes;
+
+        private final ZipArchiveEntry entry;
+
+        private ZipArchiveEntry previousEntry;
+
+        private ZipFile previousZipFile;
+
+        private Path sourceFile;
+
+        private Path tempFile;
+
+        PreparedEntry(ZipArchiveEntry pEntry) {
+            entry = pEntry;
+        }
+
+        InputStream openRawStream() throws IOException {
+            if (previousZipFile != null) {
+                return previousZipFile.getRawInputStream(previousEntry);
+            }
+            if (sourceFile != null) {
+                return Files.newInputStream(sourceFile);
+            }
+            return tempFile != null ? Files.newInputStream(tempFile)
+                    : new ByteArrayInputStream(bytes);
+        }
+    }
+
+    /**
+     * The default maximum number of pending entries.
+     */
+    public static final int DEFAULT_MAX_PENDING_ENTRIES = 64;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final int DIRECTORY_MODE = 040755;
+
+    private static final int FILE_MODE = 0100644;
+
+    private static final long IN_MEMORY_THRESHOLD = 1024L * 1024L;
+
+    private volatile boolean aborted;
+
+    private final EntryPolicy entryPolicy;
+
+    private final Executor executor;
+
+    private boolean finished;
+
+    private long fixedEntryTime = -1;
+
+    private final int maxPendingEntries;
+
+    private final ZipArchiveOutputStream out;
+
+    private final Deque<CompletableFuture<PreparedEntry>> pendingEntries = new ArrayDeque<>();
+
+    private final Path tempDir;
+
+    private final ConcurrentLinkedQueue<Path> tempFiles = new ConcurrentLinkedQueue<>();
+
+    private final Set<String> writtenDirectories = new HashSet<>();
+
+    /**
+     * Creates a new writer.
+     *
+     * @param pArchive
+     *                      The archive file to write.
+     * @param pExecutor
+     *                      The executor where the entries are compressed.
+     * @param pTempDir
+     *                      The directory where the compressed forms of the
+     *                      large files are buffered.
+     * @throws IOException
+     *                         When the archive could not be created.
+     */
+    public ParallelZipWriter(File pArchive, Executor pExecutor, Path pTempDir)
+            throws IOException {
+        this(pArchive, pExecutor, pTempDir, EntryPolicy.DEFLATE_ALL,
+                DEFAULT_MAX_PENDING_ENTRIES);
+    }
+
+    /**
+     * Creates a new writer.
+     *
+     * @param pArchive
+     *                              The archive file to write.
+     * @param pExecutor
+     *                              The executor where the entries are
+     *                              compressed.
+     * @param pTempDir
+     *                              The directory where the compressed forms of
+     *                              the large files are buffered.
+     * @param pEntryPolicy
+     *                              The policy choosing the compression method
+     *                              of each entry.
+     * @param pMaxPendingEntries
+     *                              The maximum number of entries being
+     *                              compressed or waiting to be written.
+     * @throws IOException
+     *                         When the archive could not be created.
+     */
+    public ParallelZipWriter(File pArchive, Executor pExecutor, Path pTempDir,
+            EntryPolicy pEntryPolicy, int pMaxPendingEntries)
+            throws IOException {
+        executor = pExecutor;
+        tempDir = pTempDir;
+        entryPolicy = pEntryPolicy;
+        maxPendingEntries = Math.max(1, pMaxPendingEntries);
+        out = new ZipArchiveOutputStream(pArchive);
+    }
+
+    /**
+     * Makes the archive reproducible, giving a fixed time and normalized
+     * permissions to every entry.
+     *
+     * @param pTime
+     *                  The entry time, in milliseconds since the epoch.
+     */
+    public void setFixedEntryTime(long pTime) {
+        // zip entries keep the local time, so the offset is compensated in
+        // order to get the same bytes in any time zone
+        fixedEntryTime = pTime - TimeZone.getDefault().getOffset(pTime);
+    }
+
+    private void normalize(ZipArchiveEntry pEntry) {
+        if (fixedEntryTime != -1) {
+            pEntry.setTime(fixedEntryTime);
+            pEntry.setUnixMode(
+                    pEntry.isDirectory() ? DIRECTORY_MODE : FILE_MODE);
+        }
+    }
+
+    private void addParentDirectories(String pEntryName, long pTime)
+            throws IOException {
+        int index = pEntryName.indexOf('/');
+        while (index > 0) {
+            String directory = pEntryName.substring(0, index + 1);
+            if (writtenDirectories.add(directory)) {
+                ZipArchiveEntry entry = new ZipArchiveEntry(directory);
+                entry.setTime(pTime);
+                normalize(entry);
+                out.putArchiveEntry(entry);
+                out.closeArchiveEntry();
+            }
+            index = pEntryName.indexOf('/', index + 1);
+        }
+    }
+
+    /**
+     * Schedules the compression of a file.
+     *
+     * @param pFile
+     *                       The file to add.
+     * @param pEntryName
+     *                       The entry name, using '/' as separator.
+     * @throws IOException
+     *                         When a pending entry could not be compressed or
+     *                         written.
+     */
+    public void addFile(Path pFile, String pEntryName) throws IOException {
+        addPendingEntry(CompletableFuture.supplyAsync(() -> {
+            if (aborted) {
+                return null;
+            }
+            try {
+                return entryPolicy.methodFor(pEntryName) == ZipEntry.STORED
+                        ? store(pFile, pEntryName)
+                        : deflate(pFile, pEntryName);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, executor));
+    }
+
+    /**
+     * Adds an entry of a previous archive, copying its compressed bytes.
+     *
+     * @param pPreviousZipFile
+     *                             The previous archive. It must be kept open
+     *                             until the new archive is written.
+     * @param pEntry
+     *                             The entry to copy.
+     * @throws IOException
+     *                         When a pending entry could not be compressed or
+     *                         written.
+     */
+    public void addRawEntry(ZipFile pPreviousZipFile, ZipArchiveEntry pEntry)
+            throws IOException {
+        ZipArchiveEntry entry = new ZipArchiveEntry(pEntry.getName());
+        entry.setTime(pEntry.getTime());
+        entry.setMethod(pEntry.getMethod());
+        entry.setCrc(pEntry.getCrc());
+        entry.setSize(pEntry.getSize());
+        entry.setCompressedSize(pEntry.getCompressedSize());
+        PreparedEntry prepared = new PreparedEntry(entry);
+        prepared.previousZipFile = pPreviousZipFile;
+        prepared.previousEntry = pEntry;
+        addPendingEntry(CompletableFuture.completedFuture(prepared));
+    }
+
+    private void addPendingEntry(CompletableFuture<PreparedEntry> pEntry)
+            throws IOException {
+        pendingEntries.add(pEntry);
+        while (pendingEntries.size() >= maxPendingEntries) {
+            writeOldestEntry();
+        }
+    }
+
+    private static PreparedEntry store(Path pFile, String pEntryName)
+            throws IOException {
+        ZipArchiveEntry entry = new ZipArchiveEntry(pEntryName);
+        entry.setTime(Files.getLastModifiedTime(pFile).toMillis());
+        entry.setMethod(ZipEntry.STORED);
+        CRC32 crc = new CRC32();
+        long size = 0;
+        try (InputStream in = Files.newInputStream(pFile)) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                crc.update(buffer, 0, read);
+                size += read;
+            }
+        }
+        entry.setSize(size);
+        entry.setCompressedSize(size);
+        entry.setCrc(crc.getValue());
+        PreparedEntry prepared = new PreparedEntry(entry);
+        prepared.sourceFile = pFile;
+        return prepared;
+    }
+
+    private PreparedEntry deflate(Path pFile, String pEntryName)
+            throws IOException {
+        ZipArchiveEntry entry = new ZipArchiveEntry(pEntryName);
+        entry.setTime(Files.getLastModifiedTime(pFile).toMillis());
+        entry.setMethod(ZipEntry.DEFLATED);
+        PreparedEntry prepared = new PreparedEntry(entry);
+
+        ByteArrayOutputStream memory = null;
+        OutputStream target;
+        if (Files.size(pFile) > IN_MEMORY_THRESHOLD) {
+            prepared.tempFile = Files.createTempFile(tempDir, "entry", ".tmp");
+            tempFiles.add(prepared.tempFile);
+            target = Files.newOutputStream(prepared.tempFile);
+        } else {
+            memory = new ByteArrayOutputStream();
+            target = memory;
+        }
+
+        CRC32 crc = new CRC32();
+        long size = 0;
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        try (InputStream in = Files.newInputStream(pFile);
+                DeflaterOutputStream out = new DeflaterOutputStream(target,
+                        deflater, BUFFER_SIZE)) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                crc.update(buffer, 0, read);
+                out.write(buffer, 0, read);
+                size += read;
+            }
+            out.finish();
+            entry.setCompressedSize(deflater.getBytesWritten());
+        } finally {
+            deflater.end();
+        }
+        entry.setSize(size);
+        entry.setCrc(crc.getValue());
+        if (memory != null) {
+            prepared.bytes = memory.toByteArray();
+        }
+        return prepared;
+    }
+
+    private void writeOldestEntry() throws IOException {
+        PreparedEntry prepared;
+        try {
+            prepared = pendingEntries.removeFirst().join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+        normalize(prepared.entry);
+        addParentDirectories(prepared.entry.getName(),
+                prepared.entry.getTime());
+        try (InputStream in = prepared.openRawStream()) {
+            out.addRawArchiveEntry(prepared.entry, in);
+        }
+        if (prepared.tempFile != null) {
+            Files.deleteIfExists(prepared.tempFile);
+        }
+        prepared.bytes = null;
+    }
+
+    /**
+     * Writes the pending entries, waiting for their compression, and
+     * completes the archive.
+     *
+     * @throws IOException
+     *                         When an entry could not be compressed or the
+     *                         archive could not be written.
+     */
+    public void finish() throws IOException {
+        while (!pendingEntries.isEmpty()) {
+            writeOldestEntry();
+        }
+        finished = true;
+        out.close();
+    }
+
+    /**
+     * Closes the archive. When it was not finished the pending compressions
+     * are abandoned, the ones already running are waited for and the
+     * temporary buffers are deleted, leaving an incomplete archive.
+     */
+    @Override
+    public void close() throws IOException {
+        if (finished) {
+            return;
+        }
+        aborted = true;
+        try {
+            for (CompletableFuture<PreparedEntry> pendingEntry : pendingEntries) {
+                try {
+                    pendingEntry.join();
+                } catch (CompletionException e) { // NOSONAR
+                    // the failure was already reported or is irrelevant
+                }
+            }
+            pendingEntries.clear();
+            Path tempFile;
+            while ((tempFile = tempFiles.poll()) != null) {
+                Files.deleteIfExists(tempFile);
+            }
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/**
+ * ============================================================================
+ *  Copyright ©  2015-2019,    Cristiano V. Gavião
+ *
+ *  All rights reserved.
+ *  This program and the accompanying materials are made available under
+ *  the terms of the Eclipse Public License v1.0 which accompanies this
+ *  distribution and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * ============================================================================
+ */
+package com.c8tech.tools.maven.plugin.osgi.repository.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+
+import javax.inject.Named;
+
+import org.apache.maven.SessionScoped;
+
+/**
+ * Keeps the properties files parsed during the maven session, so the same
+ * properties artifact used by several modules of a reactor is parsed only
+ * once.
+ * <p>
+ * The entries are keyed by the artifact coordinates and the absolute path,
+ * size and modification time of the file, so a cached file is not read again,
+ * a changed file is parsed again and the classified files of an artifact are
+ * never mixed up. A new cache is created for each maven session.
+ *
+ * @author Cristiano Gavião
+ *
+ */
+@Named
+@SessionScoped
+public class PropertiesArtifactCache {
+
+    private final ConcurrentMap<String, Properties> cache = new ConcurrentHashMap<>();
+
+    private static Properties parse(Path pFile) throws IOException {
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(pFile)) {
+            properties.load(in);
+        }
+        return properties;
+    }
+
+    /**
+     * Returns the properties of a file, parsing it when it was not parsed yet
+     * in this session.
+     *
+     * @param pCoordinates
+     *                         The coordinates of the artifact providing the
+     *                         file.
+     * @param pFile
+     *                         The properties file.
+     * @return a copy of the properties, that may be freely changed.
+     * @throws IOException
+     *                         When the file could not be read.
+     */
+    public Properties load(String pCoordinates, Path pFile)
+            throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(pFile,
+                BasicFileAttributes.class);
+        String key = pCoordinates + '@' + pFile.toAbsolutePath().normalize()
+                + '@' + attributes.size() + ':'
+                + attributes.lastModifiedTime().toMillis();
+        Properties properties = cache.get(key);
+        if (properties == null) {
+            Properties parsed = parse(pFile);
+            properties = cache.putIfAbsent(key, parsed);
+            if (properties == null) {
+                properties = parsed;
+            }
+        }
+        Properties copy = new Properties();
+        copy.putAll(properties);
+        return copy;
+    }
+
+    /**
+     * Loads the properties of a file using an executor.
+     *
+     * @param pCoordinates
+     *                         The coordinates of the artifact providing the
+     *                         file.
+     * @param pFile
+     *                         The properties file.
+     * @param pExecutor
+     *                         The executor where the file is loaded.
+     * @return a future for a copy of the properties.
+     * @see #load(String, Path)
+     */
+    public CompletableFuture<Properties> loadAsync(String pCoordinates,
+            Path pFile, Executor pExecutor) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return load(pCoordinates, pFile);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, pExecutor);
+    }
+}
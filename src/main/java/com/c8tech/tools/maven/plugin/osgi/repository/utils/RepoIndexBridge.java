@@ -92,6 +92,12 @@ public class RepoIndexBridge {
      */
     private String pojosrOutputDir;
 
+    /**
+     * The indexer services already started, shared by the bridges created with
+     * the same configuration.
+     */
+    private final ResourceIndexerServices resourceIndexerServices;
+
     private final boolean verbose;
 
     /**
@@ -116,6 +122,38 @@ public class RepoIndexBridge {
     public RepoIndexBridge(ClassLoader classLoader,
             File extraKnownBundlesPropertiesFile, List<String> extraBundles,
             String pojosrOutputDir, boolean pVerbose) {
+        this(new ResourceIndexerServices(), classLoader,
+                extraKnownBundlesPropertiesFile, extraBundles, pojosrOutputDir,
+                pVerbose);
+    }
+
+    /**
+     * Creates a new instance of the bridge class, sharing the indexer services
+     * started during the maven session.
+     *
+     * @param pResourceIndexerServices
+     *                                            the indexer services of the
+     *                                            session.
+     * @param classLoader
+     *                                            the classloader to be used.
+     * @param extraKnownBundlesPropertiesFile
+     *                                            when there are any know bundle
+     *                                            property file to pass to
+     *                                            indexer library.
+     * @param extraBundles
+     *                                            when there are extra bundle to
+     *                                            be added to PojoSr classpath.
+     * @param pojosrOutputDir
+     *                                            The output directory.
+     * @param pVerbose
+     *                                            Whether log messages should be
+     *                                            displayed.
+     */
+    public RepoIndexBridge(ResourceIndexerServices pResourceIndexerServices,
+            ClassLoader classLoader, File extraKnownBundlesPropertiesFile,
+            List<String> extraBundles, String pojosrOutputDir,
+            boolean pVerbose) {
+        this.resourceIndexerServices = pResourceIndexerServices;
         this.classLoader = classLoader;
         this.verbose = pVerbose;
         this.pojosrOutputDir = pojosrOutputDir;
@@ -192,7 +230,7 @@ public class RepoIndexBridge {
                     "The target repository index path informed is not valid.");
         }
 
-        ResourceIndexer index = setupResourceIndexerService();
+        ResourceIndexer index = lookupResourceIndexerService();
         try {
             index.index(filesToIndex, pOutputStream, repoindexConfig);
         } catch (AnalyzerException e) {
@@ -222,7 +260,7 @@ public class RepoIndexBridge {
             for (Artifact artifact2 : artifacts) {
                 filesToIndex.add(artifact2.getFile());
             }
-            ResourceIndexer index = setupResourceIndexerService();
+            ResourceIndexer index = lookupResourceIndexerService();
 
             index.indexFragment(filesToIndex, writer, repoIndexConfig);
             return writer.toString();
@@ -258,7 +296,22 @@ public class RepoIndexBridge {
         return verbose;
     }
 
-    private ResourceIndexer setupResourceIndexerService()
+    /**
+     * Returns the indexer service for the class loader and configuration of
+     * this bridge, starting it only the first time it is requested. The
+     * service is able to index several repositories concurrently.
+     */
+    private ResourceIndexer lookupResourceIndexerService()
+            throws IOException, InterruptedException {
+        String configuration = buildBundleFilter() + "|" + pojosrOutputDir
+                + "|" + (extraKnownBundlesPropertiesFile != null
+                        ? extraKnownBundlesPropertiesFile.getAbsolutePath()
+                        : "");
+        return resourceIndexerServices.lookup(classLoader, configuration,
+                this::setupResourceIndexerService);
+    }
+
+    private ResourceIndexerServices.StartedService setupResourceIndexerService()
             throws IOException, InterruptedException {
 
         // Configure PojoSR
@@ -316,7 +369,8 @@ public class RepoIndexBridge {
             index.setKnownBundlesExtraProperties(props);
         }
 
-        return index;
+        return new ResourceIndexerServices.StartedService(registry, tracker,
+                index);
 
     }
 }
@@ -0,0 +1,173 @@
+/**
+ * ============================================================================
+ *  Copyright ©  2015-2019,    Cristiano V. Gavião
+ *
+ *  All rights reserved.
+ *  This program and the accompanying materials are made available under
+ *  the terms of the Eclipse Public License v1.0 which accompanies this
+ *  distribution and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * ============================================================================
+ */
+package com.c8tech.tools.maven.plugin.osgi.repository.utils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.inject.Named;
+
+import org.apache.maven.SessionScoped;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleException;
+import org.osgi.service.indexer.ResourceIndexer;
+import org.osgi.util.tracker.ServiceTracker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.kalpatec.pojosr.framework.launch.PojoServiceRegistry;
+
+/**
+ * Keeps the indexer services started during a maven session, so the bridges
+ * created with the same configuration share a single PojoSR registry.
+ * <p>
+ * The services are keyed by the class loader they were started from, compared
+ * by identity, and the configuration of the bridge. A new instance is created
+ * for each maven session.
+ * <p>
+ * The registries are stopped by {@link #stopAll()}, called at the end of the
+ * session by {@link ResourceIndexerSessionParticipant}. Maven runs it when the
+ * plugin is declared as a build extension, as the projects of the
+ * <b>osgi.repository</b> packaging type do.
+ *
+ * @author Cristiano Gavião
+ *
+ */
+@Named
+@SessionScoped
+public class ResourceIndexerServices {
+
+    /**
+     * Starts a new indexer service.
+     */
+    @FunctionalInterface
+    public interface Starter {
+
+        /**
+         * Starts the service.
+         *
+         * @return the started service.
+         * @throws IOException
+         *                                  When the service could not be
+         *                                  started.
+         * @throws InterruptedException
+         *                                  When interrupted while waiting for
+         *                                  the service.
+         */
+        StartedService start() throws IOException, InterruptedException;
+    }
+
+    /**
+     * An indexer service together with the registry that provides it.
+     */
+    public static final class StartedService {
+
+        private final ResourceIndexer indexer;
+
+        private final PojoServiceRegistry registry;
+
+        @SuppressWarnings("rawtypes")
+        private final ServiceTracker tracker;
+
+        /**
+         * Creates a new started service.
+         *
+         * @param pRegistry
+         *                       The PojoSR registry.
+         * @param pTracker
+         *                       The tracker of the indexer service.
+         * @param pIndexer
+         *                       The indexer service.
+         */
+        @SuppressWarnings("rawtypes")
+        public StartedService(PojoServiceRegistry pRegistry,
+                ServiceTracker pTracker, ResourceIndexer pIndexer) {
+            registry = pRegistry;
+            tracker = pTracker;
+            indexer = pIndexer;
+        }
+
+        public ResourceIndexer getIndexer() {
+            return indexer;
+        }
+
+        void stop() {
+            tracker.close();
+            Bundle[] bundles = registry.getBundleContext().getBundles();
+            for (int i = bundles.length - 1; i >= 0; i--) {
+                try {
+                    bundles[i].stop();
+                } catch (BundleException | RuntimeException e) { // NOSONAR
+                    LOGGER.debug("Failure while stopping the bundle {}",
+                            bundles[i].getSymbolicName(), e);
+                }
+            }
+        }
+    }
+
+    private static final Logger LOGGER = LoggerFactory
+            .getLogger(ResourceIndexerServices.class);
+
+    private final Map<ClassLoader, Map<String, StartedService>> services = new IdentityHashMap<>();
+
+    /**
+     * Returns the indexer service started for a class loader and a
+     * configuration, starting it the first time it is requested.
+     *
+     * @param pClassLoader
+     *                          The class loader of the bridge.
+     * @param pConfiguration
+     *                          A key describing the bridge configuration.
+     * @param pStarter
+     *                          Starts the service when needed.
+     * @return the indexer service.
+     * @throws IOException
+     *                                  When the service could not be started.
+     * @throws InterruptedException
+     *                                  When interrupted while waiting for the
+     *                                  service.
+     */
+    public ResourceIndexer lookup(ClassLoader pClassLoader,
+            String pConfiguration, Starter pStarter)
+            throws IOException, InterruptedException {
+        synchronized (services) {
+            Map<String, StartedService> started = services
+                    .computeIfAbsent(pClassLoader, k -> new HashMap<>());
+            StartedService service = started.get(pConfiguration);
+            if (service == null) {
+                service = pStarter.start();
+                started.put(pConfiguration, service);
+            }
+            return service.getIndexer();
+        }
+    }
+
+    /**
+     * Stops every service started by this instance.
+     */
+    public void stopAll() {
+        List<StartedService> toStop = new ArrayList<>();
+        synchronized (services) {
+            for (Map<String, StartedService> started : services.values()) {
+                toStop.addAll(started.values());
+            }
+            services.clear();
+        }
+        for (StartedService service : toStop) {
+            service.stop();
+        }
+    }
+}
@@ -0,0 +1,45 @@
+/**
+ * ============================================================================
+ *  Copyright ©  2015-2019,    Cristiano V. Gavião
+ *
+ *  All rights reserved.
+ *  This program and the accompanying materials are made available under
+ *  the terms of the Eclipse Public License v1.0 which accompanies this
+ *  distribution and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * ============================================================================
+ */
+package com.c8tech.tools.maven.plugin.osgi.repository.utils;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
+import org.apache.maven.AbstractMavenLifecycleParticipant;
+import org.apache.maven.execution.MavenSession;
+
+/**
+ * Stops the indexer services started during a maven session when it ends.
+ *
+ * @author Cristiano Gavião
+ *
+ */
+@Named
+@Singleton
+public class ResourceIndexerSessionParticipant
+        extends AbstractMavenLifecycleParticipant {
+
+    private final Provider<ResourceIndexerServices> resourceIndexerServices;
+
+    @Inject
+    public ResourceIndexerSessionParticipant(
+            Provider<ResourceIndexerServices> pResourceIndexerServices) {
+        resourceIndexerServices = pResourceIndexerServices;
+    }
+
+    @Override
+    public void afterSessionEnd(MavenSession pSession) {
+        resourceIndexerServices.get().stopAll();
+    }
+}
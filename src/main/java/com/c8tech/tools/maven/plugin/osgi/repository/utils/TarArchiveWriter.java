@@ -0,0 +1,108 @@
+/**
+ * ============================================================================
+ *  Copyright ©  2015-2019,    Cristiano V. Gavião
+ *
+ *  All rights reserved.
+ *  This program and the accompanying materials are made available under
+ *  the terms of the Eclipse Public License v1.0 which accompanies this
+ *  distribution and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * ============================================================================
+ */
+package com.c8tech.tools.maven.plugin.osgi.repository.utils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+
+/**
+ * Writes the entries of a repository archive into a tar stream, adding an
+ * entry for each parent directory.
+ * <p>
+ * When a fixed entry time is given the archive is reproducible: every entry
+ * gets that time, normalized permissions and an anonymous owner, instead of
+ * the user running the build.
+ *
+ * @author Cristiano Gavião
+ *
+ */
+public final class TarArchiveWriter {
+
+    private static final int DIRECTORY_MODE = 040755;
+
+    private static final int FILE_MODE = 0100644;
+
+    private TarArchiveWriter() {
+    }
+
+    private static TarArchiveEntry newEntry(String pName, long pTime,
+            int pMode, boolean pReproducible) {
+        TarArchiveEntry entry = new TarArchiveEntry(pName);
+        entry.setModTime(pTime);
+        entry.setMode(pMode);
+        if (pReproducible) {
+            entry.setUserName("");
+            entry.setGroupName("");
+            entry.setUserId(0);
+            entry.setGroupId(0);
+        }
+        return entry;
+    }
+
+    /**
+     * Writes a tar archive.
+     *
+     * @param pOut
+     *                       The stream receiving the archive. It is closed by
+     *                       this method.
+     * @param pEntries
+     *                       The file of each entry, keyed by the entry name
+     *                       and in the order they must be written.
+     * @param pFixedTime
+     *                       The time of every entry, in milliseconds since the
+     *                       epoch, or -1 to keep the file times.
+     * @throws IOException
+     *                         When a file could not be read or the archive
+     *                         could not be written.
+     */
+    public static void write(OutputStream pOut, Map<String, Path> pEntries,
+            long pFixedTime) throws IOException {
+        boolean reproducible = pFixedTime != -1;
+        try (TarArchiveOutputStream out = new TarArchiveOutputStream(pOut,
+                StandardCharsets.UTF_8.name())) {
+            out.setLongFileMode(TarArchiveOutputStream.LONGFILE_POSIX);
+            out.setBigNumberMode(TarArchiveOutputStream.BIGNUMBER_POSIX);
+            Set<String> writtenDirectories = new HashSet<>();
+            for (Map.Entry<String, Path> input : pEntries.entrySet()) {
+                long time = reproducible ? pFixedTime
+                        : Files.getLastModifiedTime(input.getValue())
+                                .toMillis();
+                String entryName = input.getKey();
+                int index = entryName.indexOf('/');
+                while (index > 0) {
+                    String directory = entryName.substring(0, index + 1);
+                    if (writtenDirectories.add(directory)) {
+                        out.putArchiveEntry(newEntry(directory, time,
+                                DIRECTORY_MODE, reproducible));
+                        out.closeArchiveEntry();
+                    }
+                    index = entryName.indexOf('/', index + 1);
+                }
+                TarArchiveEntry entry = newEntry(entryName, time, FILE_MODE,
+                        reproducible);
+                entry.setSize(Files.size(input.getValue()));
+                out.putArchiveEntry(entry);
+                Files.copy(input.getValue(), out);
+                out.closeArchiveEntry();
+            }
+        }
+    }
+}
@@ -0,0 +1,146 @@
+/**
+ * ============================================================================
+ *  Copyright ©  2015-2019,    Cristiano V. Gavião
+ *
+ *  All rights reserved.
+ *  This program and the accompanying materials are made available under
+ *  the terms of the Eclipse Public License v1.0 which accompanies this
+ *  distribution and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * ============================================================================
+ */
+package com.c8tech.tools.maven.plugin.osgi.repository.utils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import javax.xml.stream.XMLStreamException;
+
+/**
+ * Streams a PDE target definition file, writing each unit as soon as it is
+ * added, so the memory used does not depend on the size of the platform.
+ * <p>
+ * A target may have several locations, each one started by
+ * {@link #startLocation(String)} and ended by {@link #endLocation()}.
+ *
+ * @author Cristiano Gavião
+ *
+ */
+public final class TargetDefinitionWriter implements Closeable {
+
+    private boolean closed;
+
+    private boolean inLocation;
+
+    private final OutputStream out;
+
+    private final IndentingXmlWriter writer;
+
+    /**
+     * Starts a new target definition.
+     *
+     * @param pOut
+     *                        The stream to write into. It is closed together
+     *                        with this writer.
+     * @param pTargetName
+     *                        The target name.
+     * @throws IOException
+     *                         When the document could not be started.
+     */
+    public TargetDefinitionWriter(OutputStream pOut, String pTargetName)
+            throws IOException {
+        out = pOut;
+        try {
+            writer = new IndentingXmlWriter(pOut, "pde", "version=\"3.8\"");
+            writer.start("target", "name", pTargetName, "sequenceNumber", "0");
+            writer.start("locations");
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Adds an installable unit to the current location.
+     *
+     * @param pId
+     *                     The unit id.
+     * @param pVersion
+     *                     The unit version.
+     * @throws IOException
+     *                         When the unit could not be written.
+     */
+    public void addUnit(String pId, String pVersion) throws IOException {
+        if (!inLocation) {
+            throw new IllegalStateException("No location was started.");
+        }
+        try {
+            writer.empty("unit", "id", pId, "version", pVersion);
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Ends the target definition, closing the underlying stream.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (inLocation) {
+                endLocation();
+            }
+            writer.end();
+            writer.end();
+            writer.close();
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Ends the current location.
+     *
+     * @throws IOException
+     *                         When the location could not be written.
+     */
+    public void endLocation() throws IOException {
+        try {
+            writer.end();
+            writer.flush();
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        }
+        inLocation = false;
+    }
+
+    /**
+     * Starts an installable unit location, in slicer mode, pointing to a p2
+     * repository.
+     *
+     * @param pRepositoryLocation
+     *                                The p2 repository URI.
+     * @throws IOException
+     *                         When the location could not be written.
+     */
+    public void startLocation(String pRepositoryLocation) throws IOException {
+        if (inLocation) {
+            endLocation();
+        }
+        try {
+            writer.start("location", "includeAllPlatforms", "false",
+                    "includeConfigurePhase", "false", "includeMode", "slicer",
+                    "includeSource", "false", "type", "InstallableUnit");
+            writer.empty("repository", "location", pRepositoryLocation);
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        }
+        inLocation = true;
+    }
+}
@@ -0,0 +1,213 @@
+/**
+ * ============================================================================
+ *  Copyright ©  2015-2019,    Cristiano V. Gavião
+ *
+ *  All rights reserved.
+ *  This program and the accompanying materials are made available under
+ *  the terms of the Eclipse Public License v1.0 which accompanies this
+ *  distribution and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * ============================================================================
+ */
+package com.c8tech.tools.maven.plugin.osgi.repository.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Downloads a file while computing, in the same pass, the checksums published
+ * for it in a p2 <i>artifacts.xml</i> file.
+ * <p>
+ * The bytes are streamed into a temporary file placed beside the target one,
+ * which is only moved to its final name after the size and all the published
+ * checksums were verified. So a truncated or corrupted download is never
+ * committed into the cache directory.
+ *
+ * @author Cristiano Gavião
+ *
+ */
+public class VerifiedDownloader {
+
+    /**
+     * Thrown when the downloaded bytes do not match the published size or
+     * checksums.
+     */
+    public static class ChecksumMismatchException extends IOException {
+
+        private static final long serialVersionUID = 1L;
+
+        public ChecksumMismatchException(String message) {
+            super(message);
+        }
+    }
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    public static final String PROP_ARTIFACT_SIZE = "artifact.size";
+
+    public static final String PROP_CHECKSUM_MD5 = "download.checksum.md5";
+
+    public static final String PROP_CHECKSUM_SHA_256 = "download.checksum.sha-256";
+
+    public static final String PROP_DOWNLOAD_MD5 = "download.md5";
+
+    public static final String PROP_DOWNLOAD_SIZE = "download.size";
+
+    private final int connectTimeoutInMillis;
+
+    private final int readTimeoutInMillis;
+
+    /**
+     * Creates a new downloader.
+     *
+     * @param pConnectTimeoutInMillis
+     *                                    The connection timeout.
+     * @param pReadTimeoutInMillis
+     *                                    The maximum time a read can block
+     *                                    before the source is considered
+     *                                    stalled.
+     */
+    public VerifiedDownloader(int pConnectTimeoutInMillis,
+            int pReadTimeoutInMillis) {
+        connectTimeoutInMillis = pConnectTimeoutInMillis;
+        readTimeoutInMillis = pReadTimeoutInMillis;
+    }
+
+    private static String toHex(byte[] pBytes) {
+        StringBuilder builder = new StringBuilder(pBytes.length * 2);
+        for (byte b : pBytes) {
+            builder.append(Character.forDigit((b >> 4) & 0xF, 16))
+                    .append(Character.forDigit(b & 0xF, 16));
+        }
+        return builder.toString();
+    }
+
+    private static void verify(String pSource, String pWhat, String pExpected,
+            String pActual) throws ChecksumMismatchException {
+        if (!pExpected.trim().equalsIgnoreCase(pActual)) {
+            throw new ChecksumMismatchException(
+                    String.format("The %s of '%s' is '%s' but '%s' was expected.",
+                            pWhat, pSource, pActual, pExpected));
+        }
+    }
+
+    /**
+     * Selects the checksums that can be verified from a map of p2 artifact
+     * properties, keyed by its {@link MessageDigest} algorithm name.
+     *
+     * @param pProperties
+     *                        The artifact properties.
+     * @return a map of expected checksums, possibly empty.
+     */
+    static Map<String, String> expectedChecksums(
+            Map<String, String> pProperties) {
+        Map<String, String> checksums = new LinkedHashMap<>(2);
+        String sha256 = pProperties.get(PROP_CHECKSUM_SHA_256);
+        if (sha256 != null) {
+            checksums.put("SHA-256", sha256);
+        }
+        String md5 = pProperties.get(PROP_CHECKSUM_MD5);
+        if (md5 == null) {
+            md5 = pProperties.get(PROP_DOWNLOAD_MD5);
+        }
+        if (md5 != null) {
+            checksums.put("MD5", md5);
+        }
+        return checksums;
+    }
+
+    /**
+     * Downloads the source into the target file verifying it against the
+     * informed p2 artifact properties.
+     *
+     * @param pSource
+     *                               The URL to download from.
+     * @param pExpectedProperties
+     *                               The p2 artifact properties containing the
+     *                               expected size and checksums. May be empty,
+     *                               when nothing will be verified.
+     * @param pTarget
+     *                               The target file. It will be replaced only
+     *                               when the download was verified.
+     * @return the number of bytes downloaded.
+     * @throws ChecksumMismatchException
+     *                                       When the verification has failed.
+     * @throws IOException
+     *                                       When the source could not be read
+     *                                       or the target could not be written.
+     */
+    public long download(URL pSource, Map<String, String> pExpectedProperties,
+            Path pTarget) throws IOException {
+        Map<String, String> checksums = expectedChecksums(pExpectedProperties);
+        Map<String, MessageDigest> digests = new LinkedHashMap<>(2);
+        try {
+            for (String algorithm : checksums.keySet()) {
+                digests.put(algorithm, MessageDigest.getInstance(algorithm));
+            }
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+
+        Files.createDirectories(pTarget.getParent());
+        Path tempFile = Files.createTempFile(pTarget.getParent(),
+                pTarget.getFileName().toString(), ".part");
+        try {
+            long size = transfer(pSource, tempFile, digests);
+
+            String expectedSize = pExpectedProperties.get(PROP_DOWNLOAD_SIZE);
+            if (expectedSize != null) {
+                verify(pSource.toString(), "size", expectedSize,
+                        Long.toString(size));
+            }
+            for (Map.Entry<String, MessageDigest> digest : digests
+                    .entrySet()) {
+                verify(pSource.toString(), digest.getKey() + " checksum",
+                        checksums.get(digest.getKey()),
+                        toHex(digest.getValue().digest()));
+            }
+            try {
+                Files.move(tempFile, pTarget,
+                        StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) { // NOSONAR
+                Files.move(tempFile, pTarget,
+                        StandardCopyOption.REPLACE_EXISTING);
+            }
+            return size;
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    private long transfer(URL pSource, Path pTempFile,
+            Map<String, MessageDigest> pDigests) throws IOException {
+        URLConnection connection = pSource.openConnection();
+        connection.setConnectTimeout(connectTimeoutInMillis);
+        connection.setReadTimeout(readTimeoutInMillis);
+        long size = 0;
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try (InputStream in = connection.getInputStream();
+                OutputStream out = Files.newOutputStream(pTempFile)) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+                for (MessageDigest digest : pDigests.values()) {
+                    digest.update(buffer, 0, read);
+                }
+                size += read;
+            }
+        }
+        return size;
+    }
+}
@@ -0,0 +1,114 @@
+/**
+ * ============================================================================
+ *  Copyright ©  2015-2019,    Cristiano V. Gavião
+ *
+ *  All rights reserved.
+ *  This program and the accompanying materials are made available under
+ *  the terms of the Eclipse Public License v1.0 which accompanies this
+ *  distribution and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * ============================================================================
+ */
+package br.com.c8tech.tools.maven.plugin.osgi.repository.ut;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.jdom2.Document;
+import org.jdom2.Element;
+import org.jdom2.input.SAXBuilder;
+import org.junit.Test;
+
+import com.c8tech.tools.maven.plugin.osgi.repository.utils.ContentCapabilityAppender;
+import com.c8tech.tools.maven.plugin.osgi.repository.utils.RepoIndexBridge;
+
+public class ContentCapabilityAppenderUnitTest {
+
+    private static final String A_BUNDLE_DIGEST = "c99ed7c612d3b00a8d94f1bba6f633bc3c85db558c5a99696b612ac8a8f04944";
+
+    private static List<String> contentUrls(InputStream pIndex)
+            throws Exception {
+        Document document = new SAXBuilder().build(pIndex);
+        List<String> urls = new ArrayList<>();
+        for (Element resource : document.getRootElement()
+                .getChildren("resource", RepoIndexBridge.NS)) {
+            for (Element capability : resource.getChildren("capability",
+                    RepoIndexBridge.NS)) {
+                if (!"osgi.content"
+                        .equals(capability.getAttributeValue("namespace"))) {
+                    continue;
+                }
+                for (Element attribute : capability.getChildren("attribute",
+                        RepoIndexBridge.NS)) {
+                    if ("url".equals(attribute.getAttributeValue("name"))) {
+                        urls.add(attribute.getAttributeValue("value"));
+                    }
+                }
+            }
+        }
+        return urls;
+    }
+
+    @Test
+    public void testDuplicatesAreAddedAfterTheIndexedContent()
+            throws Exception {
+        byte[] index = Files.readAllBytes(Paths.get(getClass()
+                .getResource("/xmls/index_from_folder_relative.xml").toURI()));
+        Path rootDir = Paths.get("/repository");
+        Map<String, List<File>> duplicates = Collections.singletonMap(
+                A_BUNDLE_DIGEST,
+                Arrays.asList(rootDir.resolve("mirror/aBundle.jar").toFile(),
+                        new File("/elsewhere/aBundle.jar")));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int added = ContentCapabilityAppender.append(
+                new ByteArrayInputStream(index), out, duplicates, rootDir,
+                false, true);
+
+        assertThat(added).isEqualTo(2);
+        List<String> urls = contentUrls(
+                new ByteArrayInputStream(out.toByteArray()));
+        int position = urls.indexOf("jars/aBundle.jar");
+        assertThat(urls.subList(position, position + 3)).containsExactly(
+                "jars/aBundle.jar", "mirror/aBundle.jar",
+                new File("/elsewhere/aBundle.jar").toPath().toUri()
+                        .toString());
+    }
+
+    @Test
+    public void testCompressedIndex() throws Exception {
+        byte[] index = Files.readAllBytes(Paths.get(getClass()
+                .getResource("/xmls/index_from_folder_relative.xml").toURI()));
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+            gzip.write(index);
+        }
+        Path rootDir = Paths.get("/repository");
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ContentCapabilityAppender.append(
+                new ByteArrayInputStream(compressed.toByteArray()), out,
+                Collections.singletonMap(A_BUNDLE_DIGEST,
+                        Collections.singletonList(
+                                rootDir.resolve("copy.jar").toFile())),
+                rootDir, true, false);
+
+        assertThat(contentUrls(new GZIPInputStream(
+                new ByteArrayInputStream(out.toByteArray()))))
+                        .contains("jars/aBundle.jar", "copy.jar");
+    }
+}
@@ -0,0 +1,44 @@
+/**
+ * ============================================================================
+ *  Copyright ©  2015-2019,    Cristiano V. Gavião
+ *
+ *  All rights reserved.
+ *  This program and the accompanying materials are made available under
+ *  the terms of the Eclipse Public License v1.0 which accompanies this
+ *  distribution and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * ============================================================================
+ */
+package br.com.c8tech.tools.maven.plugin.osgi.repository.ut;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.c8tech.tools.maven.plugin.osgi.repository.utils.FileLinks;
+
+public class FileLinksUnitTest {
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testLinkReplacesExistingTarget() throws Exception {
+        Path source = temporaryFolder.newFile("aBundle.jar").toPath();
+        Files.write(source, new byte[] { 1, 2, 3 });
+        Path target = temporaryFolder.getRoot().toPath()
+                .resolve("staging/plugins/aBundle_1.0.0.jar");
+        Files.createDirectories(target.getParent());
+        Files.write(target, new byte[] { 9 });
+
+        boolean linked = FileLinks.linkOrCopy(source, target);
+
+        assertThat(Files.readAllBytes(target)).containsExactly(1, 2, 3);
+        assertThat(Files.isSameFile(source, target)).isEqualTo(linked);
+    }
+}
@@ -127,6 +127,141 @@ public class GenerateIndexFromFilesetsUnitTest {
         XmlUtils.assertXMLEqual(expected, outputFile, filters);
     }
 
+    @Test
+    public void testIndexFileWithInputManifest() throws Exception {
+
+        Path sourceDir = Paths.get(
+                getClass().getResource("/jars/aBundle.jar").toURI())
+                .getParent();
+        MavenProject project = maven
+                .readMavenProject(resources.getBasedir("ut-project--normal"));
+        Path rootDir = project.getBasedir().toPath().resolve("repository");
+        Path jarsDir = rootDir.resolve("jars");
+        DirectoryUtil.copyDirectory(sourceDir, jarsDir);
+
+        maven.executeMojo(project, "generateIndexFromFilesets",
+                newParameter("fileSets",
+                        jarsDir.toString()
+                                + ":**/*.jar:**/01*.jar;**/aTra*;**/aNon*"),
+                newParameter("compressed", "false"),
+                newParameter("pretty", "true"),
+                newParameter("rootDir", rootDir.toString()),
+                newParameter("indexFileName", "repository.xml"),
+                newParameter("incrementOverride", "1"),
+                newParameter("inputManifest", "true"));
+
+        Path expected = Paths.get(getClass()
+                .getResource("/xmls/index_from_folder_relative.xml").toURI());
+        XmlUtils.assertXMLEqual(expected, rootDir.resolve("repository.xml"));
+    }
+
+    @Test
+    public void testDuplicatedContentIsIndexedOnce() throws Exception {
+
+        Path sourceDir = Paths.get(
+                getClass().getResource("/jars/aBundle.jar").toURI())
+                .getParent();
+        MavenProject project = maven
+                .readMavenProject(resources.getBasedir("ut-project--normal"));
+        Path rootDir = project.getBasedir().toPath().resolve("repository");
+        Path jarsDir = rootDir.resolve("jars");
+        Path mirrorDir = rootDir.resolve("mirror");
+        DirectoryUtil.copyDirectory(sourceDir, jarsDir);
+        DirectoryUtil.copyDirectory(sourceDir, mirrorDir);
+
+        maven.executeMojo(project, "generateIndexFromFilesets",
+                newParameter("fileSets",
+                        jarsDir.toString()
+                                + ":**/*.jar:**/01*.jar;**/aTra*;**/aNon*, "
+                                + mirrorDir
+                                + ":**/*.jar:**/01*.jar;**/aTra*;**/aNon*"),
+                newParameter("compressed", "false"),
+                newParameter("pretty", "true"),
+                newParameter("rootDir", rootDir.toString()),
+                newParameter("indexFileName", "repository.xml"),
+                newParameter("incrementOverride", "1"),
+                newParameter("deduplicateContent", "true"));
+
+        Path expected = Paths.get(getClass()
+                .getResource("/xmls/index_from_folder_relative.xml").toURI());
+        XmlUtils.assertXMLEqual(expected, rootDir.resolve("repository.xml"));
+    }
+
+    @Test
+    public void testIndexPerFileSet() throws Exception {
+
+        File basedir = resources.getBasedir("ut-project--normal");
+        MavenProject project = maven.readMavenProject(basedir);
+        Path bundleSourceDir = Paths.get(
+                getClass().getResource("/jars/aBundle.jar").toURI())
+                .getParent();
+        Path ssSourceDir = Paths.get(getClass()
+                .getResource("/subsystems/aCompositeSubsystem.esa").toURI())
+                .getParent();
+        Path rootDir = basedir.toPath().resolve("target/repository");
+        Path jarsDir = rootDir.resolve("jars");
+        Path subsystemsDir = rootDir.resolve("subsystems");
+        DirectoryUtil.copyDirectory(bundleSourceDir, jarsDir);
+        DirectoryUtil.copyDirectory(ssSourceDir, subsystemsDir);
+
+        maven.executeMojo(project, "generateIndexFromFilesets",
+                newParameter("fileSets",
+                        jarsDir.toString()
+                                + ":**/*.jar:**/01*.jar;**/aTra*;**/aNon*, "
+                                + subsystemsDir + ":**/*.esa"),
+                newParameter("compressed", "false"),
+                newParameter("indexPerFileSet", "true"),
+                newParameter("indexFileName", "repository.xml"),
+                newParameter("incrementOverride", "1"));
+
+        assertFilesPresent(jarsDir.toFile(), "repository.xml");
+        assertFilesPresent(subsystemsDir.toFile(), "repository.xml");
+        assertFilesNotPresent(rootDir.toFile(), "repository.xml");
+    }
+
+    private Path generateIndexPerFileSet(String pIndexThreads)
+            throws Exception {
+        File basedir = resources.getBasedir("ut-project--normal");
+        MavenProject project = maven.readMavenProject(basedir);
+        Path bundleSourceDir = Paths.get(
+                getClass().getResource("/jars/aBundle.jar").toURI())
+                .getParent();
+        Path ssSourceDir = Paths.get(getClass()
+                .getResource("/subsystems/aCompositeSubsystem.esa").toURI())
+                .getParent();
+        Path rootDir = basedir.toPath().resolve("target/repository");
+        DirectoryUtil.copyDirectory(bundleSourceDir, rootDir.resolve("jars"));
+        DirectoryUtil.copyDirectory(ssSourceDir,
+                rootDir.resolve("subsystems"));
+
+        maven.executeMojo(project, "generateIndexFromFilesets",
+                newParameter("fileSets",
+                        rootDir.resolve("jars")
+                                + ":**/*.jar:**/01*.jar;**/aTra*;**/aNon*, "
+                                + rootDir.resolve("subsystems")
+                                + ":**/*.esa"),
+                newParameter("compressed", "false"),
+                newParameter("indexPerFileSet", "true"),
+                newParameter("indexThreads", pIndexThreads),
+                newParameter("indexFileName", "repository.xml"),
+                newParameter("incrementOverride", "1"));
+        return rootDir;
+    }
+
+    @Test
+    public void testConcurrentIndexesPerFileSetMatchSequentialOnes()
+            throws Exception {
+
+        Path concurrent = generateIndexPerFileSet("2");
+        Path sequential = generateIndexPerFileSet("1");
+
+        XmlUtils.assertXMLEqual(sequential.resolve("jars/repository.xml"),
+                concurrent.resolve("jars/repository.xml"));
+        XmlUtils.assertXMLEqual(
+                sequential.resolve("subsystems/repository.xml"),
+                concurrent.resolve("subsystems/repository.xml"));
+    }
+
     @Test (expected=IllegalArgumentException.class)
     public void testNullRootDir() throws Exception {
         File basedir = resources.getBasedir("ut-project--normal");
@@ -0,0 +1,149 @@
+/**
+ * ============================================================================
+ *  Copyright ©  2015-2019,    Cristiano V. Gavião
+ *
+ *  All rights reserved.
+ *  This program and the accompanying materials are made available under
+ *  the terms of the Eclipse Public License v1.0 which accompanies this
+ *  distribution and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * ============================================================================
+ */
+package br.com.c8tech.tools.maven.plugin.osgi.repository.ut;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.c8tech.tools.maven.plugin.osgi.repository.utils.InputManifest;
+
+public class InputManifestUnitTest {
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(2);
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    private static File write(Path pFile, String pContent, FileTime pTime)
+            throws Exception {
+        Files.write(pFile, pContent.getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(pFile, pTime);
+        return pFile.toFile();
+    }
+
+    @Test
+    public void testUnchangedMetadataIsTrusted() throws Exception {
+        Path root = temporaryFolder.getRoot().toPath();
+        Path stateFile = root.resolve("state/input-state.properties");
+        FileTime time = FileTime.fromMillis(1_500_000_000_000L);
+        File file = write(root.resolve("a.jar"), "first", time);
+
+        InputManifest manifest = new InputManifest(stateFile, false);
+        String digest = manifest.digest(file);
+        manifest.save();
+
+        // same size and modification time, the file is not read again
+        write(root.resolve("a.jar"), "other", time);
+        assertThat(new InputManifest(stateFile, false).digest(file))
+                .isEqualTo(digest);
+
+        // a changed modification time makes it be read again
+        write(root.resolve("a.jar"), "other", FileTime.fromMillis(
+                time.toMillis() + InputManifest.RACY_WINDOW_MILLIS));
+        assertThat(new InputManifest(stateFile, false).digest(file))
+                .isNotEqualTo(digest);
+    }
+
+    @Test
+    public void testFileIsDigestedOnceDuringABuild() throws Exception {
+        Path root = temporaryFolder.getRoot().toPath();
+        FileTime now = FileTime.fromMillis(System.currentTimeMillis());
+        File file = write(root.resolve("a.jar"), "first", now);
+
+        InputManifest manifest = new InputManifest(
+                root.resolve("input-state.properties"), true);
+        String digest = manifest.digest(file);
+
+        // same metadata, the digest taken by this build is reused
+        write(root.resolve("a.jar"), "other", now);
+        assertThat(manifest.digest(file)).isEqualTo(digest);
+    }
+
+    @Test
+    public void testStrictModeReadsRacyFiles() throws Exception {
+        Path root = temporaryFolder.getRoot().toPath();
+        Path stateFile = root.resolve("input-state.properties");
+        FileTime now = FileTime.fromMillis(System.currentTimeMillis());
+        File file = write(root.resolve("a.jar"), "first", now);
+
+        InputManifest manifest = new InputManifest(stateFile, true);
+        String digest = manifest.digest(file);
+        manifest.save();
+
+        write(root.resolve("a.jar"), "other", now);
+        assertThat(new InputManifest(stateFile, true).digest(file))
+                .isNotEqualTo(digest);
+    }
+
+    @Test
+    public void testStrictModeUsesTheTimeTheDigestsWereTaken()
+            throws Exception {
+        Path root = temporaryFolder.getRoot().toPath();
+        Path stateFile = root.resolve("input-state.properties");
+        FileTime now = FileTime.fromMillis(System.currentTimeMillis());
+        File file = write(root.resolve("a.jar"), "first", now);
+
+        InputManifest manifest = new InputManifest(stateFile, true);
+        String digest = manifest.digest(file);
+        manifest.save();
+        // a state saved long after the digests were taken
+        Files.setLastModifiedTime(stateFile, FileTime.fromMillis(
+                now.toMillis() + 60 * InputManifest.RACY_WINDOW_MILLIS));
+
+        write(root.resolve("a.jar"), "other", now);
+        assertThat(new InputManifest(stateFile, true).digest(file))
+                .isNotEqualTo(digest);
+    }
+
+    @Test
+    public void testListIsOnlyWrittenWhenTheContentChanges() throws Exception {
+        Path root = temporaryFolder.getRoot().toPath();
+        FileTime time = FileTime.fromMillis(1_500_000_000_000L);
+        File a = write(root.resolve("a.jar"), "a", time);
+        File b = write(root.resolve("b.jar"), "b", time);
+        Path listFile = root.resolve("list/index.list");
+
+        InputManifest manifest = new InputManifest(
+                root.resolve("input-state.properties"), false);
+        Map<File, String> digests = manifest.digestAll(Arrays.asList(b, a),
+                executor);
+
+        assertThat(InputManifest.writeList(listFile, digests)).isTrue();
+        assertThat(InputManifest.writeList(listFile, digests)).isFalse();
+        assertThat(InputManifest.readList(listFile)).containsExactly(
+                a.getAbsoluteFile(), b.getAbsoluteFile());
+
+        write(root.resolve("b.jar"), "c", FileTime.fromMillis(
+                time.toMillis() + InputManifest.RACY_WINDOW_MILLIS));
+        assertThat(InputManifest.writeList(listFile,
+                manifest.digestAll(Arrays.asList(a, b), executor))).isTrue();
+    }
+}
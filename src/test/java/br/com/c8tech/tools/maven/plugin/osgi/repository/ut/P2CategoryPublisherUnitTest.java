@@ -0,0 +1,87 @@
+/**
+ * ============================================================================
+ *  Copyright ©  2015-2019,    Cristiano V. Gavião
+ *
+ *  All rights reserved.
+ *  This program and the accompanying materials are made available under
+ *  the terms of the Eclipse Public License v1.0 which accompanies this
+ *  distribution and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * ============================================================================
+ */
+package br.com.c8tech.tools.maven.plugin.osgi.repository.ut;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+import org.jdom2.Document;
+import org.jdom2.Element;
+import org.jdom2.filter.Filters;
+import org.jdom2.input.SAXBuilder;
+import org.jdom2.xpath.XPathFactory;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.c8tech.tools.maven.plugin.osgi.repository.utils.P2CategoryPublisher;
+
+public class P2CategoryPublisherUnitTest {
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private Path resource(String pName) throws Exception {
+        return Paths.get(getClass().getResource("/p2-category/" + pName)
+                .toURI());
+    }
+
+    private static List<Element> select(Document pDocument, String pXPath) {
+        return XPathFactory.instance().compile(pXPath, Filters.element())
+                .evaluate(pDocument);
+    }
+
+    @Test
+    public void testCategoriesArePublishedIntoContent() throws Exception {
+        Path content = temporaryFolder.getRoot().toPath()
+                .resolve("content.xml");
+        Files.copy(resource("content.xml"), content);
+
+        P2CategoryPublisher publisher = P2CategoryPublisher
+                .read(resource("category.xml"));
+        assertThat(publisher.isSupported()).isTrue();
+        assertThat(publisher.publish(content, "0.0.0.v20190101-0000"))
+                .isEqualTo(2);
+        // publishing again must replace the previous categories
+        publisher.publish(content, "0.0.0.v20190101-0000");
+
+        Document document = new SAXBuilder().build(content.toFile());
+        assertThat(document.getRootElement().getChild("units")
+                .getAttributeValue("size")).isEqualTo("5");
+        assertThat(select(document,
+                "/repository/units/unit[@id='all']/requires/required"))
+                        .extracting(e -> e.getAttributeValue("name"))
+                        .containsExactly("aBundle", "anotherBundle");
+        List<Element> picked = select(document,
+                "/repository/units/unit[@id='picked']");
+        assertThat(picked).hasSize(1);
+        assertThat(picked.get(0).getChild("requires").getChild("required")
+                .getAttributeValue("range")).isEqualTo("[2.1.0,2.1.0]");
+        assertThat(select(document,
+                "/repository/units/unit[@id='picked']/properties/property"
+                        + "[@name='org.eclipse.equinox.p2.type.category']"))
+                                .hasSize(1);
+    }
+
+    @Test
+    public void testFeaturesAreNotSupported() throws Exception {
+        P2CategoryPublisher publisher = P2CategoryPublisher
+                .read(resource("category-feature.xml"));
+
+        assertThat(publisher.isSupported()).isFalse();
+        assertThat(publisher.getUnsupportedConstruct()).isEqualTo("feature");
+    }
+}
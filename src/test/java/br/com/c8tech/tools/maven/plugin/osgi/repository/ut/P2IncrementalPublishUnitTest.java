@@ -0,0 +1,224 @@
+/**
+ * ============================================================================
+ *  Copyright ©  2015-2019,    Cristiano V. Gavião
+ *
+ *  All rights reserved.
+ *  This program and the accompanying materials are made available under
+ *  the terms of the Eclipse Public License v1.0 which accompanies this
+ *  distribution and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * ============================================================================
+ */
+package br.com.c8tech.tools.maven.plugin.osgi.repository.ut;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.jdom2.Document;
+import org.jdom2.input.SAXBuilder;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.c8tech.tools.maven.plugin.osgi.repository.utils.P2ArtifactDescriptor;
+import com.c8tech.tools.maven.plugin.osgi.repository.utils.P2ArtifactRepository;
+import com.c8tech.tools.maven.plugin.osgi.repository.utils.P2MetadataCompressor;
+import com.c8tech.tools.maven.plugin.osgi.repository.utils.P2NativePublisher;
+import com.c8tech.tools.maven.plugin.osgi.repository.utils.P2PublishState;
+import com.c8tech.tools.maven.plugin.osgi.repository.utils.P2RepositoryPruner;
+
+public class P2IncrementalPublishUnitTest {
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private static Map<String, String> headers(String pId, String pVersion) {
+        Map<String, String> headers = new HashMap<>();
+        headers.put("Bundle-SymbolicName", pId);
+        headers.put("Bundle-Version", pVersion);
+        return headers;
+    }
+
+    private Path copyOfBundle(String pName) throws Exception {
+        Path copy = temporaryFolder.newFolder().toPath().resolve(pName);
+        Files.copy(Paths.get(getClass().getResource("/jars/aBundle.jar").toURI()),
+                copy);
+        return copy;
+    }
+
+    @Test
+    public void testPruneRemovesUnitsArtifactsAndFiles() throws Exception {
+        Path repository = temporaryFolder.newFolder("repository").toPath();
+        P2NativePublisher publisher = new P2NativePublisher("aRepository", 0);
+        publisher.addBundle(headers("aBundle", "1.0"), copyOfBundle("a.jar"));
+        publisher.addBundle(headers("bBundle", "2.0"), copyOfBundle("b.jar"));
+        publisher.publish(repository);
+
+        assertThat(P2RepositoryPruner.prune(repository,
+                Collections.singleton("aBundle_1.0.0"))).isEqualTo(1);
+
+        assertThat(repository.resolve("plugins/aBundle_1.0.0.jar"))
+                .doesNotExist();
+        assertThat(repository.resolve("plugins/bBundle_2.0.0.jar")).exists();
+        Document content = new SAXBuilder()
+                .build(repository.resolve("content.xml").toFile());
+        assertThat(content.getRootElement().getChild("units")
+                .getAttributeValue("size")).isEqualTo("1");
+        assertThat(P2ArtifactRepository.read(repository.toUri())
+                .getArtifacts()).extracting(P2ArtifactDescriptor::getId)
+                        .containsExactly("bBundle");
+    }
+
+    @Test
+    public void testIncrementalPublishOfACompressedRepository()
+            throws Exception {
+        Path repository = temporaryFolder.newFolder("repository").toPath();
+        Path stateFile = temporaryFolder.getRoot().toPath()
+                .resolve("work/p2-compression.properties");
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            P2NativePublisher first = new P2NativePublisher("aRepository", 0);
+            first.addBundle(headers("aBundle", "1.0"), copyOfBundle("a.jar"));
+            first.addBundle(headers("bBundle", "2.0"), copyOfBundle("b.jar"));
+            first.publish(repository);
+            P2MetadataCompressor compressor = new P2MetadataCompressor(
+                    executor, stateFile);
+            compressor.compressAsync(repository, P2MetadataCompressor.CONTENT)
+                    .join();
+            compressor
+                    .compressAsync(repository, P2MetadataCompressor.ARTIFACTS)
+                    .join();
+            P2MetadataCompressor.writeIndex(repository);
+            compressor.saveState();
+
+            // the next build removes bBundle
+            assertThat(P2MetadataCompressor.deleteCompressedForms(repository))
+                    .isEqualTo(5);
+            P2RepositoryPruner.prune(repository,
+                    Collections.singleton("bBundle_2.0.0"));
+            assertThat(P2ArtifactRepository.read(repository.toUri())
+                    .getArtifacts()).extracting(P2ArtifactDescriptor::getId)
+                            .containsExactly("aBundle");
+
+            P2MetadataCompressor next = new P2MetadataCompressor(executor,
+                    stateFile);
+            assertThat(next.compressAsync(repository,
+                    P2MetadataCompressor.ARTIFACTS).join()).isTrue();
+            P2MetadataCompressor.writeIndex(repository);
+            Files.delete(repository.resolve("artifacts.xml"));
+            assertThat(P2ArtifactRepository.read(repository.toUri())
+                    .getArtifacts()).extracting(P2ArtifactDescriptor::getId)
+                            .containsExactly("aBundle");
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static boolean publishAndCompress(Path pRepository,
+            Path pWorkDir, Path pBundle, ExecutorService pExecutor)
+            throws Exception {
+        Path asideDir = pWorkDir.resolve("p2-compressed");
+        P2MetadataCompressor.moveCompressedForms(pRepository, asideDir);
+        P2NativePublisher publisher = new P2NativePublisher("aRepository", 0);
+        publisher.addBundle(headers("aBundle", "1.0"), pBundle);
+        publisher.publish(pRepository);
+        P2MetadataCompressor compressor = new P2MetadataCompressor(pExecutor,
+                pWorkDir.resolve("p2-compression.properties"), asideDir);
+        boolean content = compressor
+                .compressAsync(pRepository, P2MetadataCompressor.CONTENT)
+                .join();
+        boolean artifacts = compressor
+                .compressAsync(pRepository, P2MetadataCompressor.ARTIFACTS)
+                .join();
+        P2MetadataCompressor.writeIndex(pRepository);
+        compressor.saveState();
+        return content || artifacts;
+    }
+
+    @Test
+    public void testUnchangedRepositoryIsNotCompressedAgain()
+            throws Exception {
+        Path repository = temporaryFolder.newFolder("repository").toPath();
+        Path workDir = temporaryFolder.getRoot().toPath().resolve("work");
+        Path bundle = copyOfBundle("a.jar");
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            assertThat(publishAndCompress(repository, workDir, bundle,
+                    executor)).isTrue();
+            byte[] jar = Files
+                    .readAllBytes(repository.resolve("content.jar"));
+
+            assertThat(publishAndCompress(repository, workDir, bundle,
+                    executor)).isFalse();
+            assertThat(repository.resolve("content.jar")).hasBinaryContent(jar);
+            assertThat(repository.resolve("artifacts.xml.xz")).exists();
+            assertThat(repository.resolve("p2.index")).exists();
+            assertThat(workDir.resolve("p2-compressed").toFile().list())
+                    .isEmpty();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testUnmodifiedBundlesAreNotCopiedAgain() throws Exception {
+        Path repository = temporaryFolder.newFolder("repository").toPath();
+        Path source = copyOfBundle("a.jar");
+        P2NativePublisher first = new P2NativePublisher("aRepository", 0);
+        first.addBundle(headers("aBundle", "1.0"), source);
+        first.publish(repository);
+        Path published = repository.resolve("plugins/aBundle_1.0.0.jar");
+        byte[] publishedBytes = Files.readAllBytes(published);
+
+        Files.write(source, new byte[] { 1, 2, 3 });
+        P2NativePublisher second = new P2NativePublisher("aRepository", 1);
+        second.addBundle(headers("aBundle", "1.0"), source, false);
+        second.publish(repository);
+
+        assertThat(Files.readAllBytes(published)).isEqualTo(publishedBytes);
+        assertThat(P2ArtifactRepository.read(repository.toUri()).getArtifacts()
+                .get(0).getProperty("download.size"))
+                        .isEqualTo(Integer.toString(publishedBytes.length));
+    }
+
+    @Test
+    public void testPublishStateIsPersisted() throws Exception {
+        Path stateFile = temporaryFolder.getRoot().toPath()
+                .resolve("work/p2-publish.properties");
+        Path input = Paths.get("cache/plugins/aBundle.jar");
+
+        P2PublishState state = P2PublishState.load(stateFile);
+        assertThat(state.isEmpty()).isTrue();
+        state.put(input, P2PublishState
+                .toBundleKey(headers("aBundle;singleton:=true", "1.2")));
+        state.save();
+
+        P2PublishState loaded = P2PublishState.load(stateFile);
+        assertThat(loaded.getBundleKey(input)).isEqualTo("aBundle_1.2.0");
+        assertThat(loaded.getInputs()).containsExactly(input.toAbsolutePath());
+        assertThat(P2PublishState.toBundleKey(new HashMap<>())).isNull();
+    }
+
+    @Test
+    public void testBundleKeyValidatesTheVersion() {
+        assertThat(P2PublishState
+                .toBundleKey(headers("aBundle", " 1.0.0.v20190101 ")))
+                        .isEqualTo("aBundle_1.0.0.v20190101");
+        assertThat(P2PublishState.toBundleKey(headers("aBundle", null)))
+                .isEqualTo("aBundle_0.0.0");
+        assertThatThrownBy(() -> P2PublishState
+                .toBundleKey(headers("aBundle", "1.0.0-SNAPSHOT")))
+                        .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> P2PublishState
+                .toBundleKey(headers("aBundle", "v20190101")))
+                        .isInstanceOf(IllegalArgumentException.class);
+    }
+}
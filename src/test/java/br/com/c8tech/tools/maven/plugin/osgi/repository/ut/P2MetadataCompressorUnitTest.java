@@ -0,0 +1,97 @@
+/**
+ * ============================================================================
+ *  Copyright ©  2015-2019,    Cristiano V. Gavião
+ *
+ *  All rights reserved.
+ *  This program and the accompanying materials are made available under
+ *  the terms of the Eclipse Public License v1.0 which accompanies this
+ *  distribution and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * ============================================================================
+ */
+package br.com.c8tech.tools.maven.plugin.osgi.repository.ut;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.jar.JarFile;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.tukaani.xz.XZInputStream;
+
+import com.c8tech.tools.maven.plugin.osgi.repository.utils.P2MetadataCompressor;
+
+public class P2MetadataCompressorUnitTest {
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    private static byte[] readAll(InputStream pInput) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = pInput.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    @Test
+    public void testMetadataIsCompressedOnlyWhenModified() throws Exception {
+        Path repository = temporaryFolder.newFolder("repository").toPath();
+        Path stateFile = temporaryFolder.getRoot().toPath()
+                .resolve("p2-compression.properties");
+        Path content = repository.resolve("content.xml");
+        Files.copy(Paths.get(
+                getClass().getResource("/p2-category/content.xml").toURI()),
+                content);
+        byte[] xml = Files.readAllBytes(content);
+
+        P2MetadataCompressor compressor = new P2MetadataCompressor(executor,
+                stateFile);
+        assertThat(compressor
+                .compressAsync(repository, P2MetadataCompressor.CONTENT)
+                .join()).isTrue();
+        compressor.saveState();
+        P2MetadataCompressor.writeIndex(repository);
+
+        try (JarFile jar = new JarFile(
+                repository.resolve("content.jar").toFile())) {
+            assertThat(readAll(jar.getInputStream(jar.getEntry("content.xml"))))
+                    .isEqualTo(xml);
+        }
+        try (InputStream in = new XZInputStream(
+                Files.newInputStream(repository.resolve("content.xml.xz")))) {
+            assertThat(readAll(in)).isEqualTo(xml);
+        }
+        assertThat(Files.readAllLines(repository.resolve("p2.index"),
+                StandardCharsets.ISO_8859_1)).contains(
+                        "metadata.repository.factory.order=content.xml.xz,content.xml,\\!");
+
+        P2MetadataCompressor next = new P2MetadataCompressor(executor,
+                stateFile);
+        assertThat(next.compressAsync(repository, P2MetadataCompressor.CONTENT)
+                .join()).isFalse();
+
+        Files.write(content, "<repository/>".getBytes(StandardCharsets.UTF_8));
+        assertThat(next.compressAsync(repository, P2MetadataCompressor.CONTENT)
+                .join()).isTrue();
+    }
+}
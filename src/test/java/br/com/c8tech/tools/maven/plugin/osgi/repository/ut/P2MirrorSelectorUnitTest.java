@@ -0,0 +1,138 @@
+/**
+ * ============================================================================
+ *  Copyright ©  2015-2019,    Cristiano V. Gavião
+ *
+ *  All rights reserved.
+ *  This program and the accompanying materials are made available under
+ *  the terms of the Eclipse Public License v1.0 which accompanies this
+ *  distribution and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * ============================================================================
+ */
+package br.com.c8tech.tools.maven.plugin.osgi.repository.ut;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.c8tech.tools.maven.plugin.osgi.repository.utils.P2MirrorSelector;
+import com.sun.net.httpserver.HttpServer;
+
+@SuppressWarnings("restriction")
+public class P2MirrorSelectorUnitTest {
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+    // the mirror stand-ins never compete with the probes for threads
+    private final ExecutorService serverExecutor = Executors
+            .newCachedThreadPool();
+
+    private final List<HttpServer> servers = new ArrayList<>();
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @After
+    public void tearDown() {
+        for (HttpServer server : servers) {
+            server.stop(0);
+        }
+        executor.shutdownNow();
+        serverExecutor.shutdownNow();
+    }
+
+    /**
+     * Starts a mirror stand-in that serves any file after the informed delay,
+     * or answers 404 when the delay is negative.
+     */
+    private URI startMirror(long pDelayInMillis) throws Exception {
+        HttpServer server = HttpServer.create(
+                new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", exchange -> {
+            try {
+                if (pDelayInMillis < 0) {
+                    exchange.sendResponseHeaders(404, -1);
+                    return;
+                }
+                Thread.sleep(pDelayInMillis);
+                byte[] body = new byte[16 * 1024];
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                exchange.close();
+            }
+        });
+        server.setExecutor(serverExecutor);
+        server.start();
+        servers.add(server);
+        return new URI("http://127.0.0.1:" + server.getAddress().getPort()
+                + "/repo/");
+    }
+
+    @Test
+    public void testMirrorsAreRankedByProbedSpeed() throws Exception {
+        // the delay gap is wide enough to not depend on thread scheduling,
+        // and far below the probe timeout
+        URI slow = startMirror(1000);
+        URI missing = startMirror(-1);
+        URI fast = startMirror(0);
+
+        List<P2MirrorSelector.Mirror> ranked = new P2MirrorSelector(executor,
+                10000, 10000).rank(Arrays.asList(slow, missing, fast),
+                        "plugins/aBundle_1.0.0.jar");
+
+        assertThat(ranked).extracting(P2MirrorSelector.Mirror::getLocation)
+                .containsExactly(fast, slow);
+        assertThat(ranked.get(1).getLatencyInMillis())
+                .isGreaterThanOrEqualTo(1000);
+    }
+
+    @Test
+    public void testStalledMirrorIsDiscarded() throws Exception {
+        URI stalled = startMirror(5000);
+        P2MirrorSelector selector = new P2MirrorSelector(executor, 500, 500);
+
+        assertThatThrownBy(() -> selector.probe(stalled, "artifacts.jar"))
+                .isInstanceOf(SocketTimeoutException.class);
+        assertThat(selector.rank(Arrays.asList(stalled), "artifacts.jar"))
+                .isEmpty();
+    }
+
+    @Test
+    public void testReadMirrorsList() throws Exception {
+        Path mirrorsFile = temporaryFolder.newFile("mirrors.xml").toPath();
+        Files.write(mirrorsFile, ("<?xml version='1.0' encoding='UTF-8'?>"
+                + "<mirrors>"
+                + "<mirror url='http://mirror1.example.org/updates' label='one'/>"
+                + "<mirror url='' label='empty'/>"
+                + "<mirror url='http://mirror2.example.org/updates/' label='two'/>"
+                + "</mirrors>").getBytes(StandardCharsets.UTF_8));
+
+        List<URI> mirrors = new P2MirrorSelector(executor, 1000, 1000)
+                .readMirrors(mirrorsFile.toUri().toURL());
+
+        assertThat(mirrors).containsExactly(
+                new URI("http://mirror1.example.org/updates/"),
+                new URI("http://mirror2.example.org/updates/"));
+    }
+}
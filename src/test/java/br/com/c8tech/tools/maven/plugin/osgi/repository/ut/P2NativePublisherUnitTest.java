@@ -0,0 +1,107 @@
+/**
+ * ============================================================================
+ *  Copyright ©  2015-2019,    Cristiano V. Gavião
+ *
+ *  All rights reserved.
+ *  This program and the accompanying materials are made available under
+ *  the terms of the Eclipse Public License v1.0 which accompanies this
+ *  distribution and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * ============================================================================
+ */
+package br.com.c8tech.tools.maven.plugin.osgi.repository.ut;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jdom2.Document;
+import org.jdom2.Element;
+import org.jdom2.filter.Filters;
+import org.jdom2.input.SAXBuilder;
+import org.jdom2.xpath.XPathFactory;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.c8tech.tools.maven.plugin.osgi.repository.utils.P2ArtifactDescriptor;
+import com.c8tech.tools.maven.plugin.osgi.repository.utils.P2ArtifactRepository;
+import com.c8tech.tools.maven.plugin.osgi.repository.utils.P2NativePublisher;
+
+public class P2NativePublisherUnitTest {
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private static List<Element> select(Document pDocument, String pXPath) {
+        return XPathFactory.instance().compile(pXPath, Filters.element())
+                .evaluate(pDocument);
+    }
+
+    @Test
+    public void testBundlesArePublishedFromManifestHeaders() throws Exception {
+        Path bundle = Paths
+                .get(getClass().getResource("/jars/aBundle.jar").toURI());
+        Map<String, String> headers = new HashMap<>();
+        headers.put("Bundle-SymbolicName", "aBundle;singleton:=true");
+        headers.put("Bundle-Version", "1.2");
+        headers.put("Bundle-Name", "A Bundle");
+        headers.put("Export-Package",
+                "a.pkg;b.pkg;version=\"1.2.0\",c.pkg;uses:=\"a.pkg,b.pkg\"");
+        headers.put("Import-Package",
+                "d.pkg;version=\"[1.0,2)\",e.pkg;resolution:=optional");
+        Map<String, String> notABundle = new HashMap<>();
+        notABundle.put("Manifest-Version", "1.0");
+
+        Path repository = temporaryFolder.getRoot().toPath();
+        P2NativePublisher publisher = new P2NativePublisher("aRepository",
+                1546300800000L);
+        assertThat(publisher.addBundle(headers, bundle)).isTrue();
+        assertThat(publisher.addBundle(notABundle, bundle)).isFalse();
+
+        List<Path> published = publisher.publish(repository);
+
+        assertThat(published).containsExactly(
+                repository.resolve("plugins/aBundle_1.2.0.jar"));
+        assertThat(Files.readAllBytes(published.get(0)))
+                .isEqualTo(Files.readAllBytes(bundle));
+
+        P2ArtifactRepository artifacts = P2ArtifactRepository
+                .read(repository.toUri());
+        P2ArtifactDescriptor descriptor = artifacts.getArtifacts().get(0);
+        assertThat(descriptor.getKey()).isEqualTo(P2ArtifactDescriptor
+                .toKey(P2ArtifactDescriptor.CLASSIFIER_BUNDLE, "aBundle",
+                        "1.2.0"));
+        assertThat(artifacts.getRelativePath(descriptor))
+                .isEqualTo("plugins/aBundle_1.2.0.jar");
+        assertThat(descriptor.getProperty("download.size"))
+                .isEqualTo(Long.toString(Files.size(bundle)));
+        assertThat(descriptor.getProperty("download.checksum.sha-256"))
+                .hasSize(64);
+
+        Document content = new SAXBuilder()
+                .build(repository.resolve("content.xml").toFile());
+        Element unit = select(content, "/repository/units/unit").get(0);
+        assertThat(unit.getAttributeValue("id")).isEqualTo("aBundle");
+        assertThat(unit.getAttributeValue("singleton")).isNull();
+        assertThat(select(content,
+                "//provided[@namespace='java.package']"))
+                        .extracting(e -> e.getAttributeValue("name") + ":"
+                                + e.getAttributeValue("version"))
+                        .containsExactly("a.pkg:1.2.0", "b.pkg:1.2.0",
+                                "c.pkg:0.0.0");
+        assertThat(select(content, "//required"))
+                .extracting(e -> e.getAttributeValue("name") + ":"
+                        + e.getAttributeValue("range") + ":"
+                        + e.getAttributeValue("optional"))
+                .containsExactly("d.pkg:[1.0.0,2.0.0):null",
+                        "e.pkg:0.0.0:true");
+        assertThat(select(content, "//instruction[@key='manifest']").get(0)
+                .getText()).contains("Bundle-Version: 1.2.0");
+    }
+}
@@ -0,0 +1,186 @@
+/**
+ * ============================================================================
+ *  Copyright ©  2015-2019,    Cristiano V. Gavião
+ *
+ *  All rights reserved.
+ *  This program and the accompanying materials are made available under
+ *  the terms of the Eclipse Public License v1.0 which accompanies this
+ *  distribution and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * ============================================================================
+ */
+package br.com.c8tech.tools.maven.plugin.osgi.repository.ut;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jdom2.Document;
+import org.jdom2.Element;
+import org.jdom2.filter.Filters;
+import org.jdom2.input.SAXBuilder;
+import org.jdom2.xpath.XPathFactory;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.c8tech.tools.maven.plugin.osgi.repository.utils.P2PublisherDaemon;
+
+public class P2PublisherDaemonUnitTest {
+
+    private final List<String> launchedBundles = new ArrayList<>();
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private Path bundle(String pName, String pContent) throws Exception {
+        Path file = temporaryFolder.getRoot().toPath()
+                .resolve("cache/" + pName + ".jar");
+        Files.createDirectories(file.getParent());
+        Files.write(file, pContent.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    // stands for the Equinox publisher
+    private void fakePublish(Path pSourceDir, Path pRepositoryDir)
+            throws Exception {
+        StringBuilder units = new StringBuilder();
+        StringBuilder artifacts = new StringBuilder();
+        File[] files = pSourceDir.resolve("plugins").toFile().listFiles();
+        for (File file : files != null ? files : new File[0]) {
+            String key = file.getName().replace(".jar", "");
+            launchedBundles.add(key);
+            String id = key.substring(0, key.indexOf('_'));
+            String version = key.substring(key.indexOf('_') + 1);
+            units.append("<unit id='").append(id).append("' version='")
+                    .append(version)
+                    .append("'><artifacts size='1'><artifact classifier='osgi.bundle' id='")
+                    .append(id).append("' version='").append(version)
+                    .append("'/></artifacts></unit>");
+            artifacts.append("<artifact classifier='osgi.bundle' id='")
+                    .append(id).append("' version='").append(version)
+                    .append("'/>");
+        }
+        File[] features = pSourceDir.resolve("features").toFile().listFiles();
+        for (File file : features != null ? features : new File[0]) {
+            String id = file.getName().replace(".jar", "");
+            launchedBundles.add(id);
+            units.append("<unit id='").append(id)
+                    .append(".feature.group' version='1.0.0'/>");
+            units.append("<unit id='").append(id)
+                    .append(".feature.jar' version='1.0.0'/>");
+            artifacts.append(
+                    "<artifact classifier='org.eclipse.update.feature' id='")
+                    .append(id).append("' version='1.0.0'/>");
+            Path target = pRepositoryDir
+                    .resolve("features/" + id + "_1.0.0.jar");
+            Files.createDirectories(target.getParent());
+            Files.copy(file.toPath(), target);
+        }
+        units.append(
+                "<unit id='tooling.osgi.bundle.default' version='1.0.0'/>");
+        Files.write(pRepositoryDir.resolve("content.xml"),
+                ("<repository><units>" + units + "</units></repository>")
+                        .getBytes(StandardCharsets.UTF_8));
+        Files.write(pRepositoryDir.resolve("artifacts.xml"),
+                ("<repository><artifacts>" + artifacts
+                        + "</artifacts></repository>")
+                                .getBytes(StandardCharsets.UTF_8));
+    }
+
+    private List<String> unitIds(Path pRepositoryDir) throws Exception {
+        Document document = new SAXBuilder()
+                .build(pRepositoryDir.resolve("content.xml").toFile());
+        List<String> ids = new ArrayList<>();
+        for (Element unit : XPathFactory.instance()
+                .compile("/repository/units/unit", Filters.element())
+                .evaluate(document)) {
+            ids.add(unit.getAttributeValue("id"));
+        }
+        return ids;
+    }
+
+    @Test
+    public void testBundlesArePublishedOncePerSession() throws Exception {
+        P2PublisherDaemon daemon = new P2PublisherDaemon();
+        Path bundleA = bundle("a", "a");
+        Path bundleB = bundle("b", "b");
+        Path bundleC = bundle("c", "c");
+        Path moduleOne = temporaryFolder.newFolder("one").toPath();
+        Path moduleTwo = temporaryFolder.newFolder("two").toPath();
+        Path moduleThree = temporaryFolder.newFolder("three").toPath();
+
+        assertThat(daemon.submit(new P2PublisherDaemon.Job("one", 1L,
+                moduleOne.resolve("repository"), moduleOne.resolve("scratch"),
+                this::fakePublish).addBundle(bundleA, "a_1.0.0")
+                        .addBundle(bundleB, "b_1.0.0"))
+                .join()).isEqualTo(2);
+        assertThat(daemon.submit(new P2PublisherDaemon.Job("two", 1L,
+                moduleTwo.resolve("repository"), moduleTwo.resolve("scratch"),
+                this::fakePublish).addBundle(bundleB, "b_1.0.0")
+                        .addBundle(bundleC, "c_1.0.0"))
+                .join()).isEqualTo(2);
+        assertThat(daemon.submit(new P2PublisherDaemon.Job("three", 1L,
+                moduleThree.resolve("repository"),
+                moduleThree.resolve("scratch"), this::fakePublish)
+                        .addBundle(bundleA, "a_1.0.0")
+                        .addBundle(bundleC, "c_1.0.0"))
+                .join()).isEqualTo(2);
+
+        assertThat(daemon.getLaunches()).isEqualTo(2);
+        assertThat(launchedBundles).containsExactlyInAnyOrder("a_1.0.0",
+                "b_1.0.0", "c_1.0.0");
+        assertThat(unitIds(moduleTwo.resolve("repository")))
+                .containsExactly("b", "c", "tooling.osgi.bundle.default");
+        // the configuration units are added to every repository
+        assertThat(unitIds(moduleThree.resolve("repository")))
+                .containsExactly("a", "c", "tooling.osgi.bundle.default");
+        assertThat(moduleThree.resolve("repository/plugins/c_1.0.0.jar"))
+                .hasContent("c");
+        assertThat(moduleThree.resolve("repository/artifacts.xml"))
+                .exists();
+    }
+
+    @Test
+    public void testFeaturesArePublishedWithTheJob() throws Exception {
+        P2PublisherDaemon daemon = new P2PublisherDaemon();
+        Path bundleA = bundle("a", "a");
+        Path feature = temporaryFolder.getRoot().toPath()
+                .resolve("cache/features/aFeature.jar");
+        Files.createDirectories(feature.getParent());
+        Files.write(feature, "feature".getBytes(StandardCharsets.UTF_8));
+        Path moduleOne = temporaryFolder.newFolder("one").toPath();
+        Path moduleTwo = temporaryFolder.newFolder("two").toPath();
+
+        daemon.submit(new P2PublisherDaemon.Job("one", 1L,
+                moduleOne.resolve("repository"), moduleOne.resolve("scratch"),
+                this::fakePublish).addBundle(bundleA, "a_1.0.0")).join();
+        // the bundle is known, the feature still needs a launch
+        assertThat(daemon.submit(new P2PublisherDaemon.Job("two", 1L,
+                moduleTwo.resolve("repository"), moduleTwo.resolve("scratch"),
+                this::fakePublish).addBundle(bundleA, "a_1.0.0")
+                        .addArtifact(feature, "features/aFeature.jar"))
+                .join()).isEqualTo(1);
+
+        assertThat(daemon.getLaunches()).isEqualTo(2);
+        assertThat(launchedBundles).containsExactly("a_1.0.0", "aFeature");
+        assertThat(unitIds(moduleTwo.resolve("repository"))).containsExactly(
+                "a", "aFeature.feature.group", "aFeature.feature.jar",
+                "tooling.osgi.bundle.default");
+        assertThat(unitIds(moduleOne.resolve("repository")))
+                .containsExactly("a", "tooling.osgi.bundle.default");
+        assertThat(moduleTwo
+                .resolve("repository/features/aFeature_1.0.0.jar"))
+                        .hasContent("feature");
+        assertThat(new String(
+                Files.readAllBytes(
+                        moduleTwo.resolve("repository/artifacts.xml")),
+                StandardCharsets.UTF_8))
+                        .contains("org.eclipse.update.feature");
+    }
+}
@@ -0,0 +1,191 @@
+/**
+ * ============================================================================
+ *  Copyright ©  2015-2019,    Cristiano V. Gavião
+ *
+ *  All rights reserved.
+ *  This program and the accompanying materials are made available under
+ *  the terms of the Eclipse Public License v1.0 which accompanies this
+ *  distribution and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * ============================================================================
+ */
+package br.com.c8tech.tools.maven.plugin.osgi.repository.ut;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.c8tech.tools.maven.plugin.osgi.repository.utils.P2ArtifactDescriptor;
+import com.c8tech.tools.maven.plugin.osgi.repository.utils.P2RepositoryResolver;
+
+public class P2RepositoryResolverUnitTest {
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    private P2RepositoryResolver.Index resolve(String... pLocations)
+            throws Exception {
+        URI[] locations = new URI[pLocations.length];
+        for (int i = 0; i < pLocations.length; i++) {
+            locations[i] = getClass().getResource(pLocations[i]).toURI();
+        }
+        return new P2RepositoryResolver(executor)
+                .resolveAsync(Arrays.asList(locations)).join();
+    }
+
+    @Test
+    public void testCompositeChildrenAreMergedByDeclarationOrder()
+            throws Exception {
+        P2RepositoryResolver.Index index = resolve("/composite-multi");
+
+        assertThat(index.size()).isEqualTo(3);
+        assertThat(index.getRepositories()).hasSize(3);
+
+        List<P2ArtifactDescriptor> candidates = index.candidates(
+                P2ArtifactDescriptor.CLASSIFIER_BUNDLE, "aBundle", "1.8.4");
+        assertThat(candidates).hasSize(2);
+        assertThat(candidates.get(0).getRepository().getLocation().toString())
+                .endsWith("/first/");
+        assertThat(candidates.get(1).getRepository().getLocation().toString())
+                .endsWith("/second/");
+
+        P2ArtifactDescriptor descriptor = index.lookup(
+                P2ArtifactDescriptor.CLASSIFIER_BUNDLE, "aBundle", "1.8.4");
+        assertThat(descriptor.getProperty("download.size")).isEqualTo("1024");
+        assertThat(descriptor.getRepository().getRelativePath(descriptor))
+                .isEqualTo("plugins/aBundle_1.8.4.jar");
+
+        P2ArtifactDescriptor third = index.lookup(
+                P2ArtifactDescriptor.CLASSIFIER_BUNDLE, "aThirdBundle",
+                "2.0.0");
+        assertThat(third.getRepository().getRelativePath(third))
+                .isEqualTo("bundles/aThirdBundle-2.0.0.jar");
+        assertThat(third.getRepository().getMirrorsURL())
+                .isEqualTo("http://localhost/mirrors.xml");
+    }
+
+    private URI composite(String pName, String... pChildren)
+            throws Exception {
+        StringBuilder children = new StringBuilder();
+        for (String child : pChildren) {
+            children.append("<child location='").append(child)
+                    .append("'/>");
+        }
+        return write(pName, "compositeArtifacts.xml",
+                "<?xml version='1.0' encoding='UTF-8'?>"
+                        + "<?compositeArtifactRepository version='1.0.0'?>"
+                        + "<repository name='" + pName + "' version='1.0.0'>"
+                        + "<children size='" + pChildren.length + "'>"
+                        + children + "</children></repository>");
+    }
+
+    private URI simple(String pName, String pBundle) throws Exception {
+        return write(pName, "artifacts.xml",
+                "<?xml version='1.0' encoding='UTF-8'?>"
+                        + "<?artifactRepository version='1.1.0'?>"
+                        + "<repository name='" + pName + "' version='1'>"
+                        + "<artifacts size='1'><artifact classifier='osgi.bundle' id='"
+                        + pBundle + "' version='1.0.0'/></artifacts>"
+                        + "</repository>");
+    }
+
+    private URI write(String pName, String pFileName, String pContent)
+            throws Exception {
+        Path dir = temporaryFolder.getRoot().toPath().resolve(pName);
+        Files.createDirectories(dir);
+        Files.write(dir.resolve(pFileName),
+                pContent.getBytes(StandardCharsets.UTF_8));
+        // without the trailing slash, like a location declared by a user
+        String uri = dir.toUri().toString();
+        return URI.create(uri.substring(0, uri.length() - 1));
+    }
+
+    private P2RepositoryResolver.Index resolveWithTimeout(URI... pLocations)
+            throws Exception {
+        return new P2RepositoryResolver(executor)
+                .resolveAsync(Arrays.asList(pLocations))
+                .get(10, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testCrossRootCycle() throws Exception {
+        simple("leafA", "aBundle");
+        simple("leafB", "anotherBundle");
+        URI a = composite("a", "../b", "../leafA");
+        URI b = composite("b", "../a", "../leafB");
+
+        P2RepositoryResolver.Index index = resolveWithTimeout(a, b);
+
+        assertThat(index.getRepositories()).hasSize(2);
+        assertThat(index.lookup(P2ArtifactDescriptor.CLASSIFIER_BUNDLE,
+                "aBundle", "1.0.0")).isNotNull();
+        assertThat(index.lookup(P2ArtifactDescriptor.CLASSIFIER_BUNDLE,
+                "anotherBundle", "1.0.0")).isNotNull();
+        // b is reached first from a, so its leaf comes first
+        assertThat(index.getRepositories().get(0).getLocation().toString())
+                .endsWith("/leafB/");
+    }
+
+    @Test
+    public void testDiamondWithCyclicChildren() throws Exception {
+        simple("leaf", "aBundle");
+        URI a = composite("a", "../b", "../c");
+        composite("b", "../c");
+        composite("c", "../b", "../leaf");
+
+        P2RepositoryResolver.Index index = resolveWithTimeout(a);
+
+        assertThat(index.getRepositories()).hasSize(1);
+        assertThat(index.lookup(P2ArtifactDescriptor.CLASSIFIER_BUNDLE,
+                "aBundle", "1.0.0")).isNotNull();
+    }
+
+    @Test
+    public void testSelfReferenceWithoutTrailingSlash() throws Exception {
+        simple("leaf", "aBundle");
+        URI self = composite("self", "../self", "../self/", "../leaf");
+
+        P2RepositoryResolver.Index index = resolveWithTimeout(self);
+
+        assertThat(index.getRepositories()).hasSize(1);
+        assertThat(index.lookup(P2ArtifactDescriptor.CLASSIFIER_BUNDLE,
+                "aBundle", "1.0.0")).isNotNull();
+    }
+
+    @Test
+    public void testUnreadableRepositoriesAreIgnored() throws Exception {
+        P2RepositoryResolver.Index index = resolve("/composite");
+
+        assertThat(index.isEmpty()).isTrue();
+        assertThat(index.lookup(P2ArtifactDescriptor.CLASSIFIER_BUNDLE,
+                "aBundle", "1.8.4")).isNull();
+    }
+
+    @Test
+    public void testEmptyLocations() {
+        assertThat(new P2RepositoryResolver(executor)
+                .resolveAsync(Collections.emptyList()).join().isEmpty())
+                        .isTrue();
+    }
+}
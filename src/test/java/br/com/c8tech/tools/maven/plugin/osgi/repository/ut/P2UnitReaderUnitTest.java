@@ -0,0 +1,97 @@
+/**
+ * ============================================================================
+ *  Copyright ©  2015-2019,    Cristiano V. Gavião
+ *
+ *  All rights reserved.
+ *  This program and the accompanying materials are made available under
+ *  the terms of the Eclipse Public License v1.0 which accompanies this
+ *  distribution and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * ============================================================================
+ */
+package br.com.c8tech.tools.maven.plugin.osgi.repository.ut;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.c8tech.tools.maven.plugin.osgi.repository.utils.P2UnitReader;
+
+public class P2UnitReaderUnitTest {
+
+    private static final String CONTENT = "<?xml version='1.0' encoding='UTF-8'?>"
+            + "<?metadataRepository version='1.1.0'?>"
+            + "<repository name='r' type='t' version='1'><units size='3'>"
+            + "<unit id='a.bundle' version='1.0.0'><provides size='0'/>"
+            + "<artifacts size='1'><artifact classifier='osgi.bundle' id='a.bundle' version='1.0.0'/></artifacts></unit>"
+            + "<unit id='tooling.osgi.bundle.default' version='1.0.0'/>"
+            + "<unit id='a.category' version='0.0.0'><requires size='1'>"
+            + "<required namespace='org.eclipse.equinox.p2.iu' name='a.bundle' range='[1.0.0,1.0.0]'/>"
+            + "</requires></unit>"
+            + "</units></repository>";
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testBundleUnitsAreReadFromArchive() throws Exception {
+        Path archive = temporaryFolder.getRoot().toPath()
+                .resolve("repository.zip");
+        try (ZipOutputStream out = new ZipOutputStream(
+                Files.newOutputStream(archive))) {
+            out.putNextEntry(new ZipEntry("plugins/a.bundle_1.0.0.jar"));
+            out.closeEntry();
+            out.putNextEntry(new ZipEntry("content.xml"));
+            out.write(CONTENT.getBytes(StandardCharsets.UTF_8));
+            out.closeEntry();
+        }
+        List<String> units = new ArrayList<>();
+
+        int count = P2UnitReader.read(archive,
+                (id, version) -> units.add(id + '_' + version));
+
+        assertThat(count).isEqualTo(1);
+        assertThat(units).containsExactly("a.bundle_1.0.0");
+    }
+
+    @Test
+    public void testContentJarIsUsedWhenThereIsNoContentXml()
+            throws Exception {
+        Path repository = temporaryFolder.newFolder("repository").toPath();
+        try (ZipOutputStream out = new ZipOutputStream(
+                Files.newOutputStream(repository.resolve("content.jar")))) {
+            out.putNextEntry(new ZipEntry("content.xml"));
+            out.write(CONTENT.getBytes(StandardCharsets.UTF_8));
+            out.closeEntry();
+        }
+        List<String> units = new ArrayList<>();
+
+        P2UnitReader.read(repository, (id, version) -> units.add(id));
+
+        assertThat(units).containsExactly("a.bundle");
+    }
+
+    @Test
+    public void testMissingMetadataIsReported() throws Exception {
+        Path repository = temporaryFolder.newFolder("empty").toPath();
+        try (OutputStream out = Files
+                .newOutputStream(repository.resolve("index.xml"))) {
+            out.write('x');
+        }
+
+        assertThatThrownBy(() -> P2UnitReader.read(repository,
+                (id, version) -> fail("no unit expected")))
+                        .hasMessageContaining("No p2 metadata file");
+    }
+}
@@ -0,0 +1,129 @@
+/**
+ * ============================================================================
+ *  Copyright ©  2015-2019,    Cristiano V. Gavião
+ *
+ *  All rights reserved.
+ *  This program and the accompanying materials are made available under
+ *  the terms of the Eclipse Public License v1.0 which accompanies this
+ *  distribution and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * ============================================================================
+ */
+package br.com.c8tech.tools.maven.plugin.osgi.repository.ut;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.c8tech.tools.maven.plugin.osgi.repository.utils.ParallelFileWalker;
+import com.c8tech.tools.maven.plugin.osgi.repository.utils.ParallelFileWalker.GlobMatcher;
+
+public class ParallelFileWalkerUnitTest {
+
+    @Rule
+    public TemporaryFolder externalFolder = new TemporaryFolder();
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private ForkJoinPool pool;
+
+    private Path root;
+
+    @Before
+    public void setUp() throws Exception {
+        pool = new ForkJoinPool(4);
+        root = temporaryFolder.getRoot().toPath();
+        for (String file : Arrays.asList("a.jar", "a.txt", "lib/b.jar",
+                "lib/deep/c.jar", "lib/deep/01-old.jar", ".cache/d.jar",
+                "lib/.locks/e.jar", "other/f.esa")) {
+            Path path = root.resolve(file);
+            Files.createDirectories(path.getParent());
+            Files.write(path, new byte[] { 1 });
+        }
+    }
+
+    @After
+    public void tearDown() {
+        pool.shutdownNow();
+    }
+
+    private List<String> find(List<String> pIncludes, List<String> pExcludes)
+            throws Exception {
+        Set<File> files = new ParallelFileWalker(pool).findFiles(root,
+                pIncludes, pExcludes);
+        List<String> paths = new ArrayList<>();
+        for (File file : files) {
+            paths.add(root.relativize(file.toPath()).toString()
+                    .replace(File.separatorChar, '/'));
+        }
+        return paths;
+    }
+
+    @Test
+    public void testExcludedDirectoriesArePruned() throws Exception {
+        assertThat(find(Collections.singletonList("**/*.jar"),
+                Arrays.asList("**/.cache", "**/.locks", "**/01*.jar")))
+                        .containsExactly("a.jar", "lib/b.jar",
+                                "lib/deep/c.jar");
+    }
+
+    @Test
+    public void testTopLevelPatternAndIncludeAll() throws Exception {
+        assertThat(find(Collections.singletonList("*.jar"), null))
+                .containsExactly("a.jar");
+        assertThat(find(null, Collections.singletonList("lib/**")))
+                .containsExactly(".cache/d.jar", "a.jar", "a.txt",
+                        "other/f.esa");
+    }
+
+    @Test
+    public void testLinkedDirectoriesAreFollowedOnce() throws Exception {
+        Path external = externalFolder.getRoot().toPath();
+        Files.write(external.resolve("g.jar"), new byte[] { 1 });
+        try {
+            Files.createSymbolicLink(root.resolve("linked"), external);
+            // a cycle back to the walked directory
+            Files.createSymbolicLink(root.resolve("lib/deep/loop"), root);
+        } catch (UnsupportedOperationException | IOException e) {
+            Assume.assumeNoException(e);
+        }
+
+        assertThat(find(Collections.singletonList("**/*.jar"),
+                Arrays.asList("**/.cache", "**/.locks", "**/01*.jar")))
+                        .containsExactly("a.jar", "lib/b.jar",
+                                "lib/deep/c.jar", "linked/g.jar");
+    }
+
+    @Test
+    public void testGlobMatcher() {
+        GlobMatcher matcher = GlobMatcher
+                .compile(Arrays.asList("lib/*/c.jar", "**/?.esa"));
+
+        assertThat(matcher.matches("lib/deep/c.jar")).isTrue();
+        assertThat(matcher.matches("lib/c.jar")).isFalse();
+        assertThat(matcher.matches("other/f.esa")).isTrue();
+        assertThat(matcher.matches("other/ff.esa")).isFalse();
+        assertThat(matcher.couldHoldMatches("lib")).isTrue();
+        assertThat(matcher.couldHoldMatches("lib/deep")).isTrue();
+        assertThat(
+                GlobMatcher.compile(Collections.singletonList("lib/*/c.jar"))
+                        .couldHoldMatches("other")).isFalse();
+    }
+}
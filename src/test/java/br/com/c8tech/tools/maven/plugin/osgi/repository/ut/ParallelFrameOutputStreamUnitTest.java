@@ -0,0 +1,104 @@
+/**
+ * ============================================================================
+ *  Copyright ©  2015-2019,    Cristiano V. Gavião
+ *
+ *  All rights reserved.
+ *  This program and the accompanying materials are made available under
+ *  the terms of the Eclipse Public License v1.0 which accompanies this
+ *  distribution and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * ============================================================================
+ */
+package br.com.c8tech.tools.maven.plugin.osgi.repository.ut;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Test;
+import org.tukaani.xz.XZInputStream;
+
+import com.c8tech.tools.maven.plugin.osgi.repository.utils.ParallelFrameOutputStream;
+
+import io.airlift.compress.zstd.ZstdDecompressor;
+
+public class ParallelFrameOutputStreamUnitTest {
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    // spans a few chunks
+    private static byte[] content() {
+        StringBuilder builder = new StringBuilder();
+        int i = 0;
+        while (builder.length() < 20 * 1024 * 1024) {
+            builder.append("<resource id='").append(i++)
+                    .append("'><capability namespace='osgi.identity'/></resource>\n");
+        }
+        return builder.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] compress(ParallelFrameOutputStream.Codec pCodec,
+            byte[] pContent, ExecutorService pExecutor) throws Exception {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (ParallelFrameOutputStream out = new ParallelFrameOutputStream(
+                compressed, pCodec, pExecutor, 2)) {
+            // odd sized writes, crossing the chunk boundaries
+            for (int offset = 0; offset < pContent.length; offset += 100003) {
+                out.write(pContent, offset,
+                        Math.min(100003, pContent.length - offset));
+            }
+        }
+        return compressed.toByteArray();
+    }
+
+    @Test
+    public void testXzFramesAreReadAsOneStream() throws Exception {
+        byte[] content = content();
+
+        byte[] compressed = compress(ParallelFrameOutputStream.Codec.XZ,
+                content, executor);
+
+        ByteArrayOutputStream decompressed = new ByteArrayOutputStream();
+        try (InputStream in = new XZInputStream(
+                new ByteArrayInputStream(compressed))) {
+            byte[] buffer = new byte[64 * 1024];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                decompressed.write(buffer, 0, read);
+            }
+        }
+        assertThat(decompressed.toByteArray()).isEqualTo(content);
+    }
+
+    @Test
+    public void testZstdFramesAreDeterministic() throws Exception {
+        byte[] content = content();
+
+        byte[] compressed = compress(ParallelFrameOutputStream.Codec.ZSTD,
+                content, executor);
+        ExecutorService singleThread = Executors.newSingleThreadExecutor();
+        try {
+            assertThat(compress(ParallelFrameOutputStream.Codec.ZSTD, content,
+                    singleThread)).isEqualTo(compressed);
+        } finally {
+            singleThread.shutdownNow();
+        }
+
+        byte[] decompressed = new byte[content.length];
+        int length = new ZstdDecompressor().decompress(compressed, 0,
+                compressed.length, decompressed, 0, decompressed.length);
+        assertThat(length).isEqualTo(content.length);
+        assertThat(decompressed).isEqualTo(content);
+    }
+}
@@ -0,0 +1,270 @@
+/**
+ * ============================================================================
+ *  Copyright ©  2015-2019,    Cristiano V. Gavião
+ *
+ *  All rights reserved.
+ *  This program and the accompanying materials are made available under
+ *  the terms of the Eclipse Public License v1.0 which accompanies this
+ *  distribution and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * ============================================================================
+ */
+package br.com.c8tech.tools.maven.plugin.osgi.repository.ut;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+
+import com.c8tech.tools.maven.plugin.osgi.repository.utils.ParallelZipWriter;
+
+public class ParallelZipWriterUnitTest {
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    private static byte[] readAll(InputStream pInput) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = pInput.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    @Test
+    public void testEntriesAreWrittenInInsertionOrder() throws Exception {
+        Path source = temporaryFolder.newFolder("repository").toPath();
+        Path index = source.resolve("index.xml");
+        Files.write(index, "<repository/>".getBytes(StandardCharsets.UTF_8));
+        // large enough to be buffered in a temporary file
+        byte[] bundleContent = new byte[3 * 1024 * 1024];
+        new Random(7).nextBytes(bundleContent);
+        Path bundle = source.resolve("plugins/aBundle.jar");
+        Files.createDirectories(bundle.getParent());
+        Files.write(bundle, bundleContent);
+        Path scatterDir = temporaryFolder.newFolder("scatter").toPath();
+        File archive = new File(temporaryFolder.getRoot(), "repository.zip");
+
+        try (ParallelZipWriter writer = new ParallelZipWriter(archive,
+                executor, scatterDir)) {
+            writer.addFile(index, "index.xml");
+            writer.addFile(bundle, "plugins/aBundle.jar");
+            writer.finish();
+        }
+
+        try (ZipFile zipFile = new ZipFile(archive)) {
+            List<String> names = new ArrayList<>();
+            for (ZipEntry entry : Collections.list(zipFile.entries())) {
+                names.add(entry.getName());
+            }
+            assertThat(names).containsExactly("index.xml", "plugins/",
+                    "plugins/aBundle.jar");
+            assertThat(readAll(zipFile
+                    .getInputStream(zipFile.getEntry("plugins/aBundle.jar"))))
+                            .isEqualTo(bundleContent);
+            assertThat(readAll(
+                    zipFile.getInputStream(zipFile.getEntry("index.xml"))))
+                            .isEqualTo("<repository/>"
+                                    .getBytes(StandardCharsets.UTF_8));
+        }
+        assertThat(scatterDir.toFile().list()).isEmpty();
+    }
+
+    @Test
+    public void testCompressedEntriesAreStored() throws Exception {
+        Path source = temporaryFolder.newFolder("repository").toPath();
+        Path index = source.resolve("index.xml");
+        Files.write(index, "<repository/>".getBytes(StandardCharsets.UTF_8));
+        Path bundle = source.resolve("aBundle.jar");
+        Files.write(bundle, new byte[] { 1, 2, 3, 4 });
+        File archive = new File(temporaryFolder.getRoot(), "repository.zip");
+
+        try (ParallelZipWriter writer = new ParallelZipWriter(archive,
+                executor, temporaryFolder.newFolder("scatter").toPath(),
+                ParallelZipWriter.EntryPolicy.STORE_COMPRESSED,
+                ParallelZipWriter.DEFAULT_MAX_PENDING_ENTRIES)) {
+            writer.addFile(index, "index.xml");
+            writer.addFile(bundle, "aBundle.jar");
+            writer.finish();
+        }
+
+        try (ZipFile zipFile = new ZipFile(archive)) {
+            ZipEntry bundleEntry = zipFile.getEntry("aBundle.jar");
+            assertThat(bundleEntry.getMethod()).isEqualTo(ZipEntry.STORED);
+            assertThat(readAll(zipFile.getInputStream(bundleEntry)))
+                    .containsExactly(1, 2, 3, 4);
+            assertThat(zipFile.getEntry("index.xml").getMethod())
+                    .isEqualTo(ZipEntry.DEFLATED);
+        }
+    }
+
+    @Test
+    public void testEntriesOfPreviousArchiveAreCopied() throws Exception {
+        Path source = temporaryFolder.newFolder("repository").toPath();
+        Path index = source.resolve("index.xml");
+        Files.write(index, "<repository/>".getBytes(StandardCharsets.UTF_8));
+        Path scatterDir = temporaryFolder.newFolder("scatter").toPath();
+        File previous = new File(temporaryFolder.getRoot(), "previous.zip");
+        try (ParallelZipWriter writer = new ParallelZipWriter(previous,
+                executor, scatterDir)) {
+            writer.addFile(index, "index.xml");
+            writer.finish();
+        }
+        Path bundle = source.resolve("aBundle.jar");
+        Files.write(bundle, new byte[] { 1, 2, 3, 4 });
+        // the reused entry is taken from the previous archive, not the file
+        Files.write(index, "<changed/>".getBytes(StandardCharsets.UTF_8));
+        File archive = new File(temporaryFolder.getRoot(), "repository.zip");
+
+        try (org.apache.commons.compress.archivers.zip.ZipFile previousZipFile = new org.apache.commons.compress.archivers.zip.ZipFile(
+                previous);
+                ParallelZipWriter writer = new ParallelZipWriter(archive,
+                        executor, scatterDir)) {
+            ZipArchiveEntry previousEntry = previousZipFile
+                    .getEntry("index.xml");
+            writer.addFile(bundle, "aBundle.jar");
+            writer.addRawEntry(previousZipFile, previousEntry);
+            writer.finish();
+        }
+
+        try (ZipFile zipFile = new ZipFile(archive)) {
+            assertThat(readAll(
+                    zipFile.getInputStream(zipFile.getEntry("index.xml"))))
+                            .isEqualTo("<repository/>"
+                                    .getBytes(StandardCharsets.UTF_8));
+            assertThat(readAll(
+                    zipFile.getInputStream(zipFile.getEntry("aBundle.jar"))))
+                            .containsExactly(1, 2, 3, 4);
+        }
+    }
+
+    @Test
+    public void testArchivesWithFixedEntryTimeAreIdentical() throws Exception {
+        Path source = temporaryFolder.newFolder("repository").toPath();
+        Path index = source.resolve("index.xml");
+        Files.write(index, "<repository/>".getBytes(StandardCharsets.UTF_8));
+        Path bundle = source.resolve("plugins/aBundle.jar");
+        Files.createDirectories(bundle.getParent());
+        Files.write(bundle, new byte[] { 1, 2, 3, 4 });
+        Path scatterDir = temporaryFolder.newFolder("scatter").toPath();
+        File first = new File(temporaryFolder.getRoot(), "first.zip");
+        File second = new File(temporaryFolder.getRoot(), "second.zip");
+
+        try (ParallelZipWriter writer = new ParallelZipWriter(first,
+                executor, scatterDir,
+                ParallelZipWriter.EntryPolicy.STORE_COMPRESSED,
+                ParallelZipWriter.DEFAULT_MAX_PENDING_ENTRIES)) {
+            writer.setFixedEntryTime(1546300800000L);
+            writer.addFile(index, "index.xml");
+            writer.addFile(bundle, "plugins/aBundle.jar");
+            writer.finish();
+        }
+        Files.setLastModifiedTime(bundle,
+                FileTime.fromMillis(System.currentTimeMillis() - 3600000L));
+        try (ParallelZipWriter writer = new ParallelZipWriter(second,
+                executor, scatterDir,
+                ParallelZipWriter.EntryPolicy.STORE_COMPRESSED,
+                ParallelZipWriter.DEFAULT_MAX_PENDING_ENTRIES)) {
+            writer.setFixedEntryTime(1546300800000L);
+            writer.addFile(index, "index.xml");
+            writer.addFile(bundle, "plugins/aBundle.jar");
+            writer.finish();
+        }
+
+        assertThat(Files.readAllBytes(second.toPath()))
+                .isEqualTo(Files.readAllBytes(first.toPath()));
+    }
+
+    @Test
+    public void testPendingEntriesAreBounded() throws Exception {
+        Path source = temporaryFolder.newFolder("repository").toPath();
+        Path scatterDir = temporaryFolder.newFolder("scatter").toPath();
+        File archive = new File(temporaryFolder.getRoot(), "repository.zip");
+        ExecutorService worker = Executors.newSingleThreadExecutor();
+        AtomicInteger outstanding = new AtomicInteger();
+        AtomicInteger maxOutstanding = new AtomicInteger();
+        Executor countingExecutor = task -> {
+            maxOutstanding.accumulateAndGet(outstanding.incrementAndGet(),
+                    Math::max);
+            worker.execute(() -> {
+                try {
+                    task.run();
+                } finally {
+                    outstanding.decrementAndGet();
+                }
+            });
+        };
+        try (ParallelZipWriter writer = new ParallelZipWriter(archive,
+                countingExecutor, scatterDir,
+                ParallelZipWriter.EntryPolicy.DEFLATE_ALL, 2)) {
+            for (int i = 0; i < 20; i++) {
+                Path file = source.resolve("file" + i + ".txt");
+                Files.write(file, ("content " + i)
+                        .getBytes(StandardCharsets.UTF_8));
+                writer.addFile(file, file.getFileName().toString());
+            }
+            writer.finish();
+        } finally {
+            worker.shutdownNow();
+        }
+
+        // one more for the task being completed by the single worker
+        assertThat(maxOutstanding.get()).isLessThanOrEqualTo(3);
+        try (ZipFile zipFile = new ZipFile(archive)) {
+            assertThat(Collections.list(zipFile.entries())).hasSize(20);
+        }
+    }
+
+    @Test
+    public void testCloseWaitsForRunningCompressions() throws Exception {
+        Path source = temporaryFolder.newFolder("repository").toPath();
+        // large enough to be buffered in a temporary file
+        byte[] content = new byte[3 * 1024 * 1024];
+        new Random(11).nextBytes(content);
+        Path scatterDir = temporaryFolder.newFolder("scatter").toPath();
+        File archive = new File(temporaryFolder.getRoot(), "repository.zip");
+
+        try (ParallelZipWriter writer = new ParallelZipWriter(archive,
+                executor, scatterDir)) {
+            for (int i = 0; i < 8; i++) {
+                Path file = source.resolve("large" + i + ".bin");
+                Files.write(file, content);
+                writer.addFile(file, file.getFileName().toString());
+            }
+            // closed without being finished
+        }
+
+        assertThat(scatterDir.toFile().list()).isEmpty();
+    }
+}
@@ -0,0 +1,123 @@
+/**
+ * ============================================================================
+ *  Copyright ©  2015-2019,    Cristiano V. Gavião
+ *
+ *  All rights reserved.
+ *  This program and the accompanying materials are made available under
+ *  the terms of the Eclipse Public License v1.0 which accompanies this
+ *  distribution and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * ============================================================================
+ */
+package br.com.c8tech.tools.maven.plugin.osgi.repository.ut;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.c8tech.tools.maven.plugin.osgi.repository.utils.PropertiesArtifactCache;
+
+public class PropertiesArtifactCacheUnitTest {
+
+    private static final String COORDINATES = "g:a:properties:1.0.0";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private Path write(String pContent) throws Exception {
+        Path file = temporaryFolder.getRoot().toPath()
+                .resolve("test.properties");
+        Files.write(file, pContent.getBytes(StandardCharsets.ISO_8859_1));
+        return file;
+    }
+
+    @Test
+    public void testReturnedCopiesAreIndependent() throws Exception {
+        PropertiesArtifactCache cache = new PropertiesArtifactCache();
+        Path file = write("key=value\n");
+
+        Properties first = cache.load(COORDINATES, file);
+        first.setProperty("key", "changed");
+
+        assertThat(cache.load(COORDINATES, file).getProperty("key"))
+                .isEqualTo("value");
+    }
+
+    @Test
+    public void testChangedFileIsParsedAgain() throws Exception {
+        PropertiesArtifactCache cache = new PropertiesArtifactCache();
+        Path file = write("key=value\n");
+        assertThat(cache.load(COORDINATES, file).getProperty("key"))
+                .isEqualTo("value");
+
+        Files.setLastModifiedTime(write("key=other\n"), FileTime
+                .fromMillis(System.currentTimeMillis() + 60000L));
+
+        assertThat(cache.load(COORDINATES, file).getProperty("key"))
+                .isEqualTo("other");
+    }
+
+    @Test
+    public void testUnchangedFileIsNotReadAgain() throws Exception {
+        PropertiesArtifactCache cache = new PropertiesArtifactCache();
+        Path file = write("key=value\n");
+        FileTime modified = Files.getLastModifiedTime(file);
+        assertThat(cache.load(COORDINATES, file).getProperty("key"))
+                .isEqualTo("value");
+
+        // same size and modification time
+        Files.setLastModifiedTime(write("key=other\n"), modified);
+
+        assertThat(cache.load(COORDINATES, file).getProperty("key"))
+                .isEqualTo("value");
+    }
+
+    @Test
+    public void testClassifiedFilesAreNotMixedUp() throws Exception {
+        PropertiesArtifactCache cache = new PropertiesArtifactCache();
+        Path root = temporaryFolder.getRoot().toPath();
+        Path first = root.resolve("a-1.0.0-one.properties");
+        Path second = root.resolve("a-1.0.0-two.properties");
+        FileTime modified = FileTime.fromMillis(1_500_000_000_000L);
+        Files.write(first, "key=one\n".getBytes(StandardCharsets.ISO_8859_1));
+        Files.write(second, "key=two\n".getBytes(StandardCharsets.ISO_8859_1));
+        Files.setLastModifiedTime(first, modified);
+        Files.setLastModifiedTime(second, modified);
+
+        assertThat(cache.load(COORDINATES, first).getProperty("key"))
+                .isEqualTo("one");
+        assertThat(cache.load(COORDINATES, second).getProperty("key"))
+                .isEqualTo("two");
+    }
+
+    @Test
+    public void testConcurrentLoads() throws Exception {
+        PropertiesArtifactCache cache = new PropertiesArtifactCache();
+        Path file = write("a=1\nb=2\n");
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            @SuppressWarnings("unchecked")
+            CompletableFuture<Properties>[] futures = new CompletableFuture[16];
+            for (int i = 0; i < futures.length; i++) {
+                futures[i] = cache.loadAsync(COORDINATES, file, executor);
+            }
+            for (CompletableFuture<Properties> future : futures) {
+                assertThat(future.join()).containsEntry("a", "1")
+                        .containsEntry("b", "2").hasSize(2);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,118 @@
+/**
+ * ============================================================================
+ *  Copyright ©  2015-2019,    Cristiano V. Gavião
+ *
+ *  All rights reserved.
+ *  This program and the accompanying materials are made available under
+ *  the terms of the Eclipse Public License v1.0 which accompanies this
+ *  distribution and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * ============================================================================
+ */
+package br.com.c8tech.tools.maven.plugin.osgi.repository.ut;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.c8tech.tools.maven.plugin.osgi.repository.utils.TarArchiveWriter;
+
+public class TarArchiveWriterUnitTest {
+
+    private static final long FIXED_TIME = 315532802000L;
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private Map<String, Path> entries(FileTime pTime) throws Exception {
+        Path root = temporaryFolder.getRoot().toPath()
+                .resolve("repository-" + pTime.toMillis());
+        Path index = root.resolve("index.xml");
+        Path bundle = root.resolve("plugins/aBundle.jar");
+        Files.createDirectories(bundle.getParent());
+        Files.write(index, "<repository/>".getBytes(StandardCharsets.UTF_8));
+        Files.write(bundle, new byte[] { 1, 2, 3 });
+        Files.setLastModifiedTime(index, pTime);
+        Files.setLastModifiedTime(bundle, pTime);
+        Map<String, Path> entries = new LinkedHashMap<>();
+        entries.put("index.xml", index);
+        entries.put("plugins/aBundle.jar", bundle);
+        return entries;
+    }
+
+    private static byte[] write(Map<String, Path> pEntries, long pFixedTime,
+            String pUserName) throws Exception {
+        String userName = System.getProperty("user.name");
+        System.setProperty("user.name", pUserName);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            TarArchiveWriter.write(out, pEntries, pFixedTime);
+            return out.toByteArray();
+        } finally {
+            System.setProperty("user.name", userName);
+        }
+    }
+
+    private static List<TarArchiveEntry> read(byte[] pArchive)
+            throws Exception {
+        List<TarArchiveEntry> entries = new ArrayList<>();
+        try (TarArchiveInputStream in = new TarArchiveInputStream(
+                new ByteArrayInputStream(pArchive))) {
+            TarArchiveEntry entry;
+            while ((entry = in.getNextTarEntry()) != null) {
+                entries.add(entry);
+            }
+        }
+        return entries;
+    }
+
+    @Test
+    public void testReproducibleArchiveDoesNotDependOnTheBuild()
+            throws Exception {
+        byte[] first = write(entries(FileTime.fromMillis(1_500_000_000_000L)),
+                FIXED_TIME, "alice");
+        byte[] second = write(entries(FileTime.fromMillis(1_600_000_000_000L)),
+                FIXED_TIME, "bob");
+
+        assertThat(second).isEqualTo(first);
+        List<TarArchiveEntry> entries = read(first);
+        assertThat(entries).extracting(TarArchiveEntry::getName)
+                .containsExactly("index.xml", "plugins/",
+                        "plugins/aBundle.jar");
+        for (TarArchiveEntry entry : entries) {
+            assertThat(entry.getUserName()).isEmpty();
+            assertThat(entry.getGroupName()).isEmpty();
+            assertThat(entry.getLongUserId()).isZero();
+            assertThat(entry.getLongGroupId()).isZero();
+            assertThat(entry.getModTime().getTime()).isEqualTo(FIXED_TIME);
+        }
+    }
+
+    @Test
+    public void testFileTimesAreKeptWhenNotReproducible() throws Exception {
+        FileTime time = FileTime.fromMillis(1_500_000_000_000L);
+
+        List<TarArchiveEntry> entries = read(write(entries(time), -1, "alice"));
+
+        assertThat(entries).extracting(TarArchiveEntry::getName)
+                .containsExactly("index.xml", "plugins/",
+                        "plugins/aBundle.jar");
+        assertThat(entries.get(2).getModTime().getTime())
+                .isEqualTo(time.toMillis());
+    }
+}
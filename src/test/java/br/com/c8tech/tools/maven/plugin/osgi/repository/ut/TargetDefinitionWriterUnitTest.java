@@ -0,0 +1,58 @@
+/**
+ * ============================================================================
+ *  Copyright ©  2015-2019,    Cristiano V. Gavião
+ *
+ *  All rights reserved.
+ *  This program and the accompanying materials are made available under
+ *  the terms of the Eclipse Public License v1.0 which accompanies this
+ *  distribution and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * ============================================================================
+ */
+package br.com.c8tech.tools.maven.plugin.osgi.repository.ut;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+
+import org.jdom2.Document;
+import org.jdom2.Element;
+import org.jdom2.input.SAXBuilder;
+import org.junit.Test;
+
+import com.c8tech.tools.maven.plugin.osgi.repository.utils.TargetDefinitionWriter;
+
+public class TargetDefinitionWriterUnitTest {
+
+    @Test
+    public void testUnitsAreEscapedAndLocationsSplit() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (TargetDefinitionWriter writer = new TargetDefinitionWriter(out,
+                "my \"target\"")) {
+            writer.startLocation("jar:file:/tmp/a%20b.zip!/");
+            writer.addUnit("a.bundle", "1.0.0");
+            writer.addUnit("b<&>\"bundle", "2.0.0.qualifier");
+            writer.startLocation("file:/tmp/other");
+            writer.addUnit("c.bundle", "3.0.0");
+        }
+
+        Document document = new SAXBuilder()
+                .build(new ByteArrayInputStream(out.toByteArray()));
+        Element target = document.getRootElement();
+        assertThat(target.getAttributeValue("name")).isEqualTo("my \"target\"");
+        List<Element> locations = target.getChild("locations")
+                .getChildren("location");
+        assertThat(locations).hasSize(2);
+        assertThat(locations.get(0).getChild("repository")
+                .getAttributeValue("location"))
+                        .isEqualTo("jar:file:/tmp/a%20b.zip!/");
+        assertThat(locations.get(0).getChildren("unit")).extracting(
+                unit -> unit.getAttributeValue("id")).containsExactly(
+                        "a.bundle", "b<&>\"bundle");
+        assertThat(locations.get(1).getChildren("unit")).extracting(
+                unit -> unit.getAttributeValue("version"))
+                .containsExactly("3.0.0");
+    }
+}
@@ -0,0 +1,98 @@
+/**
+ * ============================================================================
+ *  Copyright ©  2015-2019,    Cristiano V. Gavião
+ *
+ *  All rights reserved.
+ *  This program and the accompanying materials are made available under
+ *  the terms of the Eclipse Public License v1.0 which accompanies this
+ *  distribution and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * ============================================================================
+ */
+package br.com.c8tech.tools.maven.plugin.osgi.repository.ut;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.math.BigInteger;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.c8tech.tools.maven.plugin.osgi.repository.utils.VerifiedDownloader;
+import com.c8tech.tools.maven.plugin.osgi.repository.utils.VerifiedDownloader.ChecksumMismatchException;
+
+public class VerifiedDownloaderUnitTest {
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private final VerifiedDownloader downloader = new VerifiedDownloader(1000,
+            1000);
+
+    private static String sha256(Path pFile) throws Exception {
+        byte[] digest = MessageDigest.getInstance("SHA-256")
+                .digest(Files.readAllBytes(pFile));
+        return String.format("%064x", new BigInteger(1, digest));
+    }
+
+    @Test
+    public void testVerifiedDownloadIsCommitted() throws Exception {
+        URL source = getClass().getResource("/jars/aBundle.jar");
+        Path sourceFile = Paths.get(source.toURI());
+        Path target = temporaryFolder.getRoot().toPath()
+                .resolve("plugins/aBundle_1.0.0.jar");
+
+        Map<String, String> properties = new HashMap<>();
+        properties.put(VerifiedDownloader.PROP_DOWNLOAD_SIZE,
+                Long.toString(Files.size(sourceFile)));
+        properties.put(VerifiedDownloader.PROP_CHECKSUM_SHA_256,
+                sha256(sourceFile).toUpperCase());
+
+        assertThat(downloader.download(source, properties, target))
+                .isEqualTo(Files.size(sourceFile));
+        assertThat(Files.readAllBytes(target))
+                .isEqualTo(Files.readAllBytes(sourceFile));
+        assertThat(target.getParent().toFile().list()).hasSize(1);
+    }
+
+    @Test
+    public void testMismatchedDownloadIsDiscarded() throws Exception {
+        URL source = getClass().getResource("/jars/aBundle.jar");
+        Path target = temporaryFolder.getRoot().toPath()
+                .resolve("aBundle_1.0.0.jar");
+
+        Map<String, String> properties = new HashMap<>();
+        properties.put(VerifiedDownloader.PROP_DOWNLOAD_MD5,
+                "00000000000000000000000000000000");
+
+        assertThatThrownBy(
+                () -> downloader.download(source, properties, target))
+                        .isInstanceOf(ChecksumMismatchException.class);
+        assertThat(temporaryFolder.getRoot().list()).isEmpty();
+    }
+
+    @Test
+    public void testTruncatedDownloadIsDiscarded() throws Exception {
+        URL source = getClass().getResource("/jars/aBundle.jar");
+        Path target = temporaryFolder.getRoot().toPath()
+                .resolve("aBundle_1.0.0.jar");
+        Files.write(target, new byte[] { 1 });
+
+        Map<String, String> properties = new HashMap<>();
+        properties.put(VerifiedDownloader.PROP_DOWNLOAD_SIZE, "999999999");
+
+        assertThatThrownBy(
+                () -> downloader.download(source, properties, target))
+                        .isInstanceOf(ChecksumMismatchException.class)
+                        .hasMessageContaining("size");
+        assertThat(Files.readAllBytes(target)).containsExactly(1);
+    }
+}
@@ -0,0 +1,134 @@
+/**
+ * ============================================================================
+ *  Copyright ©  2015-2019,    Cristiano V. Gavião
+ *
+ *  All rights reserved.
+ *  This program and the accompanying materials are made available under
+ *  the terms of the Eclipse Public License v1.0 which accompanies this
+ *  distribution and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * ============================================================================
+ */
+package br.com.c8tech.tools.maven.plugin.osgi.repository.ut;
+
+import static io.takari.maven.testing.TestMavenRuntime.newParameter;
+import static io.takari.maven.testing.TestResources.assertFilesNotPresent;
+import static io.takari.maven.testing.TestResources.assertFilesPresent;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.maven.project.MavenProject;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+
+import br.com.c8tech.tools.maven.plugin.osgi.repository.utils.DirectoryUtil;
+import br.com.c8tech.tools.maven.plugin.osgi.repository.utils.XmlUtils;
+import io.takari.maven.testing.TestMavenRuntime;
+import io.takari.maven.testing.TestResources;
+
+public class WatchFilesetsUnitTest {
+
+    @Rule
+    public final TestResources resources = new TestResources();
+
+    @Rule
+    public final TestMavenRuntime maven = new TestMavenRuntime();
+
+    @Test
+    public void testIndexIsGeneratedBeforeWatching() throws Exception {
+
+        URI expectedFile = getClass().getResource("/jars/aBundle.jar").toURI();
+        Assert.assertNotNull(expectedFile);
+        Path sourceDir = Paths.get(expectedFile).getParent();
+        MavenProject project = maven
+                .readMavenProject(resources.getBasedir("ut-project--normal"));
+        Path rootDir = project.getBasedir().toPath().resolve("repository");
+        Path jarsDir = rootDir.resolve("jars");
+        DirectoryUtil.copyDirectory(sourceDir, jarsDir);
+
+        maven.executeMojo(project, "watchFilesets",
+                newParameter("fileSets",
+                        jarsDir.toString()
+                                + ":**/*.jar:**/01*.jar;**/aTra*;**/aNon*"),
+                newParameter("compressed", "false"),
+                newParameter("pretty", "true"),
+                newParameter("rootDir", rootDir.toString()),
+                newParameter("indexFileName", "repository.xml"),
+                newParameter("incrementOverride", "1"),
+                newParameter("watchTimeout", "1"));
+
+        assertFilesPresent(rootDir.toFile(), "repository.xml");
+        assertFilesNotPresent(rootDir.toFile(), "repository.xml.tmp");
+        Path expected = Paths.get(getClass()
+                .getResource("/xmls/index_from_folder_relative.xml").toURI());
+        XmlUtils.assertXMLEqual(expected, rootDir.resolve("repository.xml"));
+    }
+
+    private static boolean waitForIndex(Path pIndexFile, String pText,
+            boolean pPresent) throws Exception {
+        long deadline = System.currentTimeMillis() + 20000;
+        while (System.currentTimeMillis() < deadline) {
+            if (Files.isRegularFile(pIndexFile)
+                    && new String(Files.readAllBytes(pIndexFile),
+                            StandardCharsets.UTF_8)
+                                    .contains(pText) == pPresent) {
+                return true;
+            }
+            Thread.sleep(100);
+        }
+        return false;
+    }
+
+    @Test
+    public void testIndexIsGeneratedAgainWhenAJarIsRemovedOrAdded()
+            throws Exception {
+
+        URI expectedFile = getClass().getResource("/jars/aBundle.jar").toURI();
+        Path sourceDir = Paths.get(expectedFile).getParent();
+        MavenProject project = maven
+                .readMavenProject(resources.getBasedir("ut-project--normal"));
+        Path rootDir = project.getBasedir().toPath().resolve("repository");
+        Path jarsDir = rootDir.resolve("jars");
+        DirectoryUtil.copyDirectory(sourceDir, jarsDir);
+        Path indexFile = rootDir.resolve("repository.xml");
+
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        Thread watcher = new Thread(() -> {
+            try {
+                maven.executeMojo(project, "watchFilesets",
+                        newParameter("fileSets", jarsDir.toString()
+                                + ":**/*.jar:**/01*.jar;**/aTra*;**/aNon*"),
+                        newParameter("compressed", "false"),
+                        newParameter("rootDir", rootDir.toString()),
+                        newParameter("indexFileName", "repository.xml"),
+                        newParameter("incrementOverride", "1"),
+                        newParameter("watchDebounce", "200"),
+                        newParameter("watchTimeout", "60000"));
+            } catch (Exception e) {
+                failure.set(e);
+            }
+        });
+        watcher.start();
+        try {
+            Assert.assertTrue(waitForIndex(indexFile, "aBundle.jar", true));
+
+            Files.delete(jarsDir.resolve("aBundle.jar"));
+            Assert.assertTrue(waitForIndex(indexFile, "aBundle.jar", false));
+
+            Files.copy(sourceDir.resolve("aBundle.jar"),
+                    jarsDir.resolve("aBundle.jar"));
+            Assert.assertTrue(waitForIndex(indexFile, "aBundle.jar", true));
+        } finally {
+            watcher.interrupt();
+            watcher.join(10000);
+        }
+        Assert.assertNull(failure.get());
+        assertFilesNotPresent(rootDir.toFile(), "repository.xml.tmp");
+    }
+}